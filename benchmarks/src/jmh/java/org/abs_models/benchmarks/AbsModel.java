@@ -0,0 +1,106 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.abs_models.Absc;
+import org.abs_models.backend.java.JavaBackend;
+import org.abs_models.backend.java.lib.runtime.ABSRuntime;
+import org.abs_models.backend.java.observing.DefaultSystemObserver;
+
+/**
+ * An ABS model compiled with the Java backend, which can be run repeatedly
+ * inside the current JVM.
+ * <p>
+ * Models are read from the {@code models} resource directory; the main
+ * block of module {@code M} is the class {@code M.Main}.  All runs share
+ * the runtime singleton, so state such as the clock carries over from one
+ * run to the next.  Output of the model is discarded.
+ */
+final class AbsModel {
+
+    /** The longest time a single run of a model may take. */
+    private static final long TIMEOUT_SECONDS = 600;
+
+    private static final AtomicReference<CountDownLatch> finished = new AtomicReference<>();
+
+    static {
+        ABSRuntime runtime = ABSRuntime.getRuntime();
+        runtime.setOutStream(new PrintStream(OutputStream.nullOutputStream()));
+        runtime.addSystemObserver(new DefaultSystemObserver() {
+            @Override
+            public void systemFinished() {
+                CountDownLatch latch = finished.get();
+                if (latch != null) latch.countDown();
+            }
+        });
+    }
+
+    private final Path dir;
+    private final Class<?> mainClass;
+
+    private AbsModel(Path dir, Class<?> mainClass) {
+        this.dir = dir;
+        this.mainClass = mainClass;
+    }
+
+    /**
+     * Compile the model {@code models/<name>.abs}, whose module is
+     * {@code module}.
+     */
+    static AbsModel compile(String name, String module) throws IOException, ClassNotFoundException {
+        Path dir = Files.createTempDirectory("abs-jmh-" + name);
+        Path source = dir.resolve(name + ".abs");
+        try (InputStream in = AbsModel.class.getResourceAsStream("/models/" + name + ".abs")) {
+            if (in == null) throw new IOException("Model " + name + " not found");
+            Files.copy(in, source, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path gen = dir.resolve("gen");
+        Absc arguments = Absc.parseArgs(new String[] {
+                "--java", "-d", gen.toString(), source.toString() });
+        if (JavaBackend.doMain(arguments) != 0) {
+            throw new IllegalStateException("Could not compile model " + name);
+        }
+        URLClassLoader loader = new URLClassLoader(new URL[] { gen.toUri().toURL() },
+                                                   ABSRuntime.class.getClassLoader());
+        return new AbsModel(dir, loader.loadClass(module + ".Main"));
+    }
+
+    /**
+     * Run the main block of the model and wait until all of its processes
+     * have terminated.
+     */
+    void run() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        finished.set(latch);
+        ABSRuntime.getRuntime().start(mainClass);
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Model " + mainClass.getName() + " did not terminate");
+        }
+    }
+
+    /** Delete the generated files. */
+    void delete() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+}
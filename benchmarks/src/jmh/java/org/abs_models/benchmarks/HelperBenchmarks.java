@@ -0,0 +1,67 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.abs_models.backend.java.lib.expr.BinOp;
+import org.abs_models.backend.java.lib.expr.IntArith;
+import org.apfloat.Apint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of the helper methods that generated code calls for
+ * arithmetic and comparisons.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class HelperBenchmarks {
+
+    Apint a = new Apint(123456);
+    Apint b = new Apint(789);
+    String s1 = "a string";
+    String s2 = "a string";
+
+    @Benchmark
+    public Apint apintAdd() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public Apint intArithAdd() {
+        return IntArith.add(a, b);
+    }
+
+    @Benchmark
+    public Apint apintMultiply() {
+        return a.multiply(b);
+    }
+
+    @Benchmark
+    public Apint intArithMultiply() {
+        return IntArith.multiply(a, b);
+    }
+
+    @Benchmark
+    public Boolean binOpEqInt() {
+        return BinOp.eq(a, b);
+    }
+
+    @Benchmark
+    public Boolean binOpEqString() {
+        return BinOp.eq(s1, s2);
+    }
+
+    @Benchmark
+    public Boolean binOpLtInt() {
+        return BinOp.lt(a, b);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of the Java backend runtime.  Each benchmark runs one of the
+ * models in {@code src/jmh/resources/models} to completion; the score is
+ * the average time per operation, e.g., per asynchronous call, with the
+ * number of operations per run given by {@link OperationsPerInvocation}.
+ * <p>
+ * Each benchmark has its own state class so that JMH only compiles the
+ * model that the benchmark actually runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RuntimeBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class AsyncCall {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("async_call", "AsyncCallBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AwaitResume {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("await_resume", "AwaitResumeBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CogCreation {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("cog_creation", "CogCreationBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FutureFanIn {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("future_fanin", "FutureFanInBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ClockAdvance {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("clock_advance", "ClockAdvanceBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class StdLibMap {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("stdlib_map", "StdLibMapBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class StdLibList {
+        AbsModel model;
+        @Setup(Level.Trial) public void setup() throws Exception { model = AbsModel.compile("stdlib_list", "StdLibListBench"); }
+        @TearDown(Level.Trial) public void tearDown() throws Exception { model.delete(); }
+    }
+
+    /** Time per round trip of {@code await o!m()} to another cog. */
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public void asyncCallRoundTrip(AsyncCall state) throws Exception {
+        state.model.run();
+    }
+
+    /** Time per suspension and resumption on a boolean guard. */
+    @Benchmark
+    @OperationsPerInvocation(20000)
+    public void awaitResume(AwaitResume state) throws Exception {
+        state.model.run();
+    }
+
+    /** Time per creation of a cog, including its init block. */
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public void cogCreation(CogCreation state) throws Exception {
+        state.model.run();
+    }
+
+    /** Time per call when awaiting many futures from a few cogs. */
+    @Benchmark
+    @OperationsPerInvocation(10000)
+    public void futureFanIn(FutureFanIn state) throws Exception {
+        state.model.run();
+    }
+
+    /** Time per process waiting on a duration guard. */
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public void durationGuardClockAdvance(ClockAdvance state) throws Exception {
+        state.model.run();
+    }
+
+    /** Time per {@code put}, {@code lookupDefault} or {@code lookup}. */
+    @Benchmark
+    @OperationsPerInvocation(3000)
+    public void stdlibMap(StdLibMap state) throws Exception {
+        state.model.run();
+    }
+
+    /** Time for building and traversing a list of 1000 elements. */
+    @Benchmark
+    public void stdlibList(StdLibList state) throws Exception {
+        state.model.run();
+    }
+}
@@ -7,7 +7,9 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
+import org.abs_models.frontend.parser.CompilerServerCommand;
 import org.abs_models.frontend.parser.Main;
+import org.abs_models.frontend.parser.StdLibSnapshotCommand;
 import org.abs_models.frontend.typechecker.CheckSPLCommand;
 import org.abs_models.frontend.typechecker.locationtypes.LocationType;
 
@@ -37,13 +39,16 @@ import picocli.CommandLine.ScopeType;
          mixinStandardHelpOptions = true, // handles -h, -V
          synopsisHeading = "",
          customSynopsis =  {"Usage: @|bold absc|@ [BACKEND] [OPTIONS] [<files>...]",
-                            "   or: @|bold absc|@ checkspl [OPTIONS] [<files>...]"
+                            "   or: @|bold absc|@ checkspl [OPTIONS] [<files>...]",
+                            "   or: @|bold absc|@ server [--port=<port>]"
          },
          sortOptions = false,
          // separator = " ", // no need; " " and "=" are separators by default
          subcommands = {
              // HelpCommand.class, // no need; we have the standard -h / --help options
-             CheckSPLCommand.class
+             CheckSPLCommand.class,
+             CompilerServerCommand.class,
+             StdLibSnapshotCommand.class
          },
          versionProvider = Absc.AbscVersionProvider.class
          )
@@ -104,6 +109,20 @@ public class Absc implements Callable<Integer> {
     @Option(names = { "--dump"},
             description = "dump AST to standard output")
     public boolean dump = false;
+    @Option(names = { "--parse-threads" },
+            scope = ScopeType.INHERIT,
+            description = "parse input files on @|italic n|@ threads; 0 uses one thread per processor (default: ${DEFAULT-VALUE})",
+            paramLabel = "n")
+    public int parseThreads = 1;
+    @Option(names = { "--profile" },
+            description = "write wall and CPU time, allocated bytes, AST node counts and the most frequently evaluated attributes of each frontend phase to @|italic file|@ in JSON format",
+            paramLabel = "file")
+    public File profileFile;
+    @Option(names = { "--typecheck-threads" },
+            scope = ScopeType.INHERIT,
+            description = "type-check declarations, and with @|bold checkspl|@ product line branches and products, on @|italic n|@ threads; 0 uses one thread per processor (default: ${DEFAULT-VALUE}).  Declarations are checked on one thread while the null checker, location type inference or a secrecy lattice is active; use @|bold --nonullablecheck|@ to check them in parallel",
+            paramLabel = "n")
+    public int typecheckThreads = 1;
 
     // Code generation options
     @Option(names = { "-o", "--output-file"},
@@ -119,6 +138,10 @@ public class Absc implements Callable<Integer> {
             description = {"@|bold Java backend:|@ generate code with listener / debugger support (increases code size and decreases speed)",
                            "@|bold Erlang backend:|@ generate code with execution coverage recording"})
     public boolean debug_generated_code = false;
+    @Option(names = { "--codegen-threads" },
+            description = "@|bold Java and Erlang backends:|@ generate code for declarations on @|italic n|@ threads; 0 uses one thread per processor (default: ${DEFAULT-VALUE})",
+            paramLabel = "n")
+    public int codegenThreads = 1;
 
     // Erlang options
     @Option(names = { "--modelapi-index-file" },
@@ -152,6 +175,18 @@ public class Absc implements Callable<Integer> {
     @Option(names = { "--sourceonly" },
             description = "@|bold Java backend:|@ do not generate Java .class files")
     public boolean java_sourceOnly = false;
+    @Option(names = { "--virtual-threads" },
+            description = "@|bold Java backend:|@ run ABS processes on virtual threads by default, so that suspended processes do not occupy an operating system thread")
+    public boolean java_virtualThreads = false;
+    @Option(names = { "--in-memory" },
+            description = "@|bold Java backend:|@ keep generated sources and class files in memory and only write the jar file given by @|bold -o|@")
+    public boolean java_inMemory = false;
+    @Option(names = { "--incremental" },
+            description = "@|bold Java backend:|@ only regenerate and recompile the classes of declarations that changed since the last compilation into the same directory")
+    public boolean java_incremental = false;
+    @Option(names = { "--fast-arithmetic" },
+            description = "@|bold Java backend:|@ compute with machine integers when Int and Rat values are small enough, falling back to arbitrary precision on overflow")
+    public boolean java_fastArithmetic = false;
 
     // Pretty-printer
     @Option(names = { "-f", "--force" },
@@ -189,6 +224,11 @@ public class Absc implements Callable<Integer> {
             paramLabel = "string")
     public String secrecyLattice;
 
+    @Option(names = { "--secrecy-report" },
+            description = {"Write secrecy errors and per-method checking times to <file> in SARIF (JSON) format"},
+            paramLabel = "file")
+    public File secrecyReport;
+
     static class NullableTypeConverter implements ITypeConverter<NullableType> {
         @Override
         public NullableType convert(String s) throws Exception {
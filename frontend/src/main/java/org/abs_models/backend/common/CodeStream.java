@@ -3,8 +3,10 @@
  */
 package org.abs_models.backend.common;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
@@ -21,7 +23,8 @@ public class CodeStream extends PrintStream {
     private String indent = "";
 
     public CodeStream(File file) throws FileNotFoundException, UnsupportedEncodingException {
-        super(file, "UTF-8");
+        // PrintStream(File) writes through to the file on every print
+        super(new BufferedOutputStream(new FileOutputStream(file)), false, "UTF-8");
     }
 
     public CodeStream(OutputStream out, String initIndent) {
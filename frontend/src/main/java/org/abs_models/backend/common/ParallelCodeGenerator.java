@@ -0,0 +1,147 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.ClassDecl;
+import org.abs_models.frontend.ast.DataConstructorExp;
+import org.abs_models.frontend.ast.Decl;
+import org.abs_models.frontend.ast.Exp;
+import org.abs_models.frontend.ast.FnApp;
+import org.abs_models.frontend.ast.MethodSig;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.TypeUse;
+import org.abs_models.frontend.ast.TypedVarOrFieldDecl;
+import org.abs_models.frontend.ast.VarOrFieldUse;
+import org.abs_models.frontend.typechecker.ParallelTypeChecker;
+
+/**
+ * Support for generating code for the declarations of a model on several
+ * threads, used by the Java and Erlang backends.
+ * <p>
+ * JastAdd attributes are not thread-safe, so, as for parallel type
+ * checking, each part of the model is first prepared sequentially, in
+ * source order: {@link #prepare} performs all rewrites and evaluates the
+ * attributes that code generation reads (declarations and types of
+ * names, types of declarations, type uses and expressions, and the
+ * HTTP and foreign-class annotations of methods and classes).  Then
+ * {@link ParallelTypeChecker#prepareLookups} evaluates the lookups whose
+ * caches are shared by all declarations.  The tasks generating code then
+ * only read the model.  Each task writes its own
+ * files, and the backends create or register files in source order, so
+ * the generated code is the same for any number of threads.
+ */
+public final class ParallelCodeGenerator {
+
+    private ParallelCodeGenerator() {}
+
+    /** Generates the code of a part of the model. */
+    @FunctionalInterface
+    public interface Generator {
+        void generate() throws Exception;
+    }
+
+    /** A part of the model whose code is generated on its own thread. */
+    public static final class Task {
+        private final Generator generator;
+        private Exception failure = null;
+
+        public Task(Generator generator) {
+            this.generator = generator;
+        }
+
+        private void run() {
+            try {
+                generator.generate();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * The exception thrown by the generator, or null.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Evaluate the attributes of {@code node} and its descendants that are
+     * read during code generation, in source order.  Evaluation errors are
+     * ignored; they surface when code is generated.
+     */
+    public static void prepare(ASTNode<?> node) {
+        try {
+            if (node instanceof Decl d) {
+                d.getType();
+                if (node instanceof ClassDecl c) {
+                    c.isForeign();
+                }
+            } else if (node instanceof TypedVarOrFieldDecl d) {
+                d.getType();
+            } else if (node instanceof MethodSig s) {
+                s.getType();
+                s.isHTTPCallable();
+            } else if (node instanceof TypeUse t) {
+                t.getType();
+            } else if (node instanceof Exp e) {
+                e.getType();
+                if (node instanceof VarOrFieldUse v) {
+                    v.getDecl();
+                } else if (node instanceof FnApp f) {
+                    f.getDecl();
+                } else if (node instanceof DataConstructorExp c) {
+                    c.getDataConstructor();
+                }
+            }
+        } catch (RuntimeException e) {
+            // reported by the generator
+        }
+        for (int i = 0; i < node.getNumChild(); i++) {
+            ASTNode<?> child = node.getChild(i);
+            if (child != null) prepare(child);
+        }
+    }
+
+    /**
+     * Run all tasks on {@code threads} threads, after evaluating the
+     * lookups of {@code model} that are shared by all tasks.  Exceptions
+     * thrown by the generators are recorded in their tasks; errors are
+     * rethrown.
+     */
+    public static void runAll(Model model, List<Task> tasks, int threads) {
+        if (tasks.isEmpty()) return;
+        ParallelTypeChecker.prepareLookups(model);
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, tasks.size()));
+        try {
+            List<ForkJoinTask<?>> running = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                running.add(pool.submit(task::run));
+            }
+            for (ForkJoinTask<?> task : running) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while generating code", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException re) throw re;
+                    if (cause instanceof Error err) throw err;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
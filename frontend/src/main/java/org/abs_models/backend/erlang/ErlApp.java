@@ -96,9 +96,10 @@ public class ErlApp {
     /**
      * All functions for an ABS module are stored in one Erlang module.
      *
-     * This method creates the necessary stream.
+     * This method creates the necessary stream.  It is synchronized
+     * since modules may be generated in parallel.
      */
-    public CodeStream getFunStream(String moduleName) throws FileNotFoundException, UnsupportedEncodingException {
+    public synchronized CodeStream getFunStream(String moduleName) throws FileNotFoundException, UnsupportedEncodingException {
         if (!funMod.containsKey(moduleName)) {
             CodeStream ecs = new CodeStream(new File(destCodeDir, ErlUtil.getModuleName(moduleName)
                     + "_funs.erl"));
@@ -79,6 +79,7 @@ public class ErlangBackend extends Main {
         if (arguments.verbose) compileOptions.add(CompileOptions.VERBOSE);
         if (arguments.debug) compileOptions.add(CompileOptions.DEBUG);
         if (arguments.debug_generated_code) compileOptions.add(CompileOptions.COVERAGE);
+        model.setCodegenThreads(arguments.codegenThreads);
         compile(model, outdir, compileOptions);
         return 0;
     }
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.erlang;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.abs_models.backend.common.ParallelCodeGenerator;
+import org.abs_models.frontend.ast.ClassDecl;
+import org.abs_models.frontend.ast.Decl;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.ModuleDecl;
+
+/**
+ * Generates the Erlang code of a model on several threads.
+ * <p>
+ * Every class is generated into its own Erlang module by its own task.
+ * The main block and the functions of an ABS module, which share the
+ * functions module {@code <module>_funs}, are generated by one task per
+ * ABS module, in source order.  Since no two tasks write the same file,
+ * the generated code does not depend on the number of threads.
+ */
+public final class ParallelErlangGenerator {
+
+    private ParallelErlangGenerator() {}
+
+    public static void generate(Model model, ErlApp ea, int threads) throws IOException {
+        List<ParallelCodeGenerator.Task> tasks = new ArrayList<>();
+        for (ModuleDecl m : model.getModuleDecls()) {
+            List<Decl> moduleDecls = new ArrayList<>();
+            for (Decl d : m.getDecls()) {
+                ParallelCodeGenerator.prepare(d);
+                if (d instanceof ClassDecl c) {
+                    tasks.add(new ParallelCodeGenerator.Task(() -> c.generateErlangCode(ea)));
+                } else {
+                    moduleDecls.add(d);
+                }
+            }
+            if (m.hasBlock()) {
+                ParallelCodeGenerator.prepare(m.getBlock());
+            }
+            tasks.add(new ParallelCodeGenerator.Task(() -> {
+                m.generateErlangMainModule(ea);
+                for (Decl d : moduleDecls) {
+                    d.generateErlangCode(ea);
+                }
+            }));
+        }
+        ParallelCodeGenerator.runAll(model, tasks, threads);
+        for (ParallelCodeGenerator.Task task : tasks) {
+            Exception failure = task.getFailure();
+            if (failure instanceof IOException e) {
+                throw e;
+            } else if (failure instanceof RuntimeException e) {
+                throw e;
+            } else if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+}
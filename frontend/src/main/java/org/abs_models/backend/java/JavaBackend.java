@@ -85,6 +85,19 @@ public class JavaBackend extends Main {
             printErrorMessage();
             return 1;
         }
+        if (arguments.java_inMemory) {
+            if (arguments.outputfile == null) {
+                throw new InternalBackendException("Option --in-memory requires an output jar file (-o)");
+            }
+            if (arguments.java_sourceOnly) {
+                throw new InternalBackendException("Options --in-memory and --sourceonly cannot be combined");
+            }
+            if (arguments.java_incremental) {
+                throw new InternalBackendException("Options --in-memory and --incremental cannot be combined");
+            }
+            compile(model, JavaCode.inMemory(arguments.outputfile, arguments.http_index_file, arguments.http_static_dir));
+            return 0;
+        }
         if (!arguments.destDir.mkdirs() && !arguments.destDir.isDirectory()) {
             throw new IOException("Could not create directory " + arguments.destDir.toString());
         }
@@ -101,6 +114,16 @@ public class JavaBackend extends Main {
 
     private void compile(Model m, File destDir, File output_jar) throws IOException, JavaCodeGenerationException {
         JavaCode javaCode = new JavaCode(destDir, output_jar, arguments.http_index_file, arguments.http_static_dir);
+        javaCode.setIncremental(arguments.java_incremental && !untypedJavaGen);
+        compile(m, javaCode);
+    }
+
+    private void compile(Model m, JavaCode javaCode) throws IOException, JavaCodeGenerationException {
+        if (arguments.java_virtualThreads) {
+            m.defaultTaskScheduler = "virtual";
+        }
+        m.fastArithmetic = arguments.java_fastArithmetic;
+        m.setCodegenThreads(arguments.codegenThreads);
         if (this.untypedJavaGen) {
             if (arguments.verbose) System.out.println("Generating dynamic Java code...");
             m.generateJavaCodeDynamic(javaCode, arguments.debug_generated_code);
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.codegeneration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A file manager that keeps the class files written by the compiler in
+ * memory.  Everything else, in particular reading the class path, is
+ * delegated to the standard file manager.
+ */
+class InMemoryJavaFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    /** Class file contents by binary class name, sorted for deterministic jar files. */
+    private final SortedMap<String, byte[]> classes = new TreeMap<>();
+
+    InMemoryJavaFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * A compilation unit with the given contents.
+     * @param className - the qualified name of the top-level class.
+     * @param code - the Java source code.
+     */
+    static JavaFileObject source(String className, String code) {
+        return new SimpleJavaFileObject(uri(className, Kind.SOURCE), Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling)
+        throws java.io.IOException
+    {
+        if (location != StandardLocation.CLASS_OUTPUT || kind != Kind.CLASS) {
+            return super.getJavaFileForOutput(location, className, kind, sibling);
+        }
+        return new SimpleJavaFileObject(uri(className, kind), kind) {
+            @Override
+            public OutputStream openOutputStream() {
+                return new ByteArrayOutputStream() {
+                    @Override
+                    public void close() {
+                        classes.put(className, toByteArray());
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * The compiled classes, by binary class name.
+     */
+    Map<String, byte[]> getClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    private static URI uri(String className, Kind kind) {
+        return URI.create("mem:///" + className.replace('.', '/') + kind.extension);
+    }
+}
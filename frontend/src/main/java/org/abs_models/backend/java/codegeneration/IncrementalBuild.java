@@ -0,0 +1,265 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.codegeneration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.abs_models.backend.prettyprint.DefaultABSFormatter;
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.Annotation;
+import org.abs_models.frontend.ast.ClassDecl;
+import org.abs_models.frontend.ast.ConstructorPattern;
+import org.abs_models.frontend.ast.DataConstructor;
+import org.abs_models.frontend.ast.DataConstructorExp;
+import org.abs_models.frontend.ast.Decl;
+import org.abs_models.frontend.ast.Exp;
+import org.abs_models.frontend.ast.FnApp;
+import org.abs_models.frontend.ast.FunctionDecl;
+import org.abs_models.frontend.ast.InterfaceDecl;
+import org.abs_models.frontend.ast.InterfaceTypeUse;
+import org.abs_models.frontend.ast.ParamDecl;
+import org.abs_models.frontend.ast.TypeUse;
+import org.abs_models.frontend.typechecker.BoundedType;
+import org.abs_models.frontend.typechecker.DataTypeType;
+import org.abs_models.frontend.typechecker.InterfaceType;
+import org.abs_models.frontend.typechecker.Type;
+import org.abs_models.frontend.typechecker.UnionType;
+
+/**
+ * The state of incremental Java code generation in a source directory.
+ * <p>
+ * Each generated class is keyed on a hash of the declaration it is
+ * generated from (its pretty-printed form and source positions, which
+ * end up in the generated code), of the interface of every declaration
+ * it refers to, and of the code generation options.  The keys of the
+ * last successful build are stored in {@link #STATE_FILE} in the source
+ * directory.  A declaration whose key did not change, and whose Java and
+ * class files still exist, is neither regenerated nor recompiled.
+ * <p>
+ * The interface of a referenced declaration is its full text, except
+ * for classes (parameters, annotations and implemented interfaces) and
+ * functions (signature), whose bodies do not influence the code
+ * generated for their users.
+ */
+public class IncrementalBuild {
+
+    public static final String STATE_FILE = "absc-incremental.properties";
+
+    private final File srcDir;
+    private final String configuration;
+    private final Properties previous = new Properties();
+    private final Properties current = new Properties();
+    private final Map<Decl, String> apis = new IdentityHashMap<>();
+
+    /**
+     * Load the state of the last build.
+     * @param srcDir - the directory containing the generated code.
+     * @param configuration - the code generation options; a change of
+     *   options invalidates all generated classes.
+     */
+    public IncrementalBuild(File srcDir, String configuration) throws IOException {
+        this.srcDir = srcDir;
+        this.configuration = configuration;
+        File state = new File(srcDir, STATE_FILE);
+        if (state.isFile()) {
+            try (Reader reader = Files.newBufferedReader(state.toPath(), StandardCharsets.UTF_8)) {
+                previous.load(reader);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the classes generated from {@code node} in the last
+     * build can be reused, and records the key of node for the next build.
+     *
+     * @param node - a declaration, or the main block of a module.
+     * @param packageName - the Java package of the generated classes.
+     * @param classNames - the names of the classes generated from node.
+     */
+    public boolean isUpToDate(ASTNode<?> node, String packageName, String... classNames) {
+        String key = key(node);
+        boolean result = key != null;
+        for (String name : classNames) {
+            String qualifiedName = packageName + "." + name;
+            if (key != null) {
+                current.setProperty(qualifiedName, key);
+            }
+            File base = new File(srcDir, qualifiedName.replace('.', File.separatorChar));
+            result = result
+                && key.equals(previous.getProperty(qualifiedName))
+                && new File(base.getPath() + ".java").isFile()
+                && new File(base.getPath() + ".class").isFile();
+        }
+        return result;
+    }
+
+    /**
+     * Store the keys of this build; call after the generated code was
+     * compiled successfully.
+     */
+    public void save() throws IOException {
+        try (Writer writer = Files.newBufferedWriter(new File(srcDir, STATE_FILE).toPath(), StandardCharsets.UTF_8)) {
+            current.store(writer, "absc incremental Java build");
+        }
+    }
+
+    /**
+     * The key of a node, or null if it cannot be computed.
+     */
+    String key(ASTNode<?> node) {
+        StringBuilder text = new StringBuilder(configuration).append('\n');
+        String printed = print(node, false);
+        if (printed == null) {
+            return null;
+        }
+        text.append(printed).append('\n');
+        if (node.getCompilationUnit() != null) {
+            text.append(node.getCompilationUnit().getFileName()).append('\n');
+        }
+        Set<Decl> dependencies = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(node, dependencies, text);
+        TreeSet<String> dependencyApis = new TreeSet<>();
+        for (Decl d : dependencies) {
+            if (d == null || d == node) continue;
+            String api = apis.computeIfAbsent(d, decl -> {
+                String p = print(decl, true);
+                return p == null ? "" : decl.getQualifiedName() + "\n" + p;
+            });
+            if (api.isEmpty()) {
+                return null;
+            }
+            dependencyApis.add(api);
+        }
+        for (String api : dependencyApis) {
+            text.append(api).append('\n');
+        }
+        return hash(text.toString());
+    }
+
+    /**
+     * Collect the declarations referred to below node, and the source
+     * positions of all nodes.
+     */
+    private static void collect(ASTNode<?> node, Set<Decl> result, StringBuilder positions) {
+        positions.append(node.getStartLine()).append(':').append(node.getStartColumn()).append(' ');
+        if (node instanceof TypeUse) {
+            addType(((TypeUse) node).getType(), result);
+        } else if (node instanceof Exp) {
+            addType(((Exp) node).getType(), result);
+        }
+        if (node instanceof FnApp) {
+            result.add(((FnApp) node).getDecl());
+        } else if (node instanceof DataConstructorExp) {
+            DataConstructor c = ((DataConstructorExp) node).getDataConstructor();
+            if (c != null) result.add(c.getDataTypeDecl());
+        } else if (node instanceof ConstructorPattern) {
+            DataConstructor c = ((ConstructorPattern) node).getDataConstructor();
+            if (c != null) result.add(c.getDataTypeDecl());
+        }
+        for (int i = 0; i < node.getNumChild(); i++) {
+            collect(node.getChild(i), result, positions);
+        }
+    }
+
+    private static void addType(Type t, Set<Decl> result) {
+        if (t == null) {
+            return;
+        } else if (t.isDataType()) {
+            DataTypeType dt = (DataTypeType) t;
+            result.add(dt.getDecl());
+            for (Type arg : dt.getTypeArgs()) {
+                addType(arg, result);
+            }
+        } else if (t.isUnionType()) {
+            UnionType ut = (UnionType) t;
+            result.add(ut.getOriginatingClass());
+            for (InterfaceType it : ut.getTypes()) {
+                addInterface(it.getDecl(), result);
+            }
+        } else if (t.isInterfaceType()) {
+            addInterface(((InterfaceType) t).getDecl(), result);
+        } else if (t.isBoundedType() && ((BoundedType) t).hasBoundType()) {
+            addType(((BoundedType) t).getBoundType(), result);
+        }
+    }
+
+    /**
+     * Add an interface and, since its generated code contains their
+     * methods, the interfaces it extends.
+     */
+    private static void addInterface(InterfaceDecl decl, Set<Decl> result) {
+        if (decl != null && result.add(decl)) {
+            for (InterfaceTypeUse i : decl.getExtendedInterfaceUses()) {
+                addType(i.getType(), result);
+            }
+        }
+    }
+
+    /**
+     * The pretty-printed node, or only its interface (see class comment),
+     * or null if the node cannot be printed.
+     */
+    private static String print(ASTNode<?> node, boolean onlyInterface) {
+        Writer text = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(text)) {
+            DefaultABSFormatter formatter = new DefaultABSFormatter(writer);
+            if (onlyInterface && node instanceof ClassDecl) {
+                ClassDecl c = (ClassDecl) node;
+                for (Annotation a : c.getAnnotations()) {
+                    a.doPrettyPrint(writer, formatter);
+                }
+                for (ParamDecl p : c.getParams()) {
+                    p.doPrettyPrint(writer, formatter);
+                    writer.println();
+                }
+                for (InterfaceTypeUse i : c.getImplementedInterfaceUses()) {
+                    i.doPrettyPrint(writer, formatter);
+                    writer.println();
+                }
+            } else if (onlyInterface && node instanceof FunctionDecl) {
+                FunctionDecl f = (FunctionDecl) node;
+                f.getTypeUse().doPrettyPrint(writer, formatter);
+                writer.println();
+                for (ParamDecl p : f.getParams()) {
+                    p.doPrettyPrint(writer, formatter);
+                    writer.println();
+                }
+            } else if (node instanceof DataConstructor) {
+                // Constructors are generated together with their data type
+                ((DataConstructor) node).getDataTypeDecl().doPrettyPrint(writer, formatter);
+            } else {
+                node.doPrettyPrint(writer, formatter);
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return text.toString();
+    }
+
+    private static String hash(String content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                                            .digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
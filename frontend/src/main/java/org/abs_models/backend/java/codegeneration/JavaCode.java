@@ -8,19 +8,25 @@ import org.abs_models.backend.java.JavaBackend;
 import org.apache.commons.io.FileUtils;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -42,6 +48,23 @@ public class JavaCode {
     private final List<File> files = new ArrayList<>();
     private final List<String> mainClasses = new ArrayList<>();
 
+    /**
+     * Whether generated sources and compiled classes are kept in memory
+     * instead of being written below {@link #srcDir}; see {@link #inMemory}.
+     */
+    private final boolean inMemory;
+    /** In-memory mode: the generated sources, by qualified class name. */
+    private final Map<String, ByteArrayOutputStream> sources = new LinkedHashMap<>();
+    /** In-memory mode: the compiled classes, by binary class name. */
+    private Map<String, byte[]> classes = null;
+
+    /** Whether unchanged declarations are skipped; see {@link IncrementalBuild}. */
+    private boolean incremental = false;
+    /** The state of the current incremental build, or null. */
+    private IncrementalBuild incrementalBuild = null;
+    /** The sources created on the current thread by {@link #generateDeferred}, or null. */
+    private final ThreadLocal<DeferredSources> deferredSources = new ThreadLocal<>();
+
     /**
      * The set of files from {@code absfrontend.jar} to include in a
      * generated jar file.  When running the Java model from a
@@ -83,10 +106,112 @@ public class JavaCode {
     }
 
     public JavaCode(File srcDir, File output_jar, File http_index_file, File http_static_dir) {
+        this(srcDir, output_jar, http_index_file, http_static_dir, false);
+    }
+
+    private JavaCode(File srcDir, File output_jar, File http_index_file, File http_static_dir, boolean inMemory) {
         this.srcDir = srcDir;
         this.output_jar = output_jar;
         this.httpIndexFile = http_index_file;
 	this.httpStaticDir = http_static_dir;
+        this.inMemory = inMemory;
+    }
+
+    /**
+     * Create a code object that keeps generated sources and compiled
+     * classes in memory.  {@link #compile()} then writes only the jar file
+     * {@code output_jar}, if given; the compiled classes can also be
+     * loaded via {@link #getClassLoader}.  Generators must use {@link
+     * Package#createJavaStream} instead of {@link Package#createJavaFile}.
+     */
+    public static JavaCode inMemory(File output_jar, File http_index_file, File http_static_dir) {
+        return new JavaCode(null, output_jar, http_index_file, http_static_dir, true);
+    }
+
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    /**
+     * Request an incremental build: code generation skips declarations
+     * that did not change since the last build into {@link #srcDir}, and
+     * {@link #compile()} only compiles the generated files.  Has no effect
+     * for in-memory code.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental && !inMemory;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Start an incremental build, loading the state of the last build.
+     * @param configuration - the code generation options.
+     */
+    public IncrementalBuild startIncrementalBuild(String configuration) throws IOException {
+        incrementalBuild = incremental ? new IncrementalBuild(srcDir, configuration) : null;
+        return incrementalBuild;
+    }
+
+    /**
+     * The state of the current incremental build, or null if all code is
+     * generated.
+     */
+    public IncrementalBuild getIncrementalBuild() {
+        return incrementalBuild;
+    }
+
+    /** Generates code into the streams returned by {@link Package#createJavaStream}. */
+    @FunctionalInterface
+    public interface Generator {
+        void generate() throws IOException, JavaCodeGenerationException;
+    }
+
+    /**
+     * Run {@code generator}, keeping the sources it creates on this
+     * thread in memory until {@link DeferredSources#write} is called.
+     * This allows generating code on several threads while creating
+     * files in a fixed order.
+     */
+    public DeferredSources generateDeferred(Generator generator) throws IOException, JavaCodeGenerationException {
+        DeferredSources result = new DeferredSources();
+        deferredSources.set(result);
+        try {
+            generator.generate();
+        } finally {
+            deferredSources.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Sources created by {@link #generateDeferred}.
+     */
+    public class DeferredSources {
+        private final List<Package> packages = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<ByteArrayOutputStream> buffers = new ArrayList<>();
+
+        private PrintStream add(Package pkg, String name) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            packages.add(pkg);
+            names.add(name);
+            buffers.add(buffer);
+            return JavaCodeStream.from(buffer);
+        }
+
+        /**
+         * Create the sources, in the order in which they were generated.
+         */
+        public void write() throws IOException, JavaCodeGenerationException {
+            for (int i = 0; i < names.size(); i++) {
+                try (PrintStream stream = packages.get(i).createJavaStream(names.get(i))) {
+                    buffers.get(i).writeTo(stream);
+                }
+            }
+        }
     }
 
     public String[] getFileNames() {
@@ -113,23 +238,41 @@ public class JavaCode {
 
         public Package(String packageName) throws IOException {
             this.packageName = packageName;
-            this.packageDir = new File(srcDir, packageName.replace('.', File.separatorChar));
             this.firstPackagePart = packageName.split("\\.")[0];
-            if (!packageDir.mkdirs() && !packageDir.isDirectory()) {
-                throw new IOException("Could not create directory " + packageDir.toString());
+            if (inMemory) {
+                this.packageDir = null;
+            } else {
+                this.packageDir = new File(srcDir, packageName.replace('.', File.separatorChar));
+                if (!packageDir.mkdirs() && !packageDir.isDirectory()) {
+                    throw new IOException("Could not create directory " + packageDir.toString());
+                }
+            }
+        }
+
+        /**
+         * Create a stream for the source code of class {@code name} of
+         * this package, which is written to a file or kept in memory.
+         * The caller must close the stream.
+         */
+        public PrintStream createJavaStream(String name) throws IOException, JavaCodeGenerationException {
+            DeferredSources deferred = deferredSources.get();
+            if (deferred != null) {
+                return deferred.add(this, name);
             }
+            if (!inMemory) {
+                return JavaCodeStream.from(createJavaFile(name));
+            }
+            checkClassName(name);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            sources.put(packageName + "." + name, buffer);
+            return JavaCodeStream.from(buffer);
         }
 
         public File createJavaFile(String name) throws IOException, JavaCodeGenerationException {
-            if (name.equals(firstPackagePart)) {
-                if (name.equals("Main")) {
-                    throw new JavaCodeGenerationException("The Java backend does not support main blocks in " +
-                    		"modules with name 'Main'. Please try to use a different name.");
-                }
-                throw new JavaCodeGenerationException("The Java backend does not support using the name " +
-                      name + " as module name, because it collides with a generated classname. " +
-                      		"Please try to use a different name.");
+            if (inMemory) {
+                throw new IllegalStateException("Cannot create Java file " + name + " for in-memory code");
             }
+            checkClassName(name);
             File file = new File(packageDir, name + ".java");
             if (file.exists()) {
                 file.delete();
@@ -141,6 +284,18 @@ public class JavaCode {
             return file;
         }
 
+        private void checkClassName(String name) throws JavaCodeGenerationException {
+            if (name.equals(firstPackagePart)) {
+                if (name.equals("Main")) {
+                    throw new JavaCodeGenerationException("The Java backend does not support main blocks in " +
+                    		"modules with name 'Main'. Please try to use a different name.");
+                }
+                throw new JavaCodeGenerationException("The Java backend does not support using the name " +
+                      name + " as module name, because it collides with a generated classname. " +
+                      		"Please try to use a different name.");
+            }
+        }
+
         public void addMainClass(String s) {
             mainClasses.add(packageName + "." + s);
         }
@@ -151,11 +306,169 @@ public class JavaCode {
     }
 
     public void deleteCode() throws IOException {
-        FileUtils.deleteDirectory(srcDir);
+        if (inMemory) {
+            sources.clear();
+            classes = null;
+        } else {
+            FileUtils.deleteDirectory(srcDir);
+        }
     }
 
     public void compile() throws JavaCodeGenerationException, IOException {
-        compile(srcDir, output_jar, "-classpath", System.getProperty("java.class.path"));
+        if (inMemory) {
+            compileInMemory();
+        } else if (incrementalBuild != null) {
+            compile(files, output_jar);
+            incrementalBuild.save();
+        } else {
+            compile(srcDir, output_jar, "-classpath", System.getProperty("java.class.path"));
+        }
+    }
+
+    /**
+     * Compile the in-memory sources, then write the jar file if requested.
+     * Model API assets are copied from {@code absfrontend.jar} and from
+     * the user-given files straight into the jar.
+     */
+    private void compileInMemory() throws JavaCodeGenerationException, IOException {
+        javax.tools.JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<JavaFileObject> units = new ArrayList<>();
+        for (Map.Entry<String, ByteArrayOutputStream> e : sources.entrySet()) {
+            units.add(InMemoryJavaFileManager.source(e.getKey(), e.getValue().toString(JavaBackend.CHARSET)));
+        }
+        List<String> optionList = List.of("-classpath", System.getProperty("java.class.path"));
+        try (InMemoryJavaFileManager fileManager
+             = new InMemoryJavaFileManager(compiler.getStandardFileManager(diagnostics, null, JavaBackend.CHARSET))) {
+            if (!compiler.getTask(null, fileManager, diagnostics, optionList, null, units).call()) {
+                throw compilationFailed(diagnostics);
+            }
+            classes = fileManager.getClasses();
+        }
+        if (output_jar == null) {
+            return;
+        }
+        File absfrontend_jarfile = getAbsfrontendJarFile();
+        if (absfrontend_jarfile == null) {
+            throw new JavaCodeGenerationException("Could not create jar " + output_jar
+                                                  + " because classpath contains more than absfrontend.jar");
+        }
+        try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(output_jar), createManifest());
+             JarFile absfrontend_jar = new JarFile(absfrontend_jarfile)) {
+            copyRuntimeEntries(absfrontend_jar, jarOutputStream);
+            for (Map.Entry<String, ByteArrayOutputStream> e : sources.entrySet()) {
+                jarOutputStream.putNextEntry(new JarEntry(e.getKey().replace('.', '/') + ".java"));
+                e.getValue().writeTo(jarOutputStream);
+                jarOutputStream.closeEntry();
+            }
+            for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                jarOutputStream.putNextEntry(new JarEntry(e.getKey().replace('.', '/') + ".class"));
+                jarOutputStream.write(e.getValue());
+                jarOutputStream.closeEntry();
+            }
+            for (Map.Entry<String, byte[]> e : getModelApiAssets(absfrontend_jar).entrySet()) {
+                jarOutputStream.putNextEntry(new JarEntry(e.getKey()));
+                jarOutputStream.write(e.getValue());
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * The Model API files by jar entry name: the standard files from
+     * {@code absfrontend.jar}, overwritten by the user-specified ones.
+     */
+    private SortedMap<String, byte[]> getModelApiAssets(JarFile absfrontend_jar) throws IOException {
+        SortedMap<String, byte[]> result = new TreeMap<>();
+        for (Iterator<JarEntry> it = absfrontend_jar.entries().asIterator(); it.hasNext();) {
+            JarEntry entry = it.next();
+            if (!entry.isDirectory() && entry.getName().startsWith("java/modelapi")) {
+                result.put(entry.getName(), absfrontend_jar.getInputStream(entry).readAllBytes());
+            }
+        }
+        if (this.httpIndexFile != null) {
+            result.put("java/modelapi/index.html", Files.readAllBytes(this.httpIndexFile.toPath()));
+        }
+        if (this.httpStaticDir != null) {
+            Path staticDir = this.httpStaticDir.toPath();
+            try (Stream<Path> paths = Files.walk(staticDir)) {
+                for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    String name = staticDir.relativize(path).toString().replace('\\', '/');
+                    result.put("java/modelapi/static/" + name, Files.readAllBytes(path));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A class loader for the classes compiled in memory.  Classes not
+     * generated from the model, e.g., the ABS runtime, are loaded by
+     * {@code parent}.
+     */
+    public ClassLoader getClassLoader(ClassLoader parent) {
+        if (classes == null) {
+            throw new IllegalStateException("The in-memory code has not been compiled");
+        }
+        final Map<String, byte[]> compiled = classes;
+        return new ClassLoader(parent) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = compiled.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+    }
+
+    /**
+     * The jar file the compiler was started from, or null if the class
+     * path contains more than {@code absfrontend.jar}.
+     */
+    private static File getAbsfrontendJarFile() {
+        String[] classPath = System.getProperty("java.class.path").split(System.getProperty("path.separator"));
+        boolean absfrontendJarfileValid = classPath.length == 1 || classPath[0].endsWith(".jar");
+        return absfrontendJarfileValid ? new File(classPath[0]) : null;
+    }
+
+    private static JavaCodeGenerationException compilationFailed(DiagnosticCollector<JavaFileObject> diagnostics) {
+        StringBuilder s = new StringBuilder();
+        diagnostics.getDiagnostics().forEach(d -> s.append(d.toString() + "\n"));
+
+        return new JavaCodeGenerationException("There seems to be a bug in the ABS Java backend. " +
+                                               "The generated code contains errors:\n" + s.toString());
+    }
+
+    private Manifest createManifest() {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_TITLE, "ABS model");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "." + File.pathSeparator + "./absfrontend.jar");
+        manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, org.abs_models.frontend.parser.Main.getVersion());
+        if (hasMainClasses()) {
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, getFirstMainClass());
+        }
+        return manifest;
+    }
+
+    /**
+     * Copy the parts of {@code absfrontend.jar} needed to run a model,
+     * see {@link #INCLUDE_PREFIXES}.
+     */
+    private static void copyRuntimeEntries(JarFile absfrontend_jar, JarOutputStream jarOutputStream) throws IOException {
+        for (Iterator<JarEntry> it = absfrontend_jar.entries().asIterator(); it.hasNext(); ) {
+            JarEntry entry = it.next();
+            if (!entry.isDirectory()
+                && !entry.getName().equals("META-INF/MANIFEST.MF")
+                && INCLUDE_PREFIXES.stream().anyMatch(entry.getName()::startsWith))
+                {
+                    jarOutputStream.putNextEntry(entry);
+                    absfrontend_jar.getInputStream(entry).transferTo(jarOutputStream);
+                    jarOutputStream.closeEntry();
+                }
+        }
     }
 
     public void compile(File directory, File output_jar, String... compiler_args)
@@ -185,16 +498,19 @@ public class JavaCode {
         // "-classpath", System.getProperty("java.class.path"),
         List<String> optionList = new ArrayList<String>();
         optionList.add("-classpath");
-        optionList.add(System.getProperty("java.class.path"));
-        javax.tools.JavaCompiler.CompilationTask task
-            = compiler.getTask(null, fileManager, diagnostics, optionList, null,
-                fileManager.getJavaFileObjectsFromFiles(files));
-        if (!task.call()) {
-            StringBuilder s = new StringBuilder();
-            diagnostics.getDiagnostics().forEach(d -> s.append(d.toString() + "\n"));
-
-            throw new JavaCodeGenerationException("There seems to be a bug in the ABS Java backend. " +
-                                                  "The generated code contains errors:\n" + s.toString());
+        if (incrementalBuild != null) {
+            // Classes of unchanged declarations are not recompiled
+            optionList.add(System.getProperty("java.class.path") + File.pathSeparator + srcDir.getPath());
+        } else {
+            optionList.add(System.getProperty("java.class.path"));
+        }
+        if (!files.isEmpty()) {
+            javax.tools.JavaCompiler.CompilationTask task
+                = compiler.getTask(null, fileManager, diagnostics, optionList, null,
+                    fileManager.getJavaFileObjectsFromFiles(files));
+            if (!task.call()) {
+                throw compilationFailed(diagnostics);
+            }
         }
         fileManager.close();
         // ------------------------------
@@ -238,31 +554,13 @@ public class JavaCode {
                 throw new JavaCodeGenerationException("Could not create jar " + output_jar
                                                       + " because classpath contains more than absfrontend.jar");
             }
-            Manifest manifest = new Manifest();
-            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-            manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_TITLE, "ABS model");
-            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "." + File.pathSeparator + "./absfrontend.jar");
-            manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, org.abs_models.frontend.parser.Main.getVersion());
-            if (hasMainClasses()) {
-                manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, getFirstMainClass());
-            }
-
-            try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(output_jar), manifest);
+            try (JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(output_jar), createManifest());
                  JarFile absfrontend_jar = new JarFile(absfrontend_jarfile)) {
-                for (Iterator<JarEntry> it = absfrontend_jar.entries().asIterator(); it.hasNext(); ) {
-                    JarEntry entry = it.next();
-                    if (!entry.isDirectory()
-                        && !entry.getName().equals("META-INF/MANIFEST.MF")
-                        && INCLUDE_PREFIXES.stream().anyMatch(entry.getName()::startsWith))
-                        {
-                            jarOutputStream.putNextEntry(entry);
-                            absfrontend_jar.getInputStream(entry).transferTo(jarOutputStream);
-                            jarOutputStream.closeEntry();
-                        }
-                }
+                copyRuntimeEntries(absfrontend_jar, jarOutputStream);
                 Path compiledFilesPath = Paths.get(srcDir.toURI());
                 Files.walk(compiledFilesPath)
                     .filter(path -> !Files.isDirectory(path))
+                    .filter(path -> !path.getFileName().toString().equals(IncrementalBuild.STATE_FILE))
                     .forEach(path -> {
                         String entryName = compiledFilesPath.relativize(path).toString().replace('\\', '/');
                         JarEntry entry = new JarEntry(entryName);
@@ -294,6 +592,9 @@ public class JavaCode {
         for (File f : files) {
             append(res, f);
         }
+        for (ByteArrayOutputStream source : sources.values()) {
+            res.append(source.toString(JavaBackend.CHARSET));
+        }
 
         return res.toString();
     }
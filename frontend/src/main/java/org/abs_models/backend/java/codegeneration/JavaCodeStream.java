@@ -27,7 +27,9 @@ public class JavaCodeStream extends PrintStream {
         super(out, false, JavaBackend.CHARSET.name());
     }
 
-    public static JavaCodeStream from(OutputStream out) {
+    // Synchronized since the line separator is a global property and
+    // code may be generated on several threads
+    public static synchronized JavaCodeStream from(OutputStream out) {
         // Set the line separator to LF while the PrintStream is created so it will print LF on println() calls.
         System.setProperty(LINE_SEPARATOR_PROPERTY, "\n");
         try {
@@ -19,6 +19,7 @@ import java.util.stream.StreamSupport;
 import org.abs_models.backend.java.JavaBackend;
 import org.abs_models.backend.java.JavaBackendConstants;
 import org.abs_models.backend.java.lib.expr.BinOp;
+import org.abs_models.backend.java.lib.expr.StdLibCollections;
 import org.abs_models.backend.java.lib.runtime.ABSBuiltInFunctions;
 import org.abs_models.backend.java.lib.runtime.ABSFut;
 import org.abs_models.backend.java.lib.runtime.ABSRuntime;
@@ -55,6 +56,7 @@ import org.abs_models.frontend.ast.MethodImpl;
 import org.abs_models.frontend.ast.MethodSig;
 import org.abs_models.frontend.ast.NewExp;
 import org.abs_models.frontend.ast.ParamDecl;
+import org.abs_models.frontend.ast.ParametricFunctionDecl;
 import org.abs_models.frontend.ast.Pattern;
 import org.abs_models.frontend.ast.PatternVar;
 import org.abs_models.frontend.ast.PatternVarUse;
@@ -322,6 +324,60 @@ public class JavaGeneratorHelper {
         stream.println("return result;");
     }
 
+    private static final Set<String> stdlibCollectionFunctions
+        = Set.of("lookup", "lookupDefault", "contains", "size");
+
+    /**
+     * Check whether the standard library function {@code decl} is
+     * implemented by {@link StdLibCollections} instead of by its ABS
+     * definition.
+     */
+    public static boolean hasStdLibCollectionsBody(FunctionDecl decl) {
+        return decl.getModuleDecl().getName().equals("ABS.StdLib")
+            && stdlibCollectionFunctions.contains(decl.getName());
+    }
+
+    /**
+     * Generate a function body that calls {@link StdLibCollections}.  These
+     * functions give the same results as their definitions in abslang.abs
+     * but do not walk the whole map or set when it is queried repeatedly.
+     */
+    public static void generateStdLibCollectionsBody(PrintStream stream, FunctionDecl decl) {
+        String helper = StdLibCollections.class.getName();
+        String[] params = new String[decl.getNumParam()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = JavaBackend.getVariableName(decl.getParam(i).getName());
+        }
+        switch (decl.getName()) {
+        case "lookup": {
+            // def Maybe<B> lookup<A, B>(Map<A, B> ms, A k)
+            String valueType = ((ParametricFunctionDecl)decl).getTypeParameter(1).getName();
+            stream.println("java.lang.Object $value = " + helper + ".lookup(" + params[0] + ", " + params[1] + ");");
+            stream.println("if ($value == " + helper + ".NOT_FOUND) return new ABS.StdLib.Maybe_Nothing<>();");
+            stream.println("return new ABS.StdLib.Maybe_Just<>((" + valueType + ")$value);");
+            break;
+        }
+        case "lookupDefault": {
+            // def B lookupDefault<A, B>(Map<A, B> ms, A k, B d)
+            String valueType = ((ParametricFunctionDecl)decl).getTypeParameter(1).getName();
+            stream.println("java.lang.Object $value = " + helper + ".lookup(" + params[0] + ", " + params[1] + ");");
+            stream.println("if ($value == " + helper + ".NOT_FOUND) return " + params[2] + ";");
+            stream.println("return (" + valueType + ")$value;");
+            break;
+        }
+        case "contains":
+            // def Bool contains<A>(Set<A> ss, A e)
+            stream.println("return " + helper + ".contains(" + params[0] + ", " + params[1] + ");");
+            break;
+        case "size":
+            // def Int size<A>(Set<A> xs)
+            stream.println("return new " + Apint.class.getName() + "(" + helper + ".size(" + params[0] + "));");
+            break;
+        default:
+            throw new IllegalArgumentException("No collection implementation for " + decl.getName());
+        }
+    }
+
     public static void generateDataConstructor(PrintStream stream, DataConstructor c, String datatypeName, DataTypeDecl dataTypeDecl) {
         String constructorClassName = JavaBackend.getConstructorName(c);
         JavaGeneratorHelper.generateHelpLine(stream,c);
@@ -344,6 +400,7 @@ public class JavaGeneratorHelper {
                                .mapToObj(i -> "arg" + i)
                                .collect(Collectors.joining(", "))
                        + " }; }");
+        stream.println("public int getNumArgs() { return " + c.getNumConstructorArg() + "; }");
         stream.println("public Object getArg(int i) {");
         stream.println("switch (i) {");
         for (int i = 0; i < c.getNumConstructorArg(); i++) {
@@ -797,6 +854,7 @@ public class JavaGeneratorHelper {
      * @throws IOException
      */
     public static void createGenFolder(JavaCode code) throws IOException {
+        if (code.isInMemory()) return;
         File genDir = code.getSrcDir();
         // TODO (rudi): consider cleaning up Java files below genDir/,
         // but that's risky.  On the one hand, we don't want stale
@@ -887,7 +945,32 @@ public class JavaGeneratorHelper {
         return false;
     }
 
-    private static long tempCounter = 0;
+    /**
+     * The generated class whose code is being generated on the current
+     * thread.  Names that must be unique within a class or package are
+     * numbered per class, so that the generated code does not depend on
+     * the order in which classes are generated; see {@link
+     * ParallelJavaGenerator}.
+     */
+    private static final class GeneratedClass {
+        final String name;
+        long temps = 0;
+        int schedulingStrategies = 0;
+
+        GeneratedClass(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final ThreadLocal<GeneratedClass> currentClass
+        = ThreadLocal.withInitial(() -> new GeneratedClass(""));
+
+    /**
+     * Start generating the Java class {@code className}.
+     */
+    public static void startClass(String className) {
+        currentClass.set(new GeneratedClass(className));
+    }
 
     /**
      * replaces a varUse v of the local variable vDecl by a new temporary variable, which will be
@@ -895,8 +978,9 @@ public class JavaGeneratorHelper {
      */
     private static void replaceVarUse(PrintStream beforeAwaitStream, VarUse v, TypedVarOrFieldDecl vDecl) {
         String name = JavaBackend.getVariableName(vDecl.getName());
-        String tempName = "temp$" + tempCounter + "$" + name;
-        tempCounter = Math.max(tempCounter+1, 0);
+        GeneratedClass c = currentClass.get();
+        String tempName = "temp$" + c.temps + "$" + name;
+        c.temps = Math.max(c.temps + 1, 0);
         // copy value of variable to temporary, final variable
         beforeAwaitStream.print("final ");
         vDecl.getTypeUse().generateJava(beforeAwaitStream);
@@ -917,19 +1001,20 @@ public class JavaGeneratorHelper {
     }
 
     public static String generateUserSchedulingStrategy(NewExp exp, PureExp scheduler) {
-        String className = "UserSchedulingStrategy_" + JavaBackend.getRandomName();
+        GeneratedClass c = currentClass.get();
+        String className = "UserSchedulingStrategy_" + c.name + "_" + c.schedulingStrategies++;
         JavaCode.Package pkg;
-        File file;
+        PrintStream stream;
         try {
             pkg = exp.getModuleDecl().getJavaPackage();
-            file = pkg.createJavaFile(className);
+            stream = pkg.createJavaStream(className);
         } catch (JavaCodeGenerationException | IOException e) {
             // TODO properly handle exceptions
             e.printStackTrace();
             return null;
         }
 
-        try (PrintStream stream = JavaCodeStream.from(file)){
+        try {
             stream.println("package " + pkg.packageName + ";");
             stream.print("public final class " + className);
             stream.println(" extends " + UserSchedulingStrategy.class.getName() + " {");
@@ -949,11 +1034,9 @@ public class JavaGeneratorHelper {
 
             // connect generated TaskSchedulingStrategy to the cog's TaskScheduler
             return pkg.packageName + "." + className;
-        } catch (IOException e) {
-            // TODO properly handle exception
-            e.printStackTrace();
+        } finally {
+            stream.close();
         }
-        return null;
     }
 
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.codegeneration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.abs_models.backend.common.ParallelCodeGenerator;
+import org.abs_models.backend.java.JavaBackend;
+import org.abs_models.frontend.ast.Decl;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.ModuleDecl;
+
+/**
+ * Generates the Java code of a model on several threads.
+ * <p>
+ * Packages, main classes and incremental build keys are created
+ * sequentially, in the same order as {@link Model#generateJavaCode}, while
+ * each declaration is prepared (see {@link ParallelCodeGenerator#prepare}).
+ * Declarations and main blocks are then generated on a thread pool into
+ * {@link JavaCode.DeferredSources}, which are written in source order, so
+ * that the generated files and the list of files to compile do not
+ * depend on the number of threads.
+ */
+public final class ParallelJavaGenerator {
+
+    private ParallelJavaGenerator() {}
+
+    /** The code of a declaration or main block of a module. */
+    private static final class Part {
+        final ModuleDecl module;
+        final ParallelCodeGenerator.Task task;
+        JavaCode.DeferredSources sources = null;
+
+        Part(JavaCode code, ModuleDecl module, JavaCode.Generator generator) {
+            this.module = module;
+            this.task = new ParallelCodeGenerator.Task(() -> sources = code.generateDeferred(generator));
+        }
+    }
+
+    public static void generate(Model model, JavaCode code, int threads) throws IOException, JavaCodeGenerationException {
+        IncrementalBuild incremental = code.getIncrementalBuild();
+        List<Part> parts = new ArrayList<>();
+        for (ModuleDecl m : model.getModuleDecls()) {
+            JavaCode.Package pkg = m.createJavaPackage(code);
+            for (Decl d : m.getDecls()) {
+                ParallelCodeGenerator.prepare(d);
+                if (incremental == null || !incremental.isUpToDate(d, pkg.packageName, d.getJavaClassNames())) {
+                    parts.add(new Part(code, m, () -> d.generateJavaCode(pkg)));
+                }
+            }
+            if (m.hasBlock()) {
+                String mainName = JavaBackend.getJavaNameForMainBlock();
+                pkg.addMainClass(mainName);
+                ParallelCodeGenerator.prepare(m.getBlock());
+                if (incremental == null || !incremental.isUpToDate(m.getBlock(), pkg.packageName, mainName)) {
+                    parts.add(new Part(code, m, () -> m.generateJavaMainClass(pkg)));
+                }
+            }
+        }
+        List<ParallelCodeGenerator.Task> tasks = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            tasks.add(part.task);
+        }
+        ParallelCodeGenerator.runAll(model, tasks, threads);
+        // Write files up to the first failure, as sequential generation does
+        for (Part part : parts) {
+            Exception failure = part.task.getFailure();
+            if (failure instanceof IOException e) {
+                throw e;
+            } else if (failure instanceof JavaCodeGenerationException e) {
+                throw e;
+            } else if (failure != null) {
+                throw new JavaCodeGenerationException("Module " + part.module.getName() + ":" + failure.getLocalizedMessage(), failure);
+            }
+            part.sources.write();
+        }
+    }
+}
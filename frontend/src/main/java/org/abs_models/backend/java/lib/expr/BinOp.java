@@ -65,6 +65,42 @@ public class BinOp {
         throw new RuntimeException("Encountered unknown ABS type " + v1.getClass() + " in BinOp#eq, giving up.");
     }
 
+    /**
+     * Return a hash code for an ABS value that is consistent with {@link
+     * #eq}: values that are equal according to {@code eq} have the same hash
+     * code.  Numbers hash by value regardless of their representation,
+     * objects and futures by identity, and algebraic data type values
+     * structurally.
+     */
+    public static int hash(Object v) {
+        switch (v) {
+            case null: return 0;
+            case ABSDynamicClass c: return c.getName().hashCode();
+            case ABSProcess p: return System.identityHashCode(p);
+            case ABSObject o: return System.identityHashCode(o);
+            case ABSFut<?> f: return System.identityHashCode(f);
+            case ABSUnit u: return 1;
+            case Boolean b: return b.hashCode();
+            case Aprational r: {
+                // Numerically equal values must hash alike, even when one is
+                // an Apint and the other an Aprational with denominator 1
+                if (r.radix() != 10) r = r.toRadix(10);
+                return 31 * r.numerator().hashCode() + r.denominator().hashCode();
+            }
+            case Double f: return f.hashCode();
+            case String s: return s.hashCode();
+            case ABSAlgebraicDataType t: {
+                int result = t.getConstructorName().hashCode();
+                for (int i = 0; i < t.getNumArgs(); i++) {
+                    result = 31 * result + hash(t.getArg(i));
+                }
+                return result;
+            }
+            default:
+                throw new RuntimeException("Encountered unknown ABS type " + v.getClass() + " in BinOp#hash, giving up.");
+        }
+    }
+
     public static Boolean notEq(Object v, Object v2) {
         return !eq(v, v2);
     }
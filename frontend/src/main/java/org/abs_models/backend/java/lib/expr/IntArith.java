@@ -0,0 +1,141 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.lib.expr;
+
+import org.apfloat.Apint;
+import org.apfloat.Aprational;
+
+/**
+ * Arithmetic on ABS numbers with a fast path for integers that fit into a
+ * {@code long}.  Code generated with {@code --fast-arithmetic} calls these
+ * methods instead of the methods of {@link Apint} and {@link Aprational}.
+ * <p>
+ * If both operands are integers of at most 18 decimal digits, the result is
+ * computed with {@code long} arithmetic using the overflow-checking methods
+ * of {@link Math}; on overflow, or for larger or non-integer operands, the
+ * apfloat methods are used.  The results are always equal to the results of
+ * the apfloat methods.
+ */
+public final class IntArith {
+
+    private IntArith() {}
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final Apint[] cache = new Apint[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for (int i = 0; i < cache.length; i++) {
+            cache[i] = new Apint(i + CACHE_LOW);
+        }
+    }
+
+    /**
+     * Return an {@code Apint} with the given value.  Small values are
+     * shared instead of allocated.
+     */
+    public static Apint valueOf(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return cache[(int)value - CACHE_LOW];
+        }
+        return new Apint(value);
+    }
+
+    /**
+     * Check whether {@code a} is an integer whose value fits into a {@code
+     * long}.  Integers with at most 18 decimal digits always do.
+     */
+    private static boolean isSmall(Aprational a) {
+        return a instanceof Apint && a.radix() == 10 && a.scale() <= 18;
+    }
+
+    public static Apint add(Apint a, Apint b) {
+        if (isSmall(a) && isSmall(b)) {
+            try {
+                return valueOf(Math.addExact(a.longValue(), b.longValue()));
+            } catch (ArithmeticException e) {
+                // overflow, fall through
+            }
+        }
+        return a.add(b);
+    }
+
+    public static Aprational add(Aprational a, Aprational b) {
+        if (isSmall(a) && isSmall(b)) return add((Apint)a, (Apint)b);
+        return a.add(b);
+    }
+
+    public static Apint subtract(Apint a, Apint b) {
+        if (isSmall(a) && isSmall(b)) {
+            try {
+                return valueOf(Math.subtractExact(a.longValue(), b.longValue()));
+            } catch (ArithmeticException e) {
+                // overflow, fall through
+            }
+        }
+        return a.subtract(b);
+    }
+
+    public static Aprational subtract(Aprational a, Aprational b) {
+        if (isSmall(a) && isSmall(b)) return subtract((Apint)a, (Apint)b);
+        return a.subtract(b);
+    }
+
+    public static Apint multiply(Apint a, Apint b) {
+        if (isSmall(a) && isSmall(b)) {
+            try {
+                return valueOf(Math.multiplyExact(a.longValue(), b.longValue()));
+            } catch (ArithmeticException e) {
+                // overflow, fall through
+            }
+        }
+        return a.multiply(b);
+    }
+
+    public static Aprational multiply(Aprational a, Aprational b) {
+        if (isSmall(a) && isSmall(b)) return multiply((Apint)a, (Apint)b);
+        return a.multiply(b);
+    }
+
+    public static Apint negate(Apint a) {
+        // -Long.MIN_VALUE cannot happen since small values have at most 18
+        // digits
+        if (isSmall(a)) return valueOf(-a.longValue());
+        return a.negate();
+    }
+
+    public static Aprational negate(Aprational a) {
+        if (isSmall(a)) return negate((Apint)a);
+        return a.negate();
+    }
+
+    private static int compare(Aprational a, Aprational b) {
+        if (isSmall(a) && isSmall(b)) return Long.compare(a.longValue(), b.longValue());
+        return a.compareTo(b);
+    }
+
+    public static Boolean eq(Aprational a, Aprational b) {
+        return compare(a, b) == 0;
+    }
+
+    public static Boolean notEq(Aprational a, Aprational b) {
+        return compare(a, b) != 0;
+    }
+
+    public static Boolean lt(Aprational a, Aprational b) {
+        return compare(a, b) < 0;
+    }
+
+    public static Boolean ltEq(Aprational a, Aprational b) {
+        return compare(a, b) <= 0;
+    }
+
+    public static Boolean gt(Aprational a, Aprational b) {
+        return compare(a, b) > 0;
+    }
+
+    public static Boolean gtEq(Aprational a, Aprational b) {
+        return compare(a, b) >= 0;
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.lib.expr;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.abs_models.backend.java.lib.types.ABSDataType;
+import org.abs_models.backend.java.lib.types.ChampMap;
+import org.apfloat.Aprational;
+
+/**
+ * Implementations of the standard library functions {@code lookup}, {@code
+ * lookupDefault}, {@code contains} and {@code size}, used by the code
+ * generated for these functions.
+ * <p>
+ * Values of type {@code Map} and {@code Set} are still represented by their
+ * constructors {@code InsertAssoc} / {@code EmptyMap} and {@code Insert} /
+ * {@code EmptySet}, so that pattern matching, equality and all other
+ * functions keep working unchanged.  To avoid walking the list on every
+ * query, a map or set that is queried repeatedly gets a {@link ChampMap}
+ * index, which is kept in a cache keyed by the identity of the first list
+ * node and discarded when the map or set becomes unreachable.  Since values
+ * are immutable, an index never becomes stale.  An index for a new map or
+ * set reuses the index of its tail if there is one, so that maps built with
+ * {@code insert} do not need to be indexed from scratch.
+ * <p>
+ * A map index associates each key with the value of its first entry, which
+ * is the one found by {@code lookup}.  Sets are only indexed if their elements
+ * are numbers, strings or booleans in ascending order, as they are when
+ * built via {@code insertElement} and {@code set}; otherwise membership
+ * tests walk the list exactly like {@code contains} does.
+ */
+public final class StdLibCollections {
+
+    private StdLibCollections() {}
+
+    /** Returned by {@link #lookup} if the map has no entry for the key. */
+    public static final Object NOT_FOUND = new Object();
+
+    /**
+     * Maps and sets that are shorter than this are never indexed, walking
+     * them is cheaper than maintaining an index.
+     */
+    static final int MIN_INDEXED_SIZE = 16;
+
+    /**
+     * Number of queries after which a map or set is indexed.  Building an
+     * index costs about as much as a few walks of the list, so we do not
+     * index values that are queried only once, e.g., in loops that alternate
+     * between {@code put} and {@code lookup}.
+     */
+    static final int INDEX_AFTER_QUERIES = 3;
+
+    /**
+     * Cache entry of a map or set.  Entries are shared by all threads of the
+     * model; threads that reach the query threshold at the same time may
+     * build the same index, but only the first one is published.
+     */
+    private static final class Entry {
+        final AtomicInteger queries = new AtomicInteger(1);
+        final AtomicReference<ChampMap> index = new AtomicReference<>();
+        /** True if this is a set whose elements are not sorted. */
+        volatile boolean unindexable = false;
+    }
+
+    /**
+     * A weak reference that compares by the identity of its referent.
+     * References that are not registered with {@link #queue} serve as probes
+     * for cache lookups.
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hash;
+
+        IdentityKey(Object referent) {
+            super(referent);
+            hash = System.identityHashCode(referent);
+        }
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof IdentityKey other)) return false;
+            Object referent = get();
+            return referent != null && referent == other.get();
+        }
+    }
+
+    private static final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private static final ConcurrentHashMap<IdentityKey, Entry> cache = new ConcurrentHashMap<>();
+
+    private static Entry getEntry(Object head) {
+        return cache.get(new IdentityKey(head));
+    }
+
+    private static void addEntry(Object head) {
+        for (Object k = queue.poll(); k != null; k = queue.poll()) {
+            cache.remove(k);
+        }
+        cache.putIfAbsent(new IdentityKey(head, queue), new Entry());
+    }
+
+    /**
+     * Count a query of an already-known map or set; return true if it should
+     * be indexed now.
+     */
+    private static boolean countQuery(Entry entry) {
+        if (entry.index.get() != null || entry.unindexable) return false;
+        return entry.queries.incrementAndGet() >= INDEX_AFTER_QUERIES;
+    }
+
+    private static boolean isCons(ABSDataType node) {
+        return node.getNumArgs() == 2;
+    }
+
+    private static ABSDataType tail(ABSDataType node) {
+        return (ABSDataType)node.getArg(1);
+    }
+
+    /**
+     * Collect the list nodes of {@code head} up to, but excluding, the first
+     * node that is empty or already indexed; the index of that node is
+     * stored in {@code base[0]}.
+     */
+    private static ArrayList<ABSDataType> unindexedPrefix(ABSDataType head, ChampMap[] base) {
+        ArrayList<ABSDataType> result = new ArrayList<>();
+        ABSDataType node = head;
+        base[0] = ChampMap.EMPTY;
+        while (isCons(node)) {
+            if (node != head) {
+                Entry e = getEntry(node);
+                ChampMap index = e == null ? null : e.index.get();
+                if (index != null) {
+                    base[0] = index;
+                    break;
+                }
+            }
+            result.add(node);
+            node = tail(node);
+        }
+        return result;
+    }
+
+    private static void indexMap(ABSDataType map, Entry entry) {
+        ChampMap[] base = new ChampMap[1];
+        ArrayList<ABSDataType> nodes = unindexedPrefix(map, base);
+        ChampMap index = base[0];
+        // Insert from the back so that the first occurrence of a key wins
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            ABSDataType pair = (ABSDataType)nodes.get(i).getArg(0);
+            index = index.put(pair.getArg(0), pair.getArg(1));
+        }
+        entry.index.compareAndSet(null, index);
+    }
+
+    /**
+     * Check whether {@code BinOp.gt} is a total order on values of the type
+     * of {@code v}.  This is not the case for algebraic data types, for
+     * which a walk of a set might stop before reaching an element that is
+     * present.
+     */
+    private static boolean hasTotalOrder(Object v) {
+        return v instanceof Aprational || v instanceof Double
+            || v instanceof String || v instanceof Boolean;
+    }
+
+    private static void indexSet(ABSDataType set, Entry entry) {
+        ChampMap[] base = new ChampMap[1];
+        ArrayList<ABSDataType> nodes = unindexedPrefix(set, base);
+        ChampMap index = base[0];
+        // If the rest of the set is indexed, it is sorted, but its first
+        // element must still be compared with the last unindexed one
+        ABSDataType rest = tail(nodes.get(nodes.size() - 1));
+        boolean hasNext = isCons(rest);
+        Object next = hasNext ? rest.getArg(0) : null;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Object element = nodes.get(i).getArg(0);
+            if (!hasTotalOrder(element) || (hasNext && !BinOp.gt(next, element))) {
+                entry.unindexable = true;
+                return;
+            }
+            index = index.put(element, Boolean.TRUE);
+            next = element;
+            hasNext = true;
+        }
+        entry.index.compareAndSet(null, index);
+    }
+
+    /**
+     * Return the value of the first entry for {@code key} in {@code map}, or
+     * {@link #NOT_FOUND}.
+     */
+    public static Object lookup(ABSDataType map, Object key) {
+        Entry entry = getEntry(map);
+        if (entry != null) {
+            if (countQuery(entry)) indexMap(map, entry);
+            ChampMap index = entry.index.get();
+            if (index != null) return index.get(key, NOT_FOUND);
+        }
+        int length = 0;
+        Object result = NOT_FOUND;
+        for (ABSDataType node = map; isCons(node); node = tail(node)) {
+            length++;
+            ABSDataType pair = (ABSDataType)node.getArg(0);
+            if (BinOp.eq(pair.getArg(0), key)) {
+                result = pair.getArg(1);
+                break;
+            }
+        }
+        if (entry == null && length >= MIN_INDEXED_SIZE) addEntry(map);
+        return result;
+    }
+
+    /**
+     * Check whether {@code set} contains {@code element}, with the same
+     * result as the function {@code contains} of the standard library.
+     */
+    public static Boolean contains(ABSDataType set, Object element) {
+        Entry entry = getEntry(set);
+        if (entry != null) {
+            if (countQuery(entry)) indexSet(set, entry);
+            ChampMap index = entry.index.get();
+            if (index != null) return index.get(element, NOT_FOUND) != NOT_FOUND;
+        }
+        int length = 0;
+        Boolean result = Boolean.FALSE;
+        for (ABSDataType node = set; isCons(node); node = tail(node)) {
+            length++;
+            Object x = node.getArg(0);
+            if (BinOp.eq(x, element)) {
+                result = Boolean.TRUE;
+                break;
+            } else if (BinOp.gt(x, element)) {
+                break;
+            }
+        }
+        if (entry == null && length >= MIN_INDEXED_SIZE) addEntry(set);
+        return result;
+    }
+
+    /**
+     * Return the number of elements of {@code set}, counting duplicates in
+     * unsorted sets like the function {@code size} of the standard library
+     * does.
+     */
+    public static long size(ABSDataType set) {
+        Entry entry = getEntry(set);
+        if (entry != null) {
+            ChampMap index = entry.index.get();
+            // An index exists only for sorted sets, which have no duplicates
+            if (index != null) return index.size();
+        }
+        long length = 0;
+        for (ABSDataType node = set; isCons(node); node = tail(node)) {
+            length++;
+        }
+        return length;
+    }
+}
@@ -72,6 +72,25 @@ public class ABSDCMirror {
         }
     }
 
+    /**
+     * Update DC state: advance time by {@code n} ticks.  This is equivalent
+     * to calling {@link #advanceTimeBy1Tick()} {@code n} times.
+     */
+    public void advanceTimeByTicks(long n) {
+        try {
+            try {
+                DC_CHECK_SAME_COG.setBoolean(dc, false);
+                for (long i = 0; i < n; i++) {
+                    DC_ADVANCE_TIME_BY_1_TICK.invoke(dc);
+                }
+            } finally {
+                DC_CHECK_SAME_COG.setBoolean(dc, true);
+            }
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private Double getCreationTime() {
         ABSAlgebraicDataType creationTimeRaw;
 	try {
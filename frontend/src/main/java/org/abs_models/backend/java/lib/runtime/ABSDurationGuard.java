@@ -4,6 +4,8 @@
  */
 package org.abs_models.backend.java.lib.runtime;
 
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import org.apfloat.Aprational;
@@ -26,6 +28,25 @@ public class ABSDurationGuard extends ABSGuard {
      */
     Aprational max_time;
 
+    /**
+     * The waiting task blocks on this lock instead of the object's monitor,
+     * so that virtual threads release their carrier thread while waiting.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition woken = lock.newCondition();
+
+    /**
+     * The suspended task and its cog, set before registering with the
+     * runtime.  The runtime reports the task as awake via {@link
+     * COG#notifyWakeup} when waking it, so that the task's cog is counted as
+     * active before the runtime could consider another clock advance.
+     * <p>
+     * NOTE: access {@code wakeupNotified} only while holding {@code lock}.
+     */
+    private COG waitingCog;
+    private Task<?> waitingTask;
+    private boolean wakeupNotified = false;
+
     /**
      * Construct an ABSDurationGuard.  Note that the constructor arguments are
      * *relative* times that are converted to absolute times internally.
@@ -74,35 +95,62 @@ public class ABSDurationGuard extends ABSGuard {
      * the clock advances to this guard's minimum wakeup time.
      */
     @Override
-    public synchronized boolean await(COG cog, Task<?> task) {
+    public boolean await(COG cog, Task<?> task) {
         log.finest(() -> "Awaiting until time between " + getMinTime() + " and " + getMaxTime());
 
         boolean mustSuspend = !isTrue();
-
         if (mustSuspend) {
+            waitingCog = cog;
+            waitingTask = task;
             // Update ABSRuntime state *before* notifying our own cog, so in
             // case everyone's idle the runtime will already know it needs to
-            // wake us.
+            // wake us.  We do not hold our lock here since notifying the cog
+            // might advance the clock and wake up waiting guards.
             ABSRuntime.getRuntime().addDurationGuard(this);
             cog.notifyAwait(task);
         }
-        while (!isTrue()) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                // This code copied over from ABSFut#await
-                log.finest(() -> this + " was interruped during await");
-                Thread.currentThread().interrupt();
-                break;
+        lock.lock();
+        try {
+            while (!isTrue()) {
+                try {
+                    woken.await();
+                } catch (InterruptedException e) {
+                    // This code copied over from ABSFut#await
+                    log.finest(() -> this + " was interruped during await");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
-        }
-        if (mustSuspend) {
-            cog.notifyWakeup(task);
+            if (mustSuspend && !wakeupNotified) {
+                // We were interrupted, or saw the guard become true before
+                // the runtime woke us up
+                wakeupNotified = true;
+                cog.notifyWakeup(task);
+            }
+        } finally {
+            lock.unlock();
         }
         // we only reach this point once we became true
         return true;
     }
 
+    /**
+     * Wake up the task waiting on this guard.  Called by {@link ABSRuntime}
+     * once the guard has become true after a clock advance.
+     */
+    void wakeUp() {
+        lock.lock();
+        try {
+            if (!wakeupNotified) {
+                wakeupNotified = true;
+                waitingCog.notifyWakeup(waitingTask);
+            }
+            woken.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public String toString() {
         return "ABSDurationGuard(" + getMinTime() + "," + getMaxTime() + ")";
     }
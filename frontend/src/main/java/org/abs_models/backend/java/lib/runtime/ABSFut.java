@@ -10,57 +10,179 @@ import org.abs_models.backend.java.observing.FutView;
 import org.abs_models.backend.java.observing.TaskView;
 import org.abs_models.backend.java.scheduling.GuardWaiter;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
  * The ABS Future datatype.
+ * <p>
+ * A future is resolved by a single compare-and-set on {@link #outcome}.
+ * Everyone waiting for the future (blocked threads and {@link #onResolve}
+ * callbacks) pushes a {@link Waiter} node onto the lock-free stack {@link
+ * #waiters}; the resolving thread replaces the stack with {@link
+ * #RESOLVED} and runs all nodes.  Blocked threads use {@link LockSupport},
+ * so that virtual threads release their carrier thread while waiting.
  */
 public abstract class ABSFut<V> extends ABSBuiltInDataType
     implements Future<V>
 {
     protected static final Logger log = Logging.getLogger(ABSFut.class.getName());
     private static final AtomicInteger counter = new AtomicInteger();
-    private final int id = counter.incrementAndGet();
+
     /**
-     * True if the future is resolved, false if not.
+     * The id of this future, allocated on first call to {@link #getID} so
+     * that futures that are never observed do not touch the global
+     * counter.  Zero means no id allocated yet.
      */
-    protected boolean isDone = false;
+    private volatile int id = 0;
+
     /**
-     * The value of the resolved future.  Not used if the future was resolved
-     * via an exception.
+     * The outcome of the future: {@code null} while unresolved, {@link #NIL}
+     * if resolved to {@code null}, an {@link ExceptionalOutcome} if resolved
+     * via an exception, the value otherwise.
      */
-    protected V value = null;
+    private volatile Object outcome = null;
+
     /**
-     * The exception that was returned instead of a value.  Not used if the
-     * future was resolved normally.
+     * Stack of waiters, linked via {@link Waiter#next}; {@link #RESOLVED}
+     * once the future is resolved and all waiters have been taken.
      */
-    protected ABSException exception = null;
+    private volatile Waiter waiters = null;
+
+    private static final Object NIL = new Object();
+
+    private static final class ExceptionalOutcome {
+        final ABSException exception;
+        ExceptionalOutcome(ABSException exception) { this.exception = exception; }
+    }
+
+    private static final VarHandle ID;
+    private static final VarHandle OUTCOME;
+    private static final VarHandle WAITERS;
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            ID = l.findVarHandle(ABSFut.class, "id", int.class);
+            OUTCOME = l.findVarHandle(ABSFut.class, "outcome", Object.class);
+            WAITERS = l.findVarHandle(ABSFut.class, "waiters", Waiter.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     /**
-     * List of guards waiting for the future to be resolved.  Note: not used
-     * in all schedulers.
+     * A node in the stack of waiters.  {@link #fire} is called once, in the
+     * resolving thread, after the future has been resolved.
      */
-    private List<GuardWaiter> waitingThreads = null;
+    private abstract static class Waiter {
+        Waiter next;
+        abstract void fire();
+    }
+
+    private static final Waiter RESOLVED = new Waiter() {
+            @Override void fire() {}
+        };
+
+    private static final class CallbackWaiter<V> extends Waiter {
+        final ABSFut<V> fut;
+        final Consumer<? super ABSFut<V>> callback;
+        CallbackWaiter(ABSFut<V> fut, Consumer<? super ABSFut<V>> callback) {
+            this.fut = fut;
+            this.callback = callback;
+        }
+        @Override void fire() {
+            callback.accept(fut);
+        }
+    }
 
     /**
-     * Tri-state flag: null if no thread is waiting, false when at least one
-     * thread is inside `wait`, true if at least one thread has woken up (and
-     * signaled its cog).
+     * A thread blocked on the future.  If the thread runs an ABS task, the
+     * resolving thread reports the task as awake to its cog before
+     * unparking it, so the awaiting cog counts as active before the
+     * resolving task can finish.  The states guard against the future
+     * being resolved while the awaiting thread is still reporting its
+     * suspension to its cog.
      */
-    protected AtomicBoolean taskHasWokenUp = null;
+    private static final class ThreadWaiter extends Waiter {
+        static final int NEW = 0;        // pushed, not yet suspending
+        static final int SUSPENDING = 1; // informing the cog
+        static final int SUSPENDED = 2;  // cog informed, parked
+        static final int WAKING = 3;     // resolving thread informs the cog
+        static final int RELEASED = 4;   // woken up by the resolving thread
+        static final int CANCELLED = 5;  // interrupted or timed out
+
+        final Thread thread = Thread.currentThread();
+        final COG cog;
+        final Task<?> task;
+        volatile int state = NEW;
+
+        private static final VarHandle STATE;
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(ThreadWaiter.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        ThreadWaiter(COG cog, Task<?> task) {
+            this.cog = cog;
+            this.task = task;
+        }
+
+        boolean transition(int from, int to) {
+            return STATE.compareAndSet(this, from, to);
+        }
+
+        @Override void fire() {
+            while (true) {
+                switch (state) {
+                    case NEW:
+                        // The awaiting thread will notice that it does not
+                        // need to suspend.
+                        if (transition(NEW, RELEASED)) return;
+                        break;
+                    case SUSPENDING:
+                        // Wait until the awaiting thread has informed its
+                        // cog, so our wakeup notification comes after it.
+                        Thread.yield();
+                        break;
+                    case SUSPENDED:
+                        if (transition(SUSPENDED, WAKING)) {
+                            if (cog != null) cog.notifyWakeup(task);
+                            state = RELEASED;
+                            LockSupport.unpark(thread);
+                            return;
+                        }
+                        break;
+                    default:
+                        // cancelled by the awaiting thread
+                        return;
+                }
+            }
+        }
+    }
 
     protected ABSFut() {
         super("Fut");
     }
 
     public int getID() {
-        return id;
+        int result = id;
+        if (result == 0) {
+            int fresh = counter.incrementAndGet();
+            result = ID.compareAndSet(this, 0, fresh) ? fresh : id;
+        }
+        return result;
     }
 
     /**
@@ -95,80 +217,119 @@ public abstract class ABSFut<V> extends ABSBuiltInDataType
      * @throws InterruptedException
      */
     public V get(long timeout, TimeUnit unit) throws TimeoutException, InterruptedException {
-        long timeoutMs = unit.toMillis(timeout);
-        long startTime = System.currentTimeMillis();
-        synchronized (this) {
-            // WARNING (rudi): this has not been audited wrt deadlocks against
-            // the rest of the Java runtime
-            while (!isDone) {
-                long elapsedTime = System.currentTimeMillis() - startTime;
-                long remainingTime = timeoutMs - elapsedTime;
-                if (remainingTime <= 0) {
-                    throw new TimeoutException();
+        if (!isDone()) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            ThreadWaiter w = new ThreadWaiter(null, null);
+            if (push(w) && w.transition(ThreadWaiter.NEW, ThreadWaiter.SUSPENDED)) {
+                while (w.state != ThreadWaiter.RELEASED) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    boolean timedOut = remainingNanos <= 0;
+                    if ((timedOut || Thread.interrupted())
+                        && w.transition(ThreadWaiter.SUSPENDED, ThreadWaiter.CANCELLED)) {
+                        if (timedOut) throw new TimeoutException();
+                        throw new InterruptedException();
+                    }
+                    LockSupport.parkNanos(this, Math.max(remainingNanos, 0));
                 }
-                this.wait(remainingTime);
             }
-            // if (isCancelled) {
-            //     throw new CancellationException();
-            // }
-            return value;
         }
+        // if (isCancelled) {
+        //     throw new CancellationException();
+        // }
+        return getValue();
     }
 
-    public synchronized V getValue() {
-        return value;
+    @SuppressWarnings("unchecked")
+    public V getValue() {
+        Object o = outcome;
+        return (o == null || o == NIL || o instanceof ExceptionalOutcome) ? null : (V)o;
     }
 
-    public synchronized boolean isDone() {
-        return isDone;
+    /**
+     * Return the exception this future was resolved with, or {@code null}
+     * if the future is unresolved or was resolved with a value.
+     */
+    protected ABSException getException() {
+        return outcome instanceof ExceptionalOutcome e ? e.exception : null;
     }
 
-    public synchronized void awaitForModelApi() {
-        log.finest(() -> this + " awaiting for Model API");
+    public boolean isDone() {
+        return outcome != null;
+    }
 
-        while (!isDone) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                log.finest(() -> this + " was interruped during await");
-                Thread.currentThread().interrupt();
-                break;
-            }
+    /**
+     * Run {@code callback} once this future is resolved.  If the future is
+     * already resolved, the callback runs immediately in the calling thread;
+     * otherwise it runs in the thread resolving the future, so it should
+     * not block.
+     *
+     * @param callback The callback, called with this future.
+     */
+    public void onResolve(Consumer<? super ABSFut<V>> callback) {
+        if (isDone() || !push(new CallbackWaiter<>(this, callback))) {
+            callback.accept(this);
         }
-
-        log.finest(() -> this + " ready for Model API");
     }
 
-    public synchronized void await(COG cog, Task<?> task) {
-        log.fine(() -> this + (isDone ? " ready, skipping await" : " awaiting."));
-
-        boolean neededSuspend = !isDone;
+    /**
+     * Push a waiter onto the stack of waiters.
+     *
+     * @return true if the waiter was added, false if the future was
+     *   resolved in the meantime.
+     */
+    private boolean push(Waiter w) {
+        while (true) {
+            Waiter head = waiters;
+            if (head == RESOLVED) return false;
+            w.next = head;
+            if (WAITERS.compareAndSet(this, head, w)) return true;
+        }
+    }
 
-        if (neededSuspend) {
-            if (taskHasWokenUp == null) {
-                taskHasWokenUp = new AtomicBoolean(false);
-            }
+    /**
+     * Block the current thread until the future is resolved.  If {@code
+     * cog} is non-null, report the suspension and wakeup of {@code task} to
+     * the cog.
+     */
+    private void block(COG cog, Task<?> task) {
+        ThreadWaiter w = new ThreadWaiter(cog, task);
+        if (!push(w) || !w.transition(ThreadWaiter.NEW, ThreadWaiter.SUSPENDING)) {
+            // resolved before we needed to suspend
+            return;
+        }
+        if (cog != null) {
             log.finest(() -> this + " notifying COG: will suspend.");
             cog.notifyAwait(task);
         }
-
-        while (!isDone) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
+        w.state = ThreadWaiter.SUSPENDED;
+        while (w.state != ThreadWaiter.RELEASED) {
+            LockSupport.park(this);
+            if (Thread.interrupted()
+                && w.transition(ThreadWaiter.SUSPENDED, ThreadWaiter.CANCELLED)) {
                 log.finest(() -> this + " was interruped during await");
+                if (cog != null) cog.notifyWakeup(task);
                 Thread.currentThread().interrupt();
-                break;
+                return;
             }
         }
+        log.finest(() -> this + " woken up.");
+    }
 
-        if (neededSuspend) {
-            log.finest(() -> this + " notifying COG: became ready.");
-            cog.notifyWakeup(task);
-            taskHasWokenUp.set(true);
-            this.notify();
+    public void awaitForModelApi() {
+        log.finest(() -> this + " awaiting for Model API");
+        if (!isDone()) {
+            block(null, null);
+        }
+        log.finest(() -> this + " ready for Model API");
+    }
+
+    public void await(COG cog, Task<?> task) {
+        log.fine(() -> this + (isDone() ? " ready, skipping await" : " awaiting."));
+        if (!isDone()) {
+            block(cog, task);
         }
         // TODO: fix this; exceptions should be thrown by get, not by await
+        ABSException exception = getException();
         if (exception != null)
             throw exception;
     }
@@ -178,27 +339,9 @@ public abstract class ABSFut<V> extends ABSBuiltInDataType
     }
 
     protected void resolve(final V o, final ABSException e) {
-        if (isDone)
+        Object result = e != null ? new ExceptionalOutcome(e) : (o == null ? NIL : o);
+        if (!OUTCOME.compareAndSet(this, null, result))
             throw new IllegalStateException("Future is already resolved");
-        synchronized (this) {
-            if (isDone)
-                throw new IllegalStateException("Future is already resolved");
-            value = o;
-            exception = e;
-            isDone = true;
-            this.notifyAll();
-            if (taskHasWokenUp != null) {
-                log.finest(() -> this + " waiting for at least one awaiting task to wake up");
-                while (!taskHasWokenUp.get()) {
-                    try {
-                        this.wait();
-                    } catch (InterruptedException e1) {
-                        log.finest(() -> this + " was interruped during await");
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            }
-        }
         log.finest(() -> this + (e == null
             ? (" is resolved to value " + o)
             : (" is resolved to exception " + e)));
@@ -213,46 +356,37 @@ public abstract class ABSFut<V> extends ABSBuiltInDataType
         resolve(null,e);
     }
 
-
-
     private void informWaitingThreads() {
-        final ArrayList<GuardWaiter> copy;
-        synchronized (this) {
-            if (waitingThreads == null)
-            {
-                log.finest(() -> this + ": no threads waiting for result");
-                return;
-            }
-            copy = new ArrayList<>(waitingThreads);
-            waitingThreads.clear();
+        Waiter head = (Waiter)WAITERS.getAndSet(this, RESOLVED);
+        if (head == null) {
+            log.finest(() -> this + ": no threads waiting for result");
+            return;
         }
-
-        log.finest(() -> this + " informing " + copy.size() + " awaiting thread(s)");
-        for (GuardWaiter s : copy) {
-            s.checkGuard();
+        // Reverse the stack, so waiters are informed in the order they
+        // started waiting.
+        Waiter reversed = null;
+        while (head != null) {
+            Waiter next = head.next;
+            head.next = reversed;
+            reversed = head;
+            head = next;
+        }
+        for (Waiter w = reversed; w != null; w = w.next) {
+            w.fire();
         }
     }
 
     @Override
-    public synchronized String toString() {
-        return "Future (" + (isDone ? value : "unresolved") + ")";
+    public String toString() {
+        return "Future (" + (isDone() ? getValue() : "unresolved") + ")";
     }
 
     public boolean addWaitingThread(GuardWaiter thread) {
         // NOTE: this method is not used in the default scheduler.
-        if (isDone) {
+        if (isDone() || !push(new CallbackWaiter<>(this, f -> thread.checkGuard()))) {
             log.finest(() -> this + " is already resolved");
             return false;
         }
-        synchronized(this) {
-            if (isDone) {
-                log.finest(() -> this + " is already resolved");
-                return false;
-            }
-            if (waitingThreads == null)
-                waitingThreads = new ArrayList<>(1);
-            waitingThreads.add(thread);
-        }
         log.finest(() -> "Added guard to queue of " + this);
         return true;
     }
@@ -4,6 +4,8 @@
  */
 package org.abs_models.backend.java.lib.runtime;
 
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import org.apfloat.Aprational;
@@ -29,6 +31,25 @@ public class ABSResourceGuard extends ABSGuard {
      */
     Aprational resources_consumed;
 
+    /**
+     * The waiting task blocks on this lock instead of the object's monitor,
+     * so that virtual threads release their carrier thread while waiting.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition woken = lock.newCondition();
+
+    /**
+     * The suspended task and its cog, set before registering with the
+     * runtime.  The runtime reports the task as awake via {@link
+     * COG#notifyWakeup} when waking it, so that the task's cog is counted as
+     * active before the runtime could consider another clock advance.
+     * <p>
+     * NOTE: access {@code wakeupNotified} only while holding {@code lock}.
+     */
+    private COG waitingCog;
+    private Task<?> waitingTask;
+    private boolean wakeupNotified = false;
+
     /**
      * Construct an ABSResourceGuard.
      *
@@ -85,36 +106,63 @@ public class ABSResourceGuard extends ABSGuard {
      * guard will unblock the cog.
      */
     @Override
-    public synchronized boolean await(COG cog, Task<?> task) {
+    public boolean await(COG cog, Task<?> task) {
         log.finest(() -> "Consuming " + resources_needed + " resources ");
 
         boolean mustSuspend = !isTrue();
-
         if (mustSuspend) {
             log.finest(() -> "Waiting for resources from " + cog.getDC());
+            waitingCog = cog;
+            waitingTask = task;
             // Update ABSRuntime state *before* notifying our own cog to avoid
             // a small race conditon where the runtime might decide everyone's
-            // idle.
+            // idle.  We do not hold our lock here since notifying the cog
+            // might advance the clock and wake up waiting guards.
             ABSRuntime.getRuntime().addResourceGuard(this, cog.getDC());
             cog.notifyAwait(task);
         }
-        while (!isTrue()) {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                // This code copied over from ABSFut#await
-                log.finest(() -> this + " was interruped during await");
-                Thread.currentThread().interrupt();
-                break;
+        lock.lock();
+        try {
+            while (!isTrue()) {
+                try {
+                    woken.await();
+                } catch (InterruptedException e) {
+                    // This code copied over from ABSFut#await
+                    log.finest(() -> this + " was interruped during await");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
-        }
-        if (mustSuspend) {
-            cog.notifyWakeup(task);
+            if (mustSuspend && !wakeupNotified) {
+                // We were interrupted, or saw the guard become true before
+                // the runtime woke us up
+                wakeupNotified = true;
+                cog.notifyWakeup(task);
+            }
+        } finally {
+            lock.unlock();
         }
         // we only reach this point once we became true
         return true;
     }
 
+    /**
+     * Wake up the task waiting on this guard.  Called by {@link ABSRuntime}
+     * once the guard has been given the required amount of resources.
+     */
+    void wakeUp() {
+        lock.lock();
+        try {
+            if (!wakeupNotified) {
+                wakeupNotified = true;
+                waitingCog.notifyWakeup(waitingTask);
+            }
+            woken.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     public String toABSString() {
         return "consuming " + resources_consumed + " of " + resources_needed + " resources";
@@ -16,10 +16,12 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -74,30 +76,17 @@ public class ABSRuntime {
     private final AtomicInteger cogCounter = new AtomicInteger();
     private final AtomicInteger taskCounter = new AtomicInteger();
 
-    /** The number of currently active cogs in the system. */
-    private long nActiveCogs = 0;
-
-    /** The number of cogs that need to wake up before the next clock advance. */
-    private long nWakingCogs = 0;
+    /**
+     * The number of currently active cogs in the system.  A task waking up
+     * another task counts the woken task's cog as active before signalling
+     * it, so the system is quiescent exactly when this counter is zero.
+     */
+    private final QuiescenceCounter activeCogs = new QuiescenceCounter();
 
     /**
      * The current clock value.
      */
     private Aprational clock = new Aprational(0);
-    /**
-     * The current time to advance to, as needed by the currently waiting
-     * duration guards. This is the minimum of the maxima of all guards in the
-     * {@see #duration_guards} queue and is calculated every time we add a
-     * duration guard to the queue, or increment the clock.  Its value is only
-     * meaningful when {@code duration_guards} is non-empty.
-     * <p>
-     * Note that the clock might be incremented to less than this time point
-     * if there are also resource guards waiting.
-     * <p>
-     * NOTE: For safe access to this field, use {@ocde
-     * synchronized(duration_guards)}.
-     */
-    private Aprational wake_time_for_duration_guards = new Aprational(0);
     /**
      * Queue of all guards waiting on the clock, ordered by minimum duration.
      * This means when advancing the clock, we can pop elements in order until
@@ -108,6 +97,20 @@ public class ABSRuntime {
      */
     private final PriorityQueue<ABSDurationGuard> duration_guards
         = new PriorityQueue<>(Comparator.comparing(ABSDurationGuard::getMinTime));
+    /**
+     * The guards of {@see #duration_guards}, ordered by maximum duration.
+     * The head of this queue gives the time to advance to, as needed by the
+     * currently waiting duration guards.  Guards are removed lazily: an
+     * entry whose minimum time is not after the current clock has already
+     * been woken and is discarded when it reaches the head of the queue.
+     * <p>
+     * Note that the clock might be incremented to less than this time point
+     * if there are also resource guards waiting.
+     * <p>
+     * NOTE: Protect all access to this field with {@code synchronized(duration_guards)}.
+     */
+    private final PriorityQueue<ABSDurationGuard> duration_guards_by_max_time
+        = new PriorityQueue<>(Comparator.comparing(ABSDurationGuard::getMaxTime));
 
     /**
      * All deployment components in the system.  Upon time advance, we need to
@@ -119,13 +122,35 @@ public class ABSRuntime {
     public List<ABSDCMirror> getDeploymentComponents() { return deployment_components; }
 
     /**
-     * Queue of all pending resource requests.
+     * Mirrors of all deployment components, indexed by the deployment
+     * component, so we do not need to create a mirror for each resource
+     * request.
+     */
+    private final Map<ABSInterface, ABSDCMirror> dc_mirrors = new HashMap<>();
+
+    /**
+     * Queue of all pending resource requests, per deployment component.  A
+     * deployment component only has an entry while it has pending requests,
+     * so clock advance does not need to look at idle deployment components.
      *
      * TODO: figure out locking scheme for this; it will be used from both
      * advanceClock and addResourceGuard.
      */
-    private final Map<ABSInterface, List<ABSResourceGuard>> resource_guards
-        = new HashMap<>();
+    private final Map<ABSInterface, ArrayDeque<ABSResourceGuard>> resource_guards
+        = new LinkedHashMap<>();
+
+    /** Whether to stop at every resource boundary, see {@link #setStepwiseClock}. */
+    private boolean stepwiseClock = false;
+    /** Number of times the clock was advanced. */
+    private long nClockAdvances = 0;
+    /** Number of integer time boundaries (deployment component ticks) crossed. */
+    private long nTicks = 0;
+    /** Number of clock advances that crossed more than one tick at once. */
+    private long nMultiTickAdvances = 0;
+    /** Number of duration guards woken by clock advance. */
+    private long nDurationGuardsWoken = 0;
+    /** Number of resource guards woken by clock advance. */
+    private long nResourceGuardsWoken = 0;
 
     /**
      * classloader for loading the translated code and FLI classes
@@ -229,6 +254,23 @@ public class ABSRuntime {
         }
     }
 
+    /**
+     * Starts this runtime by using the Main class with name mainClassName
+     * (full qualified), loaded by the given class loader, e.g., for a
+     * model compiled in memory.
+     *
+     * @param loader the class loader for the generated classes
+     * @param mainClassName the full qualified name of the class name.
+     * @throws ClassNotFoundException
+     * @throws IllegalAccessException
+     * @throws InstantiationException
+     * @throws IOException if Model API could not be started
+     */
+    public void start(ClassLoader loader, String mainClassName) throws ClassNotFoundException, InstantiationException, IllegalAccessException, IOException {
+        classLoader = loader;
+        start(classLoader.loadClass(mainClassName));
+    }
+
     private final List<SystemObserver> systemObserver = new ArrayList<>();
 
     private GlobalSchedulingStrategy globalSchedulingStrategy;
@@ -469,14 +511,14 @@ public class ABSRuntime {
     }
 
     public COG createCOG(Class<?> clazz, ABSInterface dc) {
-        // NOTE: we don't increase `nActiveCogs` here, since the running task
+        // NOTE: we don't increase `activeCogs` here, since the running task
         // (who created the fresh object and cog) will schedule an
         // initialization task immediately.
         return new COG(this, clazz, dc);
     }
 
     public COG createCOG(Class<?> clazz, ABSInterface dc, TaskSchedulingStrategy strategy) {
-        // NOTE: we don't increase `nActiveCogs` here, since the running task
+        // NOTE: we don't increase `activeCogs` here, since the running task
         // (who created the fresh object and cog) will schedule an
         // initialization task immediately.
         return new COG(this, clazz, dc, strategy);
@@ -684,7 +726,23 @@ public class ABSRuntime {
     }
 
     public synchronized void registerDC(ABSInterface dc) {
-        deployment_components.add(new ABSDCMirror(dc));
+        ABSDCMirror mirror = new ABSDCMirror(dc);
+        deployment_components.add(mirror);
+        dc_mirrors.put(dc, mirror);
+    }
+
+    /**
+     * Return statistics about clock advance so far, e.g., for the Model
+     * API.
+     */
+    public synchronized Map<String, Long> getTimeAdvanceStatistics() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("clockAdvances", nClockAdvances);
+        result.put("ticks", nTicks);
+        result.put("multiTickAdvances", nMultiTickAdvances);
+        result.put("durationGuardsWoken", nDurationGuardsWoken);
+        result.put("resourceGuardsWoken", nResourceGuardsWoken);
+        return result;
     }
 
     /**
@@ -699,6 +757,15 @@ public class ABSRuntime {
         return clockLimit;
     }
 
+    /**
+     * Disable multi-tick clock advance: the clock then stops at every
+     * resource boundary, which is slower but gives the same result.  Used
+     * to check the multi-tick advance.
+     */
+    public synchronized void setStepwiseClock(boolean b) {
+        stepwiseClock = b;
+    }
+
     public void initializeClockLimit(Long amount) {
         if (amount != null) clockLimit = new Apint(amount);
     }
@@ -715,7 +782,7 @@ public class ABSRuntime {
             // deployment components update on integer boundaries.
             boolean wasAtLimit = clock.compareTo(clockLimit) == 0;
             clockLimit = clockLimit.add(new Apint(amount));
-            if (wasAtLimit && nActiveCogs == 0) {
+            if (wasAtLimit && activeCogs.isZero()) {
                 log.finest(() -> "Clock limit increased and no active cogs, trying to advance clock.");
                 maybeAdvanceClock();
             }
@@ -745,13 +812,13 @@ public class ABSRuntime {
             // we iterate through (dc, guards), so this loop is executed once
             // per dc that has resource requests.  If a dc fulfills all
             // requests, we remove its entry from `resource_guards`.
-            Map.Entry<ABSInterface, List<ABSResourceGuard>> entry = iterator.next();
-            var dc = new ABSDCMirror(entry.getKey());
+            Map.Entry<ABSInterface, ArrayDeque<ABSResourceGuard>> entry = iterator.next();
+            var dc = dc_mirrors.computeIfAbsent(entry.getKey(), ABSDCMirror::new);
             var guards = entry.getValue();
             log.finest(() -> "Processing " + dc.getWrappedDC() + " with " + guards.size() + " waiting guards");
             guard_loop:
             while (!guards.isEmpty()) {
-                ABSResourceGuard guard = guards.get(0);
+                ABSResourceGuard guard = guards.peekFirst();
                 Aprational needed = guard.getResourcesNeeded();
                 Aprational consumed = dc.consumeCPU(needed);
                 if (consumed.signum() == 0) {
@@ -762,10 +829,8 @@ public class ABSRuntime {
                 guard.consumeResources(consumed);
                 log.finest(() -> guard + " consumed " + consumed + " of " + needed + " resources from DC " + dc.getWrappedDC() + "; guard is finished: " + guard.isTrue());
                 if (guard.isTrue()) {
-                    guards.remove(0);
-                    synchronized(guard) {
-                        guard.notify();
-                    }
+                    guards.removeFirst();
+                    guard.wakeUp();
                     guardsWoken = guardsWoken + 1;
                 } else {
                     // We got some resources but not everything the
@@ -780,9 +845,31 @@ public class ABSRuntime {
                 iterator.remove();
             }
         }
+        nResourceGuardsWoken += guardsWoken;
         return guardsWoken;
     }
 
+    private boolean noPendingResourceGuards() {
+        synchronized(resource_guards) {
+            return resource_guards.isEmpty();
+        }
+    }
+
+    /**
+     * Return the time to advance to as needed by the waiting duration
+     * guards, i.e., the minimum of their maximum times, discarding guards
+     * that have already been woken.  Must only be called when {@code
+     * duration_guards} is non-empty.
+     */
+    private Aprational wakeTimeForDurationGuards() {
+        synchronized(duration_guards) {
+            while (duration_guards_by_max_time.peek().getMinTime().compareTo(clock) <= 0) {
+                duration_guards_by_max_time.remove();
+            }
+            return duration_guards_by_max_time.peek().getMaxTime();
+        }
+    }
+
     /**
      * Hand out resources and optionally advance the clock until one or more
      * processes waiting for either the clock or some resource become
@@ -798,8 +885,8 @@ public class ABSRuntime {
         // where either a duration guard wakes up or a resource boundary
         // occurs (and hence, a resource guard might receive enough resources
         // to unblock), whichever comes earlier.
-        if (nWakingCogs > 0) {
-            log.finest(() -> "Not advancing clock before " + nWakingCogs + " more cogs have woken up");
+        if (!activeCogs.isZero()) {
+            log.finest("Not advancing clock since some cogs are active");
             return;
         }
         if (duration_guards.isEmpty() && resource_guards.isEmpty()) {
@@ -817,35 +904,54 @@ public class ABSRuntime {
             Aprational next_integer = clock.isInteger()
                 ? clock.add(Aprational.ONE)
                 : clock.ceil();
+            Aprational target;
             if (duration_guards.isEmpty()) {
-                // If no duration guards are waiting, do not consider
-                // `wake_time_for_duration_guards`
-                clock = next_integer;
+                // If no duration guards are waiting, advance to the next
+                // resource boundary
+                target = next_integer;
+            } else if (!stepwiseClock && noPendingResourceGuards()) {
+                // No resource guard can wake up, so advance in one step to
+                // where the first duration guard wakes up: its minimum time
+                // rounded up to the next resource boundary, or the earliest
+                // maximum time of all duration guards, whichever is earlier.
+                Aprational min_time = duration_guards.peek().getMinTime();
+                Aprational first_boundary = AprationalMath.max(next_integer, min_time.ceil());
+                target = AprationalMath.min(wakeTimeForDurationGuards(), first_boundary);
+                if (clockLimit != null) {
+                    // Stepwise advance would stop at the first resource
+                    // boundary at or after the clock limit
+                    target = AprationalMath.min(target, clockLimit.ceil());
+                }
             } else {
-                clock = AprationalMath.min(wake_time_for_duration_guards, next_integer);
+                target = AprationalMath.min(wakeTimeForDurationGuards(), next_integer);
             }
-            log.fine(() -> "Clock advanced to " + clock);
-            if (clock.compareTo(next_integer) == 0) {
-                deployment_components.forEach(ABSDCMirror::advanceTimeBy1Tick);
+            // The number of resource boundaries between the old and new
+            // clock value
+            long ticks = target.floor().subtract(clock.floor()).longValue();
+            clock = target;
+            nClockAdvances++;
+            log.fine(() -> "Clock advanced to " + clock + " (" + ticks + " ticks)");
+            if (ticks > 0) {
+                final long n = ticks;
+                deployment_components.forEach(dc -> dc.advanceTimeByTicks(n));
+                nTicks += ticks;
+                if (ticks > 1) nMultiTickAdvances++;
                 resourceGuardsWoken = resourceGuardsWoken + handResourcesToWaitingGuards();
             }
             log.finest("Checking for threads to wake that are waiting on duration guards");
-            while (!duration_guards.isEmpty() && clock.compareTo(duration_guards.peek().getMinTime()) >= 0) {
-                ABSDurationGuard guard = duration_guards.remove();
-                synchronized(guard) {
-                    guard.notify();
+            synchronized(duration_guards) {
+                while (!duration_guards.isEmpty() && clock.compareTo(duration_guards.peek().getMinTime()) >= 0) {
+                    ABSDurationGuard guard = duration_guards.remove();
+                    guard.wakeUp();
+                    durationGuardsWoken = durationGuardsWoken + 1;
+                }
+                if (duration_guards.isEmpty()) {
+                    duration_guards_by_max_time.clear();
                 }
-                durationGuardsWoken = durationGuardsWoken + 1;
-            }
-            if (durationGuardsWoken > 0 && !duration_guards.isEmpty()) {
-                wake_time_for_duration_guards =
-                    duration_guards.stream()
-                    .map(ABSDurationGuard::getMaxTime)
-                    .reduce(duration_guards.peek().getMaxTime(), (t1, t2) -> t1.compareTo(t2) < 0 ? t1 : t2);
             }
+            nDurationGuardsWoken += durationGuardsWoken;
             guardsWoken = guardsWoken + resourceGuardsWoken + durationGuardsWoken;
         }
-        this.nWakingCogs = guardsWoken;
     }
 
     /**
@@ -862,12 +968,8 @@ public class ABSRuntime {
             throw new RuntimeException("Trying to wait for a time that is less than or equal to current clock");
         }
         synchronized(duration_guards) {
-            if (duration_guards.isEmpty()) {
-                wake_time_for_duration_guards = guard_max_time;
-            } else {
-                wake_time_for_duration_guards = guard_max_time.compareTo(wake_time_for_duration_guards) < 0 ? guard_max_time : wake_time_for_duration_guards;
-            }
             duration_guards.add(guard);
+            duration_guards_by_max_time.add(guard);
         }
     }
 
@@ -877,38 +979,29 @@ public class ABSRuntime {
      */
     public void addResourceGuard(ABSResourceGuard guard, ABSInterface dc) {
         synchronized(resource_guards) {
-            resource_guards.computeIfAbsent(dc, k -> new ArrayList<>()).add(guard);
+            resource_guards.computeIfAbsent(dc, k -> new ArrayDeque<>()).add(guard);
         }
     }
 
-    public void notifyCogActive() {
-        synchronized(this) {
-            nActiveCogs++;
-            // Note that this is still kind of an approximation: when we
-            // signal all guards after clock advance, in theory one cog could
-            // wake up, go to sleep, wake up, go to sleep before the other cog
-            // has woken up a first time, which would result in a spurious
-            // clock advance.
-            nWakingCogs = Math.max(0, nWakingCogs - 1);
-        }
-        log.finest(() -> "Cog became active, now " + nActiveCogs + " active cogs.");
+    /**
+     * Count a cog as active.  Called by {@link COG} before it becomes active.
+     */
+    void notifyCogActive(COG cog) {
+        activeCogs.increment(cog.getID());
+        log.finest(() -> cog + " became active, now about " + activeCogs.approximateValue() + " active cogs.");
     }
 
-    public void notifyCogInactive() {
-        synchronized(this) {
-            nActiveCogs--;
-        }
-        if (nActiveCogs == 0) {
-            log.finest(() -> "Cog became inactive, no active cogs left.");
-            if (nWakingCogs > 0) {
-                log.finest(() -> "Waiting for " + nWakingCogs + " more cogs to wake before trying clock advance.");
-            } else {
-                maybeAdvanceClock();
-            }
-        } else if (nActiveCogs > 0) {
-            log.finest(() -> "Cog became inactive, now " + nActiveCogs + " active cogs.");
+    /**
+     * Count a cog as inactive, and try to advance the clock if no cog is
+     * active anymore.  Called by {@link COG} after it became inactive.
+     */
+    void notifyCogInactive(COG cog) {
+        activeCogs.decrement(cog.getID());
+        if (activeCogs.isZero()) {
+            log.finest(() -> cog + " became inactive, no active cogs left.");
+            maybeAdvanceClock();
         } else {
-            log.severe(() -> "Count of active cogs became negative (" + nActiveCogs + "), this should never happen");
+            log.finest(() -> cog + " became inactive, now about " + activeCogs.approximateValue() + " active cogs.");
         }
     }
 }
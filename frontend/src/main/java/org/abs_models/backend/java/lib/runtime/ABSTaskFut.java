@@ -25,10 +25,8 @@ public class ABSTaskFut<V> extends ABSFut<V> {
 
     @Override
     public V get() {
-        synchronized (this) {
-            if (!isDone() && resolvingTask.getCOG() == ABSThread.getCurrentCOG())
-                throw new ABSDeadlockException();
-        }
+        if (!isDone() && resolvingTask.getCOG() == ABSThread.getCurrentCOG())
+            throw new ABSDeadlockException();
 
         final Task<?> t = ABSThread.getCurrentTask();
         if (t != null) {
@@ -48,14 +46,15 @@ public class ABSTaskFut<V> extends ABSFut<V> {
 
         log.finest(() -> this + " continue after get");
 
+        ABSException exception = getException();
         if (exception != null)
             throw exception;
-        return value;
+        return getValue();
     }
 
     @Override
-    public synchronized String toString() {
-        return "Future of " + resolvingTask + " (" + (isDone ? value : "unresolved") + ")";
+    public String toString() {
+        return "Future of " + resolvingTask + " (" + (isDone() ? getValue() : "unresolved") + ")";
     }
 
     public Task<?> getResolvingTask() {
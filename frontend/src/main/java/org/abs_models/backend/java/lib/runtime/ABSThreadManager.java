@@ -5,13 +5,20 @@
 package org.abs_models.backend.java.lib.runtime;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ABSThreadManager {
     private static Logger logger = Logging.getLogger(ABSThreadManager.class.getName());
-    private final List<ABSThread> threads = new ArrayList<>();
+    /**
+     * All running threads.  With virtual threads there can be millions of
+     * these, so we need constant-time removal.
+     */
+    private final Set<ABSThread> threads = Collections.newSetFromMap(new IdentityHashMap<>());
     private final ABSRuntime runtime;
     ABSThreadManager(ABSRuntime r) {
         runtime = r;
@@ -8,6 +8,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Logger;
 
 import org.abs_models.backend.java.JavaBackendException;
@@ -27,12 +29,26 @@ public class COG {
     private ABSInterface dc;
     /**
      * The number of active threads, incremented and decremented by schedulers
-     * running on this cog.  This is used to detect when all schedulers on
-     * this cog have gone idle, and hence, time could be incremented.
+     * running on this cog, shifted left by one, plus a flag in the lowest bit
+     * that is set while the active task is blocked.  This is used to detect
+     * when all schedulers on this cog have gone idle, and hence, time could
+     * be incremented.  The cog is active when it has active threads and is
+     * not blocked.
      * <p>
-     * NOTE: all access to this field must be synchronized
+     * NOTE: this field is only updated via {@link #updateState}.
      */
-    private int activeThreads = 0;
+    private final AtomicInteger state = new AtomicInteger(0);
+
+    private static final int BLOCKED = 1;
+    private static final int ONE_THREAD = 2;
+
+    private static int activeThreads(int state) {
+        return state >> 1;
+    }
+
+    private static boolean isActive(int state) {
+        return activeThreads(state) > 0 && (state & BLOCKED) == 0;
+    }
 
     public COG(ABSRuntime runtime, Class<?> clazz, ABSInterface dc) {
         initialClass = clazz;
@@ -74,15 +90,49 @@ public class COG {
         this.dc = dc;
     }
 
-    public void addTask(Task<?> task) {
-        synchronized(this) {
-            if (activeThreads == 0) {
-                log.finest(() -> this + " notifying runtime that it became active");
-                ABSRuntime.getRuntime().notifyCogActive();
+    /**
+     * Atomically update the state of this cog and inform the runtime if the
+     * cog became active or inactive.
+     * <p>
+     * When the update might make the cog active, we count the cog as active
+     * in the runtime *before* changing the state, and undo that if the cog
+     * did not become active after all.  This way, the runtime might
+     * temporarily overestimate the number of active cogs but never
+     * underestimates it, so it cannot advance the clock while a cog is
+     * becoming active.
+     */
+    private void updateState(IntUnaryOperator update) {
+        ABSRuntime runtime = ABSRuntime.getRuntime();
+        boolean reserved = false;
+        while (true) {
+            int prev = state.get();
+            int next = update.applyAsInt(prev);
+            if (activeThreads(next) < 0) {
+                log.severe(() -> this + " reached negative value for activeThreads (" + activeThreads(next) + "), this should never happen");
+                throw new IllegalStateException("activeThreads counter reached negative value; this should never happen");
+            }
+            boolean activates = !isActive(prev) && isActive(next);
+            if (activates && !reserved) {
+                runtime.notifyCogActive(this);
+                reserved = true;
+            }
+            if (state.compareAndSet(prev, next)) {
+                log.finest(() -> this + " now has " + activeThreads(next) + " active threads"
+                           + ((next & BLOCKED) != 0 ? " and is blocked." : "."));
+                if (reserved && !activates) {
+                    runtime.notifyCogInactive(this);
+                }
+                if (isActive(prev) && !isActive(next)) {
+                    log.finest(() -> this + " notifying runtime that it became inactive");
+                    runtime.notifyCogInactive(this);
+                }
+                return;
             }
-            activeThreads++;
         }
-        log.finest(() -> this + " now has " + activeThreads + " active threads.");
+    }
+
+    public void addTask(Task<?> task) {
+        updateState(s -> s + ONE_THREAD);
         scheduler.addTaskToScheduler(task);
     }
 
@@ -91,23 +141,11 @@ public class COG {
      * If the guard evaluates to true, this method should not be called (e.g.,
      * if a DurationGuard awaits on t=0).
      */
-    public synchronized void notifyAwait(Task<?> task) {
-        activeThreads--;
-        if (activeThreads < 0) {
-            log.severe(() -> this + " reached negative value for activeThreads (" + activeThreads + "), this should never happen");
-            throw new IllegalStateException("activeThreads counter reached negative value; this should never happen");
-        } else {
-            log.finest(() -> this + " now has " + activeThreads + " active threads.");
-        }
-        if (activeThreads == 0) {
-            log.finest(() -> this + " notifying runtime that it became inactive -- all tasks suspended");
-            ABSRuntime.getRuntime().notifyCogInactive();
-        } else if (scheduler.getActiveTask() == task) {
-            // If we await, the active task is either null or another task; if
-            // we block, the active task is the one calling `notifyAwait`.
-            log.finest(() -> this + " notifying runtime that it became inactive -- active task is blocked");
-            ABSRuntime.getRuntime().notifyCogInactive();
-        }
+    public void notifyAwait(Task<?> task) {
+        // If we await, the active task is either null or another task; if we
+        // block, the active task is the one calling `notifyAwait`.
+        boolean blocks = scheduler.getActiveTask() == task;
+        updateState(s -> (s - ONE_THREAD) | (blocks ? BLOCKED : 0));
     }
 
     /**
@@ -117,29 +155,15 @@ public class COG {
      * If the guard did not actually suspend the task, this method should not
      * be called (e.g., if a DurationGuard awaited on t=0).
      */
-    public synchronized void notifyWakeup(Task<?> task) {
-        if (activeThreads == 0 || scheduler.getActiveTask() == task) {
-            // If we just woke up but are already the active task, we were the
-            // task that blocked.
-            log.finest(() -> this + " notifying runtime that it became active");
-            ABSRuntime.getRuntime().notifyCogActive();
-        }
-        activeThreads++;
-        log.finest(() -> this + " now has " + activeThreads + " active threads.");
+    public void notifyWakeup(Task<?> task) {
+        // If we just woke up but are already the active task, we were the
+        // task that blocked.
+        boolean unblocks = scheduler.getActiveTask() == task;
+        updateState(s -> (s + ONE_THREAD) & (unblocks ? ~BLOCKED : ~0));
     }
 
-    public synchronized void notifyEnded() {
-        activeThreads--;
-        if (activeThreads < 0) {
-            log.severe(() -> this + " reached negative value for activeThreads (" + activeThreads + "), this should never happen");
-            throw new IllegalStateException("activeThreads counter reached negative value; this should never happen");
-        } else {
-            log.finest(() -> this + " now has " + activeThreads + " active threads.");
-        }
-        if (activeThreads == 0) {
-            log.finest(() -> this + " notifying runtime that it became inactive -- last task finished");
-            ABSRuntime.getRuntime().notifyCogInactive();
-        }
+    public void notifyEnded() {
+        updateState(s -> s - ONE_THREAD);
     }
 
     public int getID() {
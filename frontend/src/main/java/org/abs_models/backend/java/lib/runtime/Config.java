@@ -93,6 +93,7 @@ public class Config {
         if (options.clockLimit.wasSet()) {
             runtime.initializeClockLimit(options.clockLimit.longValue());
         }
+        runtime.setStepwiseClock(options.stepwiseClock.isTrue());
         if (options.datadir.wasSet()) {
             runtime.setDatadir(options.datadir.stringValue());
         }
@@ -216,6 +217,12 @@ public class Config {
                 taskSchedulerFactory = DefaultTaskScheduler.getFactory();
             } else if (schedulerName.equals("simple")) {
                 taskSchedulerFactory = SimpleTaskScheduler.getFactory();
+            } else if (schedulerName.equals("virtual")) {
+                taskSchedulerFactory = DefaultTaskScheduler.getVirtualThreadFactory();
+            } else if (schedulerName.equals("workstealing")) {
+                taskSchedulerFactory = options.maxSpares.wasSet()
+                    ? DefaultTaskScheduler.getWorkStealingFactory(options.maxSpares.longValue().intValue())
+                    : DefaultTaskScheduler.getWorkStealingFactory();
             } else {
                 logger.warning("The task scheduler " + schedulerName
                         + " does not exist, falling back to the default task scheduler.");
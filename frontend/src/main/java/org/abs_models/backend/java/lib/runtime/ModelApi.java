@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -75,6 +76,12 @@ public class ModelApi {
         .enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES);
 
     private static final ConcurrentHashMap<String, ABSObject> registeredObjects = new ConcurrentHashMap<>();
+
+    /**
+     * The executor of the http server, also used to send responses to method
+     * calls once their future is resolved.
+     */
+    private static Executor executor;
     /**
      * Register an object that is created or assigned via a {@code
      * [HTTPName: "name"]} annotation, or override the previous entry
@@ -107,13 +114,14 @@ public class ModelApi {
         server.createContext("/dcs", new ModelApi.DCHandler());
         // this is a catch-all handler so should be last
         server.createContext("/", new ModelApi.RootHandler());
-        server.setExecutor(Executors.newCachedThreadPool(r -> {
+        executor = Executors.newCachedThreadPool(r -> {
                 Thread t = Executors.defaultThreadFactory().newThread(r);
                 t.setUncaughtExceptionHandler((thread, ex) -> {
                         ex.printStackTrace(System.out);
                     });
                 return t;
-            }));
+            });
+        server.setExecutor(executor);
         server.start();
         log.config(() -> "ModelApi server started on port " + port);
     }
@@ -192,6 +200,9 @@ public class ModelApi {
             } else if (paths.size() == 2 && "now".equals(paths.get(1))) {
                 String response = mapper.writeValueAsString(Map.of("result", absToJson(now)));
                 sendResponse(exchange, 200, "text/json", response);
+            } else if (paths.size() == 2 && "statistics".equals(paths.get(1))) {
+                String response = mapper.writeValueAsString(Map.of("result", ABSRuntime.getRuntime().getTimeAdvanceStatistics()));
+                sendResponse(exchange, 200, "text/json", response);
             } else if (paths.size() == 2 && "advance".equals(paths.get(1))) {
                 // decode an Int in the `by` URL parameter
                 Apint by = null;
@@ -365,12 +376,9 @@ public class ModelApi {
                 if (f == null) {
                     sendResponse(exchange, 500, "text/plain", "Internal error while executing method call");
                 } else {
-                    f.awaitForModelApi();
-                    Object result = f.get();
-                    Object jsonResult = absToJson(result);
-                    sendResponse(exchange, 200, "text/json",
-                        // note that `null` is a valid ABSValue :-)
-                        mapper.writeValueAsString(Map.of("result", jsonResult)));
+                    // Do not occupy a server thread while the method runs;
+                    // the response is sent once the future is resolved.
+                    f.onResolve(resolved -> executor.execute(() -> sendCallResult(exchange, resolved)));
                 }
             } else {
                 // malformed path
@@ -379,6 +387,34 @@ public class ModelApi {
         }
     }
 
+    /**
+     * Answer a method call once its future {@code f} is resolved.  If the
+     * method failed, or its result cannot be converted, the client gets a
+     * 500 response with the error message.  The exchange is closed in any
+     * case, so that the client does not wait forever.
+     */
+    private static void sendCallResult(HttpExchange exchange, ABSFut<?> f) {
+        try {
+            Object result = f.get();
+            Object jsonResult = absToJson(result);
+            sendResponse(exchange, 200, "text/json",
+                // note that `null` is a valid ABSValue :-)
+                mapper.writeValueAsString(Map.of("result", jsonResult)));
+        } catch (IOException e) {
+            log.warning(() -> "Could not send result of method call: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // ABSException from the method, or a conversion error
+            log.warning(() -> "Method call failed: " + e.getMessage());
+            try {
+                sendResponse(exchange, 500, "text/plain", "Method call failed: " + e.getMessage());
+            } catch (IOException | RuntimeException e2) {
+                log.warning(() -> "Could not send error of method call: " + e2.getMessage());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
     private static class ParameterConversionException extends Exception {
         public ParameterConversionException(String paramName, Object value, String type) {
             super(String.format("Could not parse value for %s: %s cannot be parsed as %s",
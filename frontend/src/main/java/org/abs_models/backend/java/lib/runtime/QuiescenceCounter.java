@@ -0,0 +1,91 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.lib.runtime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A striped counter of active cogs that supports an exact check for zero
+ * without locking.
+ * <p>
+ * Each stripe holds a count and a version number in one {@code long}; every
+ * update increments the version.  A cog always updates the same stripe,
+ * chosen by its id, so that cogs running on different cores rarely contend
+ * for the same memory location.  {@link #isZero} reads all stripes twice and
+ * only accepts the result when no version changed in between, hence the sum
+ * is a snapshot of the counter at a single point in time.
+ */
+final class QuiescenceCounter {
+
+    /** Distance in array slots between two stripes, to avoid false sharing. */
+    private static final int SPACING = 8;
+
+    private final int nStripes;
+    private final AtomicLongArray stripes;
+
+    QuiescenceCounter() {
+        int n = 1;
+        while (n < 2 * Runtime.getRuntime().availableProcessors()) n <<= 1;
+        nStripes = n;
+        stripes = new AtomicLongArray(nStripes * SPACING);
+    }
+
+    private int index(int stripe) {
+        return (stripe & (nStripes - 1)) * SPACING;
+    }
+
+    private static int count(long stripeValue) {
+        return (int)stripeValue;
+    }
+
+    private static long version(long stripeValue) {
+        return stripeValue >>> 32;
+    }
+
+    private void add(int stripe, int delta) {
+        stripes.getAndUpdate(index(stripe),
+                             v -> ((version(v) + 1) << 32) | ((count(v) + delta) & 0xFFFFFFFFL));
+    }
+
+    void increment(int stripe) {
+        add(stripe, 1);
+    }
+
+    void decrement(int stripe) {
+        add(stripe, -1);
+    }
+
+    /**
+     * Check whether the counter is zero.  Returns {@code false} if another
+     * thread updated the counter during the check; since every decrement is
+     * followed by a check of its own, the thread causing the last decrement
+     * will observe zero.
+     */
+    boolean isZero() {
+        long[] snapshot = new long[nStripes];
+        long sum = 0;
+        for (int i = 0; i < nStripes; i++) {
+            snapshot[i] = stripes.get(i * SPACING);
+            sum += count(snapshot[i]);
+        }
+        if (sum != 0) return false;
+        for (int i = 0; i < nStripes; i++) {
+            if (stripes.get(i * SPACING) != snapshot[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the current value of the counter; for logging only, since the
+     * result might be inconsistent under concurrent updates.
+     */
+    long approximateValue() {
+        long sum = 0;
+        for (int i = 0; i < nStripes; i++) {
+            sum += count(stripes.get(i * SPACING));
+        }
+        return sum;
+    }
+}
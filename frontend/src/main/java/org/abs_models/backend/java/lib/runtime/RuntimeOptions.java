@@ -182,6 +182,8 @@ public class RuntimeOptions {
         addOption(LONG, "modelapiPort", Set.of("-p", "--port"), "turns on the Model API on the given port", null);
     public final Option clockLimit =
         addOption(LONG, "timelimit", Set.of("-l", "--clock-limit"), "set the limit for the model clock", null);
+    public final Option stepwiseClock =
+        addOption(BOOLEAN, "stepwiseclock", "--stepwise-clock", "advance the clock to every resource boundary, even when no task waits for resources", false);
     public final Option useNet =
         addOption(BOOLEAN, "net", "--net", "enables the use of ABS-NET", false);
     public final Option debug =
@@ -199,7 +201,9 @@ public class RuntimeOptions {
     public final Option taskSchedulerStrategy =
         addOption(CLASS, "taskschedulerstrategy", "--taskschedulerstrategy", "sets a task scheduler strategy class", null);
     public final Option taskScheduler =
-        addOption(STRING, "taskscheduler", "--taskscheduler", "sets the task scheduler to be used", "default");
+        addOption(STRING, "taskscheduler", "--taskscheduler", "sets the task scheduler to be used (default, simple, virtual, workstealing)", "default");
+    public final Option maxSpares =
+        addOption(LONG, "maxspares", "--maxspares", "sets how many spare workers the workstealing task scheduler may start for suspended tasks before falling back to plain threads (default 256)", null);
     public final Option recordTaskScheduler =
         addOption(BOOLEAN, "recordtaskscheduler", "--recordtaskscheduler", "enables recording of task scheduling", false);
     public final Option randomSeed =
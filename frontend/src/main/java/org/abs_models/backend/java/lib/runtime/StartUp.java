@@ -14,8 +14,20 @@ import org.abs_models.backend.java.observing.DefaultSystemObserver;
 
 public class StartUp {
     public static void startup(String[] args, Class<?> mainClass) throws InstantiationException, IllegalAccessException, IOException, InterruptedException {
+        startup(args, mainClass, null);
+    }
+
+    /**
+     * Start the model, using {@code defaultTaskScheduler} unless the task
+     * scheduler was given on the command line or via system property.
+     * Called by main classes generated with {@code absc --virtual-threads}.
+     */
+    public static void startup(String[] args, Class<?> mainClass, String defaultTaskScheduler) throws InstantiationException, IllegalAccessException, IOException, InterruptedException {
         final CountDownLatch latch = new CountDownLatch(1);
         RuntimeOptions options = new RuntimeOptions(args);
+        if (defaultTaskScheduler != null && !options.taskScheduler.wasSet()) {
+            options.taskScheduler.value = defaultTaskScheduler;
+        }
         Logging.setLogLevel(options.logLevel.stringValue());
         final ABSRuntime runtime;
         if (options.useNet.isTrue()) {
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.lib.types;
+
+import org.abs_models.backend.java.lib.expr.BinOp;
+
+/**
+ * A persistent hash map from ABS values to ABS values, implemented as a
+ * compressed hash-array mapped prefix tree (CHAMP).  Keys are hashed and
+ * compared with {@link BinOp#hash} and {@link BinOp#eq}, i.e., according to
+ * ABS equality.
+ * <p>
+ * Instances are immutable; {@link #put} returns a new map that shares all
+ * unchanged nodes with the old one.  Lookups and updates take time
+ * logarithmic in the size of the map, with a branching factor of 32.
+ */
+public final class ChampMap {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    public static final ChampMap EMPTY = new ChampMap(BitmapNode.EMPTY, 0);
+
+    private final Node root;
+    private final int size;
+
+    private ChampMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the value associated with {@code key}, or {@code notFound} if
+     * the map has no entry for {@code key}.
+     */
+    public Object get(Object key, Object notFound) {
+        return root.get(key, BinOp.hash(key), 0, notFound);
+    }
+
+    /**
+     * Return a map that associates {@code key} with {@code value} and is
+     * otherwise identical to this map.
+     */
+    public ChampMap put(Object key, Object value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.put(key, value, BinOp.hash(key), 0, added);
+        if (newRoot == root) return this;
+        return new ChampMap(newRoot, added[0] ? size + 1 : size);
+    }
+
+    private abstract static class Node {
+        abstract Object get(Object key, int hash, int shift, Object notFound);
+        abstract Node put(Object key, Object value, int hash, int shift, boolean[] added);
+    }
+
+    /**
+     * An inner node.  {@code content} holds the key-value pairs of the bits
+     * set in {@code dataMap} from the front, and the subnodes of the bits set
+     * in {@code nodeMap} from the back.
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+        final int dataMap;
+        final int nodeMap;
+        final Object[] content;
+
+        BitmapNode(int dataMap, int nodeMap, Object[] content) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.content = content;
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        private int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        private int nodeIndex(int bit) {
+            return content.length - 1 - Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift, Object notFound) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                return BinOp.eq(content[i], key) ? content[i + 1] : notFound;
+            } else if ((nodeMap & bit) != 0) {
+                return ((Node)content[nodeIndex(bit)]).get(key, hash, shift + BITS, notFound);
+            } else {
+                return notFound;
+            }
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int i = 2 * dataIndex(bit);
+                Object oldKey = content[i];
+                if (BinOp.eq(oldKey, key)) {
+                    if (content[i + 1] == value) return this;
+                    Object[] newContent = content.clone();
+                    newContent[i + 1] = value;
+                    return new BitmapNode(dataMap, nodeMap, newContent);
+                }
+                added[0] = true;
+                Node subNode = merge(oldKey, content[i + 1], BinOp.hash(oldKey),
+                                     key, value, hash, shift + BITS);
+                return migrateToNode(bit, i, subNode);
+            } else if ((nodeMap & bit) != 0) {
+                int i = nodeIndex(bit);
+                Node subNode = (Node)content[i];
+                Node newSubNode = subNode.put(key, value, hash, shift + BITS, added);
+                if (newSubNode == subNode) return this;
+                Object[] newContent = content.clone();
+                newContent[i] = newSubNode;
+                return new BitmapNode(dataMap, nodeMap, newContent);
+            } else {
+                added[0] = true;
+                int i = 2 * dataIndex(bit);
+                Object[] newContent = new Object[content.length + 2];
+                System.arraycopy(content, 0, newContent, 0, i);
+                newContent[i] = key;
+                newContent[i + 1] = value;
+                System.arraycopy(content, i, newContent, i + 2, content.length - i);
+                return new BitmapNode(dataMap | bit, nodeMap, newContent);
+            }
+        }
+
+        /** Replace the key-value pair at {@code dataIdx} by {@code subNode}. */
+        private Node migrateToNode(int bit, int dataIdx, Node subNode) {
+            Object[] newContent = new Object[content.length - 1];
+            int nodeIdx = content.length - 2 - Integer.bitCount(nodeMap & (bit - 1));
+            // Layout: data before dataIdx, data after dataIdx, nodes before
+            // the new node, the new node, nodes after the new node
+            System.arraycopy(content, 0, newContent, 0, dataIdx);
+            System.arraycopy(content, dataIdx + 2, newContent, dataIdx, nodeIdx - dataIdx);
+            newContent[nodeIdx] = subNode;
+            System.arraycopy(content, nodeIdx + 2, newContent, nodeIdx + 1, content.length - nodeIdx - 2);
+            return new BitmapNode(dataMap ^ bit, nodeMap | bit, newContent);
+        }
+
+        private static Node merge(Object key1, Object value1, int hash1,
+                                  Object key2, Object value2, int hash2, int shift) {
+            if (shift >= Integer.SIZE) {
+                return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+            }
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 != bit2) {
+                Object[] content = Integer.compareUnsigned(bit1, bit2) < 0
+                    ? new Object[] { key1, value1, key2, value2 }
+                    : new Object[] { key2, value2, key1, value1 };
+                return new BitmapNode(bit1 | bit2, 0, content);
+            } else {
+                Node subNode = merge(key1, value1, hash1, key2, value2, hash2, shift + BITS);
+                return new BitmapNode(0, bit1, new Object[] { subNode });
+            }
+        }
+    }
+
+    /** A leaf holding all entries whose keys have the same hash code. */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        final Object[] content;
+
+        CollisionNode(int hash, Object[] content) {
+            this.hash = hash;
+            this.content = content;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift, Object notFound) {
+            for (int i = 0; i < content.length; i += 2) {
+                if (BinOp.eq(content[i], key)) return content[i + 1];
+            }
+            return notFound;
+        }
+
+        @Override
+        Node put(Object key, Object value, int hash, int shift, boolean[] added) {
+            for (int i = 0; i < content.length; i += 2) {
+                if (BinOp.eq(content[i], key)) {
+                    if (content[i + 1] == value) return this;
+                    Object[] newContent = content.clone();
+                    newContent[i + 1] = value;
+                    return new CollisionNode(hash, newContent);
+                }
+            }
+            added[0] = true;
+            Object[] newContent = new Object[content.length + 2];
+            System.arraycopy(content, 0, newContent, 0, content.length);
+            newContent[content.length] = key;
+            newContent[content.length + 1] = value;
+            return new CollisionNode(hash, newContent);
+        }
+    }
+}
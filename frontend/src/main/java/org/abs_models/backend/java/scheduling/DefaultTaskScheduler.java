@@ -4,8 +4,14 @@
  */
 package org.abs_models.backend.java.scheduling;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import org.abs_models.backend.java.lib.runtime.ABSGuard;
@@ -26,6 +32,21 @@ import org.abs_models.backend.java.observing.TaskView;
  * each running task.  Instances of `SchedulerThread` are re-used since they
  * will pick up a fresh task after their current task ends; if no incoming
  * task is waiting, the thread terminates.
+ * <p>
+ * `SchedulerThread` instances are run by an {@link Executor}; the factory
+ * returned by {@link #getFactory} starts a platform thread for each, the one
+ * returned by {@link #getVirtualThreadFactory} a virtual thread, and the one
+ * returned by {@link #getWorkStealingFactory} submits them to a shared
+ * {@link WorkStealingCogExecutor}.  All blocking inside this class is done on
+ * a {@link ReentrantLock} instead of the object's monitor, so that a virtual
+ * thread waiting for the cog token releases its carrier thread, and a
+ * work-stealing worker gets compensated for; the blocking part of a guard
+ * is awaited via {@link ForkJoinPool#managedBlock} for the same reason.
+ * <p>
+ * Threads waiting for the cog token are woken individually: the thread
+ * releasing the token evaluates the guards of the waiting threads itself and
+ * hands the token directly to the first thread whose guard is true, in
+ * suspension order.  All other waiting threads stay asleep.
  */
 public class DefaultTaskScheduler implements TaskScheduler {
     private static final Logger log = Logging.getLogger(DefaultTaskScheduler.class.getName());
@@ -39,11 +60,43 @@ public class DefaultTaskScheduler implements TaskScheduler {
     /**
      * The currently executing thread.  This field serves as the cog-wide
      * mutex, ensuring that only one SchedulerThread executes its task.  All
-     * access must be protected by `synchronized`.
+     * access must be protected by `lock`.
      */
     private volatile SchedulerThread runningThread;
     private final COG cog;
     private final ABSThreadManager threadManager;
+    /**
+     * Runs our `SchedulerThread` instances.
+     */
+    private final Executor executor;
+
+    /**
+     * The scheduler lock, protecting `newTasks`, `waitingThreads`,
+     * `runningThread` and `activeTask`.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Threads whose task has suspended and is waiting for the cog token, in
+     * suspension order.  A thread only enters this list after the blocking
+     * part of its guard (futures, durations, resources) has completed.  All
+     * access must be protected by `lock`.
+     */
+    private final List<SchedulerThread> waitingThreads = new LinkedList<>();
+
+    /**
+     * Number of times a waiting thread was woken up to take the cog token.
+     */
+    private static final LongAdder wakeups = new LongAdder();
+    /**
+     * Number of thread wakeups saved compared to waking up all waiting
+     * threads whenever the cog token becomes available.
+     */
+    private static final LongAdder wakeupsAvoided = new LongAdder();
+    /**
+     * Number of guards evaluated on behalf of waiting threads.
+     */
+    private static final LongAdder guardEvaluations = new LongAdder();
 
     /**
      * The currently active task, or {@ocde null} if idle.  Note that this
@@ -56,30 +109,104 @@ public class DefaultTaskScheduler implements TaskScheduler {
     private volatile View view;
 
     public DefaultTaskScheduler(COG cog, ABSThreadManager m) {
+        this(cog, m, r -> new Thread(r).start());
+    }
+
+    public DefaultTaskScheduler(COG cog, ABSThreadManager m, Executor executor) {
         this.cog = cog;
         this.threadManager = m;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a fresh `SchedulerThread` and start it.  Must be called with
+     * `lock` held.
+     */
+    private SchedulerThread startSchedulerThread() {
+        SchedulerThread t = new SchedulerThread();
+        executor.execute(t);
+        return t;
     }
 
     @Override
-    public synchronized void addTaskToScheduler(Task<?> task) {
-        newTasks.add(task);
-        if (view != null)
-            view.taskAdded(task.getView());
-        log.finest(() -> task + " ADDED TO QUEUE");
-
-        if (runningThread == null) {
-            // We're idle and/or all threads are suspended waiting:
-            // SchedulerThread#init will pick up a task from `newTasks`.
-            runningThread = new SchedulerThread();
-            new Thread(runningThread).start();
-        } else {
-            // Some thread is running, don't start a new thread since the new
-            // task will be picked up when the task of the running thread
-            // suspends or finishes.
-            //
-            // TODO: figure out why we wake up all suspended threads here
-            notifyAll();
+    public void addTaskToScheduler(Task<?> task) {
+        lock.lock();
+        try {
+            newTasks.add(task);
+            if (view != null)
+                view.taskAdded(task.getView());
+            log.finest(() -> task + " ADDED TO QUEUE");
+
+            if (runningThread == null) {
+                // We're idle and/or all threads are suspended waiting:
+                // SchedulerThread#init will pick up a task from `newTasks`.
+                runningThread = startSchedulerThread();
+            } else {
+                // Some thread is running, don't start a new thread since the
+                // new task will be picked up when the task of the running
+                // thread suspends or finishes.  A new task cannot change the
+                // guards of waiting threads, so don't wake them either.
+                wakeupsAvoided.add(waitingThreads.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release the cog token and pass it to the first waiting thread whose
+     * guard evaluates to true, if any.  Must be called with `lock` held, and
+     * `newTasks` empty.
+     */
+    private void releaseToken() {
+        runningThread = null;
+        activeTask = null;
+        int nWaiting = waitingThreads.size();
+        Iterator<SchedulerThread> it = waitingThreads.iterator();
+        while (it.hasNext()) {
+            SchedulerThread t = it.next();
+            guardEvaluations.increment();
+            // Note that `await` tells the cog when an expression guard
+            // changes status, as if the waiting thread had checked it
+            // itself.  It never blocks here since the blocking part of the
+            // guard is completed before the thread starts waiting.
+            if (t.guard.await(cog, t.runningTask)) {
+                it.remove();
+                runningThread = t;
+                activeTask = t.runningTask;
+                t.tokenReceived.signal();
+                wakeups.increment();
+                wakeupsAvoided.add(nWaiting - 1);
+                log.finest(() -> t.runningTask + " " + t.guard + " RECEIVES TOKEN");
+                return;
+            }
         }
+        wakeupsAvoided.add(nWaiting);
+    }
+
+    /**
+     * Return the number of times a thread waiting for a cog token was woken
+     * up, summed over all cogs.
+     */
+    public static long getWakeupCount() {
+        return wakeups.sum();
+    }
+
+    /**
+     * Return the number of thread wakeups avoided, compared to waking all
+     * waiting threads of a cog each time the cog token becomes available,
+     * summed over all cogs.
+     */
+    public static long getAvoidedWakeupCount() {
+        return wakeupsAvoided.sum();
+    }
+
+    /**
+     * Return the number of guard evaluations done on behalf of waiting
+     * threads, summed over all cogs.
+     */
+    public static long getGuardEvaluationCount() {
+        return guardEvaluations.sum();
     }
 
     /**
@@ -90,6 +217,14 @@ public class DefaultTaskScheduler implements TaskScheduler {
          * The task currently being handled by this thread instance.
          */
         private Task<?> runningTask;
+        /**
+         * The guard this thread is waiting on while in `waitingThreads`.
+         */
+        private ABSGuard guard;
+        /**
+         * Signalled when another thread hands us the cog token.
+         */
+        private final Condition tokenReceived = lock.newCondition();
 
         public SchedulerThread() {
             super(threadManager);
@@ -115,17 +250,19 @@ public class DefaultTaskScheduler implements TaskScheduler {
                 // null.
                 loop:
                 while (!shutdown) {
-                    synchronized (DefaultTaskScheduler.this) {
+                    lock.lock();
+                    try {
                         DefaultTaskScheduler.this.activeTask = null;
                         if (newTasks.isEmpty()) {
-                            DefaultTaskScheduler.this.runningThread = null; // release cog token
-                            DefaultTaskScheduler.this.notifyAll();
+                            releaseToken();
                             break loop;
                         }
 
                         DefaultTaskScheduler.this.activeTask = newTasks.remove(0);
                         runningTask = DefaultTaskScheduler.this.activeTask;
                         Thread.currentThread().setName("ABS Scheduler Thread executing " + activeTask.toString());
+                    } finally {
+                        lock.unlock();
                     }
 
                     log.finest(() -> "Executing " + runningTask);
@@ -144,23 +281,23 @@ public class DefaultTaskScheduler implements TaskScheduler {
             }
         }
 
-        // assume called in synchronized block
         public void suspendTask(ABSGuard g) {
-            synchronized (DefaultTaskScheduler.this) {
+            lock.lock();
+            try {
                 DefaultTaskScheduler.this.activeTask = null; // mark inactive: we're not blocking
                 DefaultTaskScheduler.this.runningThread = null; // release token
                 if (!newTasks.isEmpty()) {
                     // A new method call came in while we were running: create
                     // its thread
                     log.finest(() -> runningTask + " on " + g + " Starting new Scheduler Thread");
-                    runningThread = new SchedulerThread();
-                    new Thread(runningThread).start();
+                    runningThread = startSchedulerThread();
                 } else {
-                    // Start a scheduling round: we already set
-                    // `runningThread` to null, so someone else can grab it
-                    DefaultTaskScheduler.this.notifyAll();
+                    // Pass the token to a waiting thread, if one can run
+                    releaseToken();
                 }
                 log.finest(() -> runningTask + " on " + g + " SUSPENDING");
+            } finally {
+                lock.unlock();
             }
 
             View v = view;
@@ -169,7 +306,10 @@ public class DefaultTaskScheduler implements TaskScheduler {
             }
 
             log.finest(() -> runningTask + " AWAITING " + g);
-            boolean taskReady = g.await(cog, runningTask); // Note that this might suspend the thread
+            GuardBlocker blocker = new GuardBlocker(g);
+            // Note that this might suspend the thread
+            WorkStealingCogExecutor.block(blocker);
+            boolean taskReady = blocker.ready;
             if (Thread.interrupted()) {
                 return;
             }
@@ -179,21 +319,31 @@ public class DefaultTaskScheduler implements TaskScheduler {
                     v.taskReady(runningTask.getView());
             }
 
-            synchronized (DefaultTaskScheduler.this) {
-                while (runningThread != null || !g.await(cog, runningTask)) {
+            lock.lock();
+            try {
+                if (runningThread != null || !g.await(cog, runningTask)) {
                     // Sleep when someone else is running, or our guard
-                    // evalutes to false
-                    try {
-                        log.finest(() -> runningTask + " " + g + " WAITING FOR WAKE UP");
-                        DefaultTaskScheduler.this.wait();
-                        log.finest(() -> runningTask + " WOKE UP...");
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                        break;
+                    // evaluates to false, until a releasing thread finds our
+                    // guard true and hands us the token
+                    guard = g;
+                    waitingThreads.add(this);
+                    while (runningThread != this) {
+                        try {
+                            log.finest(() -> runningTask + " " + g + " WAITING FOR WAKE UP");
+                            tokenReceived.await();
+                            log.finest(() -> runningTask + " WOKE UP...");
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                            waitingThreads.remove(this);
+                            break;
+                        }
                     }
+                    guard = null;
                 }
                 runningThread = this; // grab lock
                 activeTask = runningTask; // let scheduler know which task is running
+            } finally {
+                lock.unlock();
             }
 
             if (v != null)
@@ -204,6 +354,34 @@ public class DefaultTaskScheduler implements TaskScheduler {
 
 	@Override
 	public void checkGuard() { }
+
+        /**
+         * Awaits the blocking part of a guard (futures, durations,
+         * resources), which does not necessarily block on a {@code
+         * java.util.concurrent.locks} condition, so that a work-stealing
+         * worker is replaced while its task is suspended.
+         */
+        private final class GuardBlocker implements ForkJoinPool.ManagedBlocker {
+            private final ABSGuard g;
+            private boolean done = false;
+            private boolean ready = false;
+
+            GuardBlocker(ABSGuard g) {
+                this.g = g;
+            }
+
+            @Override
+            public boolean block() {
+                ready = g.await(cog, runningTask);
+                done = true;
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return done;
+            }
+        }
     }
 
     @Override
@@ -212,8 +390,13 @@ public class DefaultTaskScheduler implements TaskScheduler {
     }
 
     @Override
-    public synchronized Task<?> getActiveTask() {
-        return activeTask;
+    public Task<?> getActiveTask() {
+        lock.lock();
+        try {
+            return activeTask;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -260,6 +443,47 @@ public class DefaultTaskScheduler implements TaskScheduler {
         };
     }
 
+    /**
+     * Return a factory for schedulers that run each ABS task on a virtual
+     * thread.  Suspended tasks then only cost a heap-allocated stack instead
+     * of a native thread, which allows for many more concurrently suspended
+     * processes.
+     */
+    public static TaskSchedulerFactory getVirtualThreadFactory() {
+        return new TaskSchedulerFactory() {
+            @Override
+            public TaskScheduler createTaskScheduler(ABSRuntime runtime, COG cog, ABSThreadManager m, SchedulableTasksFilter filter) {
+                Thread.Builder builder = Thread.ofVirtual().name("ABS Scheduler Thread of " + cog);
+                return new DefaultTaskScheduler(cog, m, r -> builder.start(r));
+            }
+        };
+    }
+
+    /**
+     * Return a factory for schedulers that run their tasks on a shared pool
+     * of worker threads, sized to the number of available processors.  All
+     * schedulers created by the same factory share one pool.
+     */
+    public static TaskSchedulerFactory getWorkStealingFactory() {
+        return getWorkStealingFactory(WorkStealingCogExecutor.DEFAULT_MAX_SPARES);
+    }
+
+    /**
+     * Like {@link #getWorkStealingFactory()}, with at most {@code maxSpares}
+     * tasks suspended at the same time beyond the number of processors.
+     */
+    public static TaskSchedulerFactory getWorkStealingFactory(int maxSpares) {
+        return new TaskSchedulerFactory() {
+            private final WorkStealingCogExecutor executor
+                = new WorkStealingCogExecutor(Runtime.getRuntime().availableProcessors(), maxSpares);
+
+            @Override
+            public TaskScheduler createTaskScheduler(ABSRuntime runtime, COG cog, ABSThreadManager m, SchedulableTasksFilter filter) {
+                return new DefaultTaskScheduler(cog, m, executor);
+            }
+        };
+    }
+
     @Override
     public COG getCOG() {
         return cog;
@@ -188,7 +188,10 @@ public class GlobalScheduler {
         }
 
         Waker w = new Waker(this);
-        fut.addWaitingThread(w);
+        if (!fut.addWaitingThread(w)) {
+            // resolved in the meantime
+            return;
+        }
         runtime.doNextStep();
         logger.finest("future waiting");
         w.await();
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java.scheduling;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.abs_models.backend.java.lib.runtime.Logging;
+
+/**
+ * A global execution engine that runs the scheduler threads of all cogs on
+ * one pool of work-stealing worker threads, sized to the number of available
+ * processors.
+ * <p>
+ * Each cog behaves like an actor: its scheduler hands a runnable to this
+ * executor only when it has work and no thread currently holds its cog
+ * token, so a cog's {@link TaskScheduler} is only ever entered by one worker
+ * at a time.  A worker that hands over work (e.g., by calling a method on
+ * another cog) pushes it to its own queue; idle workers steal from the other
+ * workers' queues, so ready cogs are spread over all cores without involving
+ * the operating system scheduler.
+ * <p>
+ * A task that suspends keeps its worker, since the Java stack of an ABS
+ * process cannot move to another thread.  Suspended tasks block via {@link
+ * #block}, i.e., {@link ForkJoinPool#managedBlock}, so the pool activates a
+ * spare worker for each blocked one and the number of <em>running</em>
+ * workers stays at the configured parallelism.  The total number of workers
+ * is bounded (see {@link #DEFAULT_MAX_SPARES}).  A task that suspends beyond
+ * that bound blocks its worker without a replacement; it first moves all
+ * work queued in the pool to plain threads, and while no worker is free,
+ * new work runs on plain threads as well, so the model keeps running with
+ * one thread per suspended task, as with the default scheduler.
+ */
+public class WorkStealingCogExecutor implements Executor {
+    private static final Logger log = Logging.getLogger(WorkStealingCogExecutor.class.getName());
+
+    /**
+     * The default maximum number of spare workers that replace blocked
+     * ones, i.e., of tasks that are suspended at the same time, beyond the
+     * parallelism.  This is the default of {@link ForkJoinPool#commonPool}.
+     */
+    public static final int DEFAULT_MAX_SPARES = 256;
+
+    /**
+     * How long a spare worker stays alive without work.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * The maximum number of workers, i.e., the parallelism plus the number
+     * of spare workers.
+     */
+    private final int maxWorkers;
+
+    /**
+     * The number of workers currently running one of our runnables,
+     * including workers blocked by a suspended task.
+     */
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+
+    public WorkStealingCogExecutor() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_SPARES);
+    }
+
+    /**
+     * Create an executor with {@code parallelism} running workers, and at
+     * most {@code maxSpares} spare workers replacing blocked ones.
+     */
+    public WorkStealingCogExecutor(int parallelism, int maxSpares) {
+        maxWorkers = parallelism + maxSpares;
+        pool = new ForkJoinPool(parallelism,
+                                ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                                (t, e) -> log.log(Level.SEVERE, "Uncaught exception in " + t.getName(), e),
+                                // FIFO order for work that is never joined
+                                true,
+                                0, maxWorkers,
+                                1,
+                                // Called on the blocking worker when no
+                                // spare can replace it: block anyway
+                                p -> {
+                                    log.fine(() -> "All " + maxWorkers + " workers of the work-stealing scheduler are in use;"
+                                             + " running queued work on plain threads");
+                                    runQueuedWorkOnThreads();
+                                    return true;
+                                },
+                                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        log.config(() -> "Using work-stealing cog executor with parallelism " + parallelism
+                   + " and at most " + maxWorkers + " workers");
+    }
+
+    /**
+     * Run {@code blocker} until it is releasable, activating a spare worker
+     * if the current thread is a worker of a pool.  Used for all blocking of
+     * suspended tasks that does not happen on a {@code
+     * java.util.concurrent.locks} condition, which does this by itself.
+     */
+    public static void block(ForkJoinPool.ManagedBlocker blocker) {
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start a plain thread for each runnable queued in the pool of the
+     * current worker, which is about to block without a replacement and
+     * might be the last running one.
+     */
+    private static void runQueuedWorkOnThreads() {
+        ForkJoinTask<?> task;
+        while ((task = QueuedWork.poll()) != null) {
+            new Thread(task::quietlyInvoke).start();
+        }
+    }
+
+    /**
+     * Gives access to the protected {@link ForkJoinTask#pollTask}.
+     */
+    @SuppressWarnings("serial")
+    private static final class QueuedWork extends RecursiveAction {
+        static ForkJoinTask<?> poll() {
+            return pollTask();
+        }
+
+        @Override
+        protected void compute() { }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (busyWorkers.get() >= maxWorkers) {
+            // All workers are running or blocked by suspended tasks, and
+            // no spare can be added: don't queue work that might never run
+            new Thread(command).start();
+        } else {
+            pool.execute(() -> {
+                // Queued work moved to a plain thread is not counted
+                boolean onWorker = ForkJoinTask.inForkJoinPool();
+                if (onWorker) busyWorkers.incrementAndGet();
+                try {
+                    command.run();
+                } finally {
+                    if (onWorker) busyWorkers.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * Return the number of workers that are currently running, i.e., not
+     * blocked by a suspended task or waiting for work.
+     */
+    public int getRunningWorkerCount() {
+        return pool.getRunningThreadCount();
+    }
+
+    /**
+     * Return the total number of workers, including spare workers that
+     * replace blocked ones.
+     */
+    public int getWorkerCount() {
+        return pool.getPoolSize();
+    }
+
+    /**
+     * Return an estimate of the number of runnables stolen from one worker's
+     * queue by another worker.
+     */
+    public long getStealCount() {
+        return pool.getStealCount();
+    }
+
+    @Override
+    public String toString() {
+        return "WorkStealingCogExecutor [" + pool + "]";
+    }
+}
@@ -4,9 +4,12 @@
  */
 package org.abs_models.frontend.delta;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.abs_models.frontend.analyser.SemanticConditionList;
 import org.abs_models.frontend.ast.DeltaDecl;
@@ -18,16 +21,33 @@ import org.abs_models.frontend.ast.Model;
  * Type checking all possible product variants amounts to traversing the trie and computing the type abstractions
  * for all (intermediate) products associated to the nodes of the trie.
  *
+ * A deferred trie only records its structure when words are added; the type abstractions of its nodes are computed
+ * afterwards by computeAbstractions(), where independent subtrees are handled on several threads.
  */
 public class DeltaTrie {
     private final Node root;
     private final Model model;
+    private final SemanticConditionList errors;
+    private final boolean deferred;
+    // Nodes in order of creation, for a deferred trie
+    private final List<Node> nodes = new ArrayList<>();
 
     /**
      * Constructor
      */
     public DeltaTrie(Model model, SemanticConditionList errors) {
+        this(model, errors, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param deferred  Do not compute type abstractions when adding words, but in computeAbstractions()
+     */
+    public DeltaTrie(Model model, SemanticConditionList errors, boolean deferred) {
         this.model = model;
+        this.errors = errors;
+        this.deferred = deferred;
         root = new Node(errors);
     }
 
@@ -47,7 +67,13 @@ public class DeltaTrie {
         private final Map<String, Node> children;
         private String deltaID = null;
         private boolean isValidProduct = false;
-        private final ProgramAbstraction ta;
+        private ProgramAbstraction ta;
+
+        // For a deferred trie: how to compute the type abstraction, and where to report its errors
+        private Node parent = null;
+        private DeltaDecl delta = null;
+        private Product product = null;
+        private SemanticConditionList nodeErrors = null;
 
         // Constructor for top level root node
         public Node(SemanticConditionList errors) {
@@ -78,6 +104,14 @@ public class DeltaTrie {
             if (children.containsKey(word.get(d))) {
                 // node already exists
                 nextNode = children.get(word.get(d));
+            } else if (deferred) {
+                nextNode = new Node(word.get(d), null);
+                nextNode.parent = this;
+                nextNode.delta = model.getDeltaDeclsMap().get(nextNode.deltaID);
+                nextNode.product = product;
+                nextNode.nodeErrors = new SemanticConditionList();
+                nodes.add(nextNode);
+                children.put(word.get(d), nextNode);
             } else {
                 ProgramAbstraction nextTA = new ProgramAbstraction(ta);
                 nextNode = new Node(word.get(d), nextTA);
@@ -151,6 +185,60 @@ public class DeltaTrie {
 
     }
 
+    /**
+     * Compute the type abstractions of all nodes of a deferred trie on
+     * {@code threads} threads.  Each node copies the abstraction of its
+     * parent, so the subtrees of a node are computed independently.
+     * Errors are added in the order in which the nodes were created,
+     * i.e., in the same order as for a trie that is not deferred.
+     */
+    public void computeAbstractions(int threads) {
+        assert deferred;
+        if (!nodes.isEmpty()) {
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, nodes.size())));
+            try {
+                pool.invoke(new AbstractionTask(root));
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        for (Node node : nodes) {
+            errors.addAll(node.nodeErrors);
+        }
+    }
+
+    /**
+     * The deltas of the nodes of a deferred trie, in order of creation.
+     */
+    public List<DeltaDecl> getDeltas() {
+        List<DeltaDecl> result = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            result.add(node.delta);
+        }
+        return result;
+    }
+
+    private static class AbstractionTask extends RecursiveAction {
+        private final Node node;
+
+        AbstractionTask(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            if (node.parent != null) {
+                node.ta = new ProgramAbstraction(node.parent.ta, node.nodeErrors);
+                node.ta.applyDelta(node.delta, node.product);
+            }
+            List<AbstractionTask> tasks = new ArrayList<>(node.children.size());
+            for (Node child : node.children.values()) {
+                tasks.add(new AbstractionTask(child));
+            }
+            invokeAll(tasks);
+        }
+    }
+
     /*
      * Convenience methods
      */
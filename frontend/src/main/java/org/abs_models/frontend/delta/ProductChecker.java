@@ -0,0 +1,134 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.delta;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.abs_models.frontend.analyser.SemanticCondition;
+import org.abs_models.frontend.analyser.SemanticConditionList;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.Product;
+
+/**
+ * Flattens every product of a product line and type-checks the resulting
+ * model, on several threads.
+ * <p>
+ * Unlike the family-based check of {@link ProductLineAnalysisHelper#typeCheckPL},
+ * which only checks the signatures of classes and interfaces, each
+ * product is checked like a model compiled with {@code --product}.  Every
+ * product is flattened in its own copy of the model (see {@link
+ * Model#copyForFlattening}), so the products are independent of each
+ * other; copies only read the original model.  The messages of each
+ * product are collected on its thread, so that the copy can be discarded
+ * when the product has been checked, and are returned in the order of
+ * {@link Model#getProductList()}, so the result is the same for any
+ * number of threads.  Each copy is checked on its own thread only, since
+ * the products are already checked in parallel.
+ */
+public final class ProductChecker {
+
+    private ProductChecker() {}
+
+    /** The check of one product. */
+    private static final class Task {
+        private final Model model;
+        private final Product product;
+        private final List<String> messages = new ArrayList<>();
+        private boolean failed = false;
+
+        Task(Model model, Product product) {
+            this.model = model;
+            this.product = product;
+        }
+
+        void run() {
+            try {
+                Model m = model.copyForFlattening();
+                // the copy inherits the number of threads of the original model
+                m.setTypeCheckThreads(1);
+                m.flattenForProduct(product.treeCopyNoTransform());
+                SemanticConditionList errors = new SemanticConditionList();
+                errors.addAll(m.getErrors());
+                if (!errors.containsErrors()) {
+                    errors.addAll(m.typeCheck());
+                }
+                failed = errors.containsErrors();
+                for (SemanticCondition c : errors) {
+                    messages.add(c.getHelpMessage());
+                }
+            } catch (DeltaModellingException e) {
+                failed = true;
+                messages.add(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Flatten and type-check all products of {@code model} on {@code
+     * threads} threads.  Returns the errors and warnings of each product
+     * that has any, in the order of {@link Model#getProductList()}.
+     */
+    public static Map<Product, List<String>> typeCheckAllProducts(Model model, int threads) {
+        return typeCheckAllProducts(model, threads, new HashSet<>());
+    }
+
+    /**
+     * Like {@link #typeCheckAllProducts(Model, int)}, and adds the
+     * products that have errors (not only warnings) to {@code failed}.
+     */
+    public static Map<Product, List<String>> typeCheckAllProducts(Model model, int threads, Set<Product> failed) {
+        List<Task> tasks = new ArrayList<>();
+        for (Product product : model.getProductList()) {
+            // evaluated here, since the product is read by all threads
+            product.getFeatureSetAsString();
+            tasks.add(new Task(model, product));
+        }
+        runAll(tasks, threads);
+        Map<Product, List<String>> result = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            if (!task.messages.isEmpty()) {
+                result.put(task.product, task.messages);
+            }
+            if (task.failed) {
+                failed.add(task.product);
+            }
+        }
+        return result;
+    }
+
+    private static void runAll(List<Task> tasks, int threads) {
+        if (tasks.isEmpty()) return;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            List<ForkJoinTask<?>> running = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                running.add(pool.submit(task::run));
+            }
+            for (ForkJoinTask<?> task : running) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while type checking products", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException re) throw re;
+                    if (cause instanceof Error err) throw err;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
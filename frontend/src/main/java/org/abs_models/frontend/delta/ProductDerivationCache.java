@@ -0,0 +1,181 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.delta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.abs_models.common.WrongProgramArgumentException;
+import org.abs_models.frontend.ast.DeltaClause;
+import org.abs_models.frontend.ast.DeltaDecl;
+import org.abs_models.frontend.ast.Deltaparam;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.Product;
+import org.abs_models.frontend.ast.ProductDecl;
+import org.abs_models.frontend.ast.ProductLine;
+
+/**
+ * Derives the flattened models of several products of one product line.
+ * <p>
+ * Products are generated by applying their sorted sequence of deltas to
+ * the core, so products share the deltas of the common prefixes of these
+ * sequences -- the paths of the product family generation trie (see
+ * {@link DeltaTrie}).  The cache remembers the trie of the products
+ * derived so far, and keeps a snapshot of the intermediate model only at
+ * the nodes where the trie branches, i.e., where the paths of two products
+ * diverge or one product ends and another one continues.  A product is
+ * derived from the snapshot of the deepest such node on its path, so that
+ * the model is copied once per product and once per branch instead of
+ * after every delta.  The deltas between a snapshot and the node where a
+ * later product branches off are applied again when that node is first
+ * reached.
+ * <p>
+ * Since delta parameters are substituted before a delta is applied, the
+ * trie is keyed by the deltas together with the values of their
+ * parameters in the product.
+ * <p>
+ * The core model is never modified; all returned models are copies.  A
+ * cache is not thread-safe.
+ */
+public class ProductDerivationCache {
+
+    private final Model core;
+    private Node root = null;
+    private int appliedDeltas = 0;
+    private int snapshots = 0;
+
+    private static class Node {
+        /** The model after applying the deltas up to this node, or null. */
+        private Model snapshot = null;
+        private final Map<String, Node> children = new HashMap<>();
+        /** True if some product ends at this node. */
+        private boolean end = false;
+
+        /** A snapshot is kept where products continue on different paths. */
+        boolean isBranch() {
+            return children.size() > 1 || (end && !children.isEmpty());
+        }
+    }
+
+    public ProductDerivationCache(Model core) {
+        this.core = core;
+    }
+
+    /**
+     * Returns a copy of the core, flattened for the declared product, like
+     * {@link Model#flattenForProduct(ProductDecl, boolean)}: if {@code
+     * check} is true, the product is first checked against the feature
+     * model, and the result remembers the name of the product.
+     */
+    public Model flattenForProduct(ProductDecl decl, boolean check)
+        throws WrongProgramArgumentException, DeltaModellingException
+    {
+        if (check)
+            core.checkProduct(decl.getName(), decl.getProduct());
+        if (core.verbose)
+            System.out.println("--- configuring product: " + decl.getName());
+        Model result = flattenForProduct(decl.getProduct());
+        result.setProductName(decl.getName());
+        return result;
+    }
+
+    /**
+     * Returns a copy of the core, flattened for {@code product}, like
+     * {@link Model#flattenForProduct(Product)}.
+     */
+    public Model flattenForProduct(Product product) throws DeltaModellingException {
+        ProductLine pl = core.getProductLine();
+        if (pl == null)
+            throw new DeltaModellingException("Model is missing a 'productline' definition");
+
+        List<String> deltaids = pl.sortDeltas(pl.findApplicableDeltas(product));
+        if (core.verbose) {
+            System.out.print("--- applying deltas to core");
+            for (String deltaid : deltaids) {
+                System.out.print(" << " + deltaid);
+            }
+            System.out.println(" .");
+        }
+
+        if (root == null) {
+            root = new Node();
+            root.snapshot = core.copyForFlattening();
+            root.snapshot.applyTraits();
+            snapshots++;
+        }
+
+        // add the path of the product to the trie, and find the deepest
+        // snapshot on it
+        List<Node> path = new ArrayList<>(deltaids.size() + 1);
+        path.add(root);
+        Node node = root;
+        for (String deltaid : deltaids) {
+            node = node.children.computeIfAbsent(deltaid + getParameterValues(pl, deltaid, product),
+                                                 k -> new Node());
+            path.add(node);
+        }
+        node.end = true;
+        int i = path.size() - 1;
+        while (path.get(i).snapshot == null) {
+            i--;
+        }
+
+        // apply the remaining deltas, keeping snapshots where the trie branches
+        Model result = path.get(i).snapshot.copyForFlattening();
+        for (; i < deltaids.size(); i++) {
+            DeltaDecl delta = result.getDeltaDeclsMap().get(deltaids.get(i));
+            result.getProductLine().substituteDeltaParams(Collections.singletonList(delta), product);
+            result.applyDelta(delta);
+            result.flushModuleCaches();
+            appliedDeltas++;
+            node = path.get(i + 1);
+            if (node.isBranch()) {
+                node.snapshot = result;
+                snapshots++;
+                result = result.copyForFlattening();
+            }
+        }
+        result.computeDelete();
+        result.flushTreeCache();
+        return result;
+    }
+
+    /**
+     * The number of deltas applied so far.
+     */
+    public int getAppliedDeltas() {
+        return appliedDeltas;
+    }
+
+    /**
+     * The number of intermediate models kept: the core with its traits
+     * applied, and one per branching node of the product family
+     * generation trie of the derived products.
+     */
+    public int getSnapshots() {
+        return snapshots;
+    }
+
+    private static String getParameterValues(ProductLine pl, String deltaid, Product product)
+        throws DeltaModellingException
+    {
+        for (DeltaClause clause : pl.getDeltaClauses()) {
+            if (deltaid.equals(clause.getDeltaspec().getDeltaID()) && clause.isApplicable(product)) {
+                StringBuilder result = new StringBuilder("(");
+                String sep = "";
+                for (Deltaparam param : clause.getDeltaspec().getDeltaparams()) {
+                    String value = param.calcValue(product.getFeatures()).getName();
+                    result.append(sep).append(value.length()).append(':').append(value);
+                    sep = ",";
+                }
+                return result.append(")").toString();
+            }
+        }
+        return "()";
+    }
+}
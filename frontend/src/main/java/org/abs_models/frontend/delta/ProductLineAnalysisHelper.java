@@ -10,10 +10,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.abs_models.common.WrongProgramArgumentException;
 import org.abs_models.frontend.analyser.ErrorMessage;
 import org.abs_models.frontend.analyser.SemanticConditionList;
 import org.abs_models.frontend.analyser.SemanticError;
 import org.abs_models.frontend.analyser.TypeError;
+import org.abs_models.frontend.ast.ASTNode;
 import org.abs_models.frontend.ast.AddClassModifier;
 import org.abs_models.frontend.ast.AttrAssignment;
 import org.abs_models.frontend.ast.ClassModifier;
@@ -54,7 +56,7 @@ public class ProductLineAnalysisHelper {
         // Build the product family generation trie. Hereby check that
         // - product generation mapping is total
         // - TODO all products are well-typed programs
-        DeltaTrie pfgt = buildPFGT(pl, errors);
+        DeltaTrie pfgt = buildPFGT(pl, errors, pl.getModel().getTypeCheckThreads());
 
         if (pl.getModel().debug) {
             //System.out.println("Trie height:\n" + pfgt.height());
@@ -101,8 +103,16 @@ public class ProductLineAnalysisHelper {
 
 
     public static DeltaTrie buildPFGT(ProductLine pl, SemanticConditionList errors) {
+        return buildPFGT(pl, errors, 1);
+    }
+
+    /*
+     * Build the trie, computing the type abstractions of independent subtrees on several threads.
+     * The deltas are walked sequentially first, since JastAdd attributes are not thread-safe.
+     */
+    public static DeltaTrie buildPFGT(ProductLine pl, SemanticConditionList errors, int threads) {
         Model model = pl.getModel();
-        DeltaTrie trie = new DeltaTrie(model, errors);
+        DeltaTrie trie = new DeltaTrie(model, errors, threads > 1);
 
         for (Product product : model.getProductList()) {
             // for each product: obtain sequence of deltas & add it to the trie
@@ -110,9 +120,36 @@ public class ProductLineAnalysisHelper {
             List<String> productGenerationString = pl.sortDeltas(applicableDeltas);
             trie.addWord(productGenerationString, product);
         }
+        if (threads > 1) {
+            for (DeltaDecl delta : trie.getDeltas()) {
+                prepareAbstraction(delta);
+            }
+            trie.computeAbstractions(threads);
+        }
         return trie;
     }
 
+    /*
+     * Evaluate the attributes of a delta and its modifiers that are read when applying it to a ProgramAbstraction.
+     */
+    private static void prepareAbstraction(ASTNode<?> node) {
+        if (node == null)
+            return;
+        try {
+            if (node instanceof ModuleModifier) {
+                ((ModuleModifier) node).getQualifiedName();
+                ((ModuleModifier) node).getModel();
+            } else if (node instanceof Modifier) {
+                ((Modifier) node).getModel();
+            }
+        } catch (RuntimeException e) {
+            // reported when the delta is applied
+        }
+        for (int i = 0; i < node.getNumChild(); i++) {
+            prepareAbstraction(node.getChild(i));
+        }
+    }
+
     public static void checkStrongUnambiguity(ProductLine pl, SemanticConditionList l) {
         isStronglyUnambiguous(pl, l);
     }
@@ -231,6 +268,7 @@ public class ProductLineAnalysisHelper {
     public static void buildAndPrintAllConfigurations(Model m) {
 
         long timeSum = 0;
+        ProductDerivationCache cache = new ProductDerivationCache(m);
         for (Product product : m.getProductList()) {
 
             long time0 = System.currentTimeMillis();
@@ -268,16 +306,26 @@ public class ProductLineAnalysisHelper {
 
             long time2 = System.currentTimeMillis();
 
-            Model thisModel = m.treeCopyNoTransform();
+            // like flattening a declared product, skip products that do
+            // not satisfy the feature model
+            try {
+                m.checkProduct(product.getFeatureSetAsString(), product);
+            } catch (WrongProgramArgumentException e) {
+                System.out.println("\u23F1 " + e.getMessage());
+                continue;
+            }
 
+            // products are derived from the flattened models of shared delta prefixes
             long time3 = System.currentTimeMillis();
-            thisModel.flattenForProduct(product);
+            cache.flattenForProduct(product);
 
             long time4 = System.currentTimeMillis();
             timeSum += (time4 - time3);
             System.out.println("\u23F1 Time: " + (time1 - time0) + " | " + (time2 - time1) + " | " + (time3 - time2) + " | " + (time4 - time3) + " | " + "Total(s): " + ((time4 - time0)/1000.0));
         }
         System.out.println("\u23F1 Flattening total time (s): " + timeSum/1000.0);
+        System.out.println("\u23F1 Deltas applied: " + cache.getAppliedDeltas());
+        System.out.println("\u23F1 Models kept: " + cache.getSnapshots());
     }
 
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.abs_models.backend.common.InternalBackendException;
+import org.abs_models.frontend.ast.CompilationUnit;
+
+/**
+ * Parsed compilation units of the compiler server, keyed by file name and
+ * content hash.  Only files whose content changed since the last request
+ * are parsed again; files that the last request did not use are dropped.
+ * <p>
+ * The cache keeps each unit as it was after parsing and preprocessing;
+ * callers get a fresh copy, without any attribute values, since the
+ * analysis steps in {@link Main} (flattening, delta application, rewriting
+ * of partial functions, etc.) modify the model in place.
+ */
+final class CompilationUnitCache {
+
+    private record Entry(String hash, CompilationUnit unit) {}
+
+    private final Map<String, Entry> units = new HashMap<>();
+    private CompilationUnit stdlib = null;
+
+    private static String read(Main.SourceFile source) throws IOException {
+        try (Reader reader = source.opener().open()) {
+            StringWriter result = new StringWriter();
+            reader.transferTo(result);
+            return result.toString();
+        }
+    }
+
+    private static String hash(String content) {
+        return StdLibSnapshot.hash(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static CompilationUnit copy(CompilationUnit unit) {
+        CompilationUnit result = unit.treeCopyNoTransform();
+        result.flushTreeCache();
+        return result;
+    }
+
+    /**
+     * Return the compilation units of {@code sources}, in the same order,
+     * parsing only new and changed files.
+     */
+    List<CompilationUnit> parse(List<Main.SourceFile> sources, boolean verbose, int threads) throws IOException {
+        String[] hashes = new String[sources.size()];
+        List<Main.SourceFile> changed = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            Main.SourceFile source = sources.get(i);
+            String content = read(source);
+            hashes[i] = hash(content);
+            Entry entry = units.get(source.file().getPath());
+            if (entry == null || !entry.hash().equals(hashes[i])) {
+                changed.add(new Main.SourceFile(source.file(), () -> new StringReader(content)));
+            }
+        }
+        List<CompilationUnit> parsed = Main.parseSourceFiles(changed, verbose, threads);
+        for (int i = 0, j = 0; i < sources.size(); i++) {
+            String name = sources.get(i).file().getPath();
+            if (j < changed.size() && changed.get(j).file().getPath().equals(name)) {
+                units.put(name, new Entry(hashes[i], parsed.get(j)));
+                j++;
+            }
+        }
+        List<CompilationUnit> result = new ArrayList<>(sources.size());
+        Set<String> names = new HashSet<>();
+        for (Main.SourceFile source : sources) {
+            result.add(copy(units.get(source.file().getPath()).unit()));
+            names.add(source.file().getPath());
+        }
+        // Drop files that are not part of this request, e.g., deleted or
+        // renamed ones, so the cache does not grow without bound
+        units.keySet().retainAll(names);
+        return result;
+    }
+
+    /** Return a fresh copy of the standard library. */
+    CompilationUnit getStdLib() throws IOException, InternalBackendException {
+        if (stdlib == null) {
+            stdlib = Main.getStdLib();
+        }
+        return copy(stdlib);
+    }
+
+    /**
+     * Return a hash of the names and contents of all source files in {@code
+     * files}, or null if they cannot be read.  Two requests with the same
+     * command line and fingerprint have the same result.
+     */
+    String fingerprint(List<File> files) {
+        if (files == null) return null;
+        try {
+            StringBuilder result = new StringBuilder();
+            for (Main.SourceFile source : Main.collectSourceFiles(files)) {
+                result.append(source.file().getPath()).append('\0')
+                    .append(hash(read(source))).append('\n');
+            }
+            return hash(result.toString());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.abs_models.Absc;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
+
+/**
+ * A long-running compiler process that answers requests from an editor or
+ * test harness, avoiding JVM startup and re-parsing of unchanged files.
+ * <p>
+ * Requests and responses are JSON objects, one per line.  A request
+ * contains the command line of an {@code absc} invocation, e.g.,
+ * <pre>
+ * {"id": 1, "args": ["--java", "-d", "gen", "model.abs"]}
+ * </pre>
+ * and is answered with the exit code and all output of that invocation:
+ * <pre>
+ * {"id": 1, "exitCode": 0, "output": "...", "cached": false, "millis": 85}
+ * </pre>
+ * The request {@code {"shutdown": true}} stops the server.
+ * <p>
+ * Parsed compilation units are kept in a {@link CompilationUnitCache}, so
+ * only changed files are parsed again; the analysis steps run on a fresh
+ * copy of the model for each request.  Requests without a backend, i.e.,
+ * type-checking only, are answered from a cache if the command line and
+ * the contents of all files are the same as for an earlier request, unless
+ * they write files or dump the model (see {@link #isCacheable}).
+ * Requests are handled one at a time; a request that fails with an
+ * unexpected exception is answered with an {@code "error"} member.
+ */
+@Command(name = "server",
+         description = "Answer compile and check requests on standard input or a local socket",
+         mixinStandardHelpOptions = true)
+public class CompilerServerCommand implements Callable<Integer> {
+
+    @Option(names = { "--port" },
+            description = "listen for connections on localhost port @|italic port|@ instead of reading standard input",
+            paramLabel = "port")
+    public Integer port = null;
+
+    /** Number of type-check results kept for repeated requests. */
+    private static final int MAX_CACHED_RESULTS = 32;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CompilationUnitCache cache = new CompilationUnitCache();
+
+    record Result(int exitCode, String output) {}
+
+    private final Map<String, Result> results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > MAX_CACHED_RESULTS;
+            }
+        };
+
+    @Override
+    public Integer call() throws Exception {
+        if (port == null) {
+            serve(System.in, System.out);
+        } else {
+            try (ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+                System.err.println("absc server listening on port " + socket.getLocalPort());
+                boolean running = true;
+                while (running) {
+                    try (Socket client = socket.accept()) {
+                        running = serve(client.getInputStream(), client.getOutputStream());
+                    } catch (IOException e) {
+                        System.err.println("Connection failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Answer requests from {@code in} until end of input or a shutdown
+     * request.
+     *
+     * @return false if a shutdown was requested
+     */
+    boolean serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintStream writer = new PrintStream(out, true, StandardCharsets.UTF_8);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) continue;
+            ObjectNode response = mapper.createObjectNode();
+            boolean shutdown = false;
+            try {
+                JsonNode request = mapper.readTree(line);
+                if (request.has("id")) response.set("id", request.get("id"));
+                if (request.path("shutdown").asBoolean(false)) {
+                    response.put("shutdown", true);
+                    shutdown = true;
+                } else {
+                    handle(request, response);
+                }
+            } catch (JsonProcessingException e) {
+                response.put("error", "Malformed request: " + e.getOriginalMessage());
+            } catch (RuntimeException e) {
+                // Answer the request and keep serving after an internal
+                // compiler error
+                e.printStackTrace();
+                response.put("error", "Internal error: " + e);
+            }
+            writer.println(mapper.writeValueAsString(response));
+            if (shutdown) return false;
+        }
+        return true;
+    }
+
+    private void handle(JsonNode request, ObjectNode response) {
+        long start = System.nanoTime();
+        List<String> args = new ArrayList<>();
+        for (JsonNode arg : request.path("args")) {
+            args.add(arg.asText());
+        }
+        Result result;
+        boolean cached = false;
+        try {
+            Absc arguments = Absc.parseArgs(args.toArray(new String[0]));
+            String key = null;
+            if (isCacheable(arguments)) {
+                String fingerprint = cache.fingerprint(arguments.files);
+                if (fingerprint != null) key = String.join("\0", args) + "\0" + fingerprint;
+            }
+            result = key == null ? null : results.get(key);
+            if (result != null) {
+                cached = true;
+            } else {
+                result = run(arguments);
+                if (key != null) results.put(key, result);
+            }
+        } catch (ParameterException e) {
+            result = new Result(2, e.getMessage() + System.lineSeparator());
+        }
+        response.put("exitCode", result.exitCode());
+        response.put("output", result.output());
+        response.put("cached", cached);
+        response.put("millis", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Whether the result of a request can be replayed from the cache: the
+     * request only type-checks, and all its effects are in the output.
+     */
+    static boolean isCacheable(Absc arguments) {
+        return arguments.backend == null
+            && arguments.secrecyReport == null
+            && arguments.profileFile == null
+            && !arguments.dump;
+    }
+
+    /**
+     * Run the compiler with {@code arguments}, collecting everything written
+     * to standard output and standard error.
+     */
+    Result run(Absc arguments) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream capture = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        CompilationUnitCache oldCache = Main.unitCache;
+        System.setOut(capture);
+        System.setErr(capture);
+        Main.unitCache = cache;
+        int exitCode;
+        try {
+            exitCode = new Main().mainMethod(arguments);
+        } catch (AssertionError | StackOverflowError e) {
+            // Keep the server running after an internal compiler error
+            e.printStackTrace(capture);
+            exitCode = 1;
+        } finally {
+            Main.unitCache = oldCache;
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        capture.flush();
+        return new Result(exitCode, buffer.toString(StandardCharsets.UTF_8));
+    }
+}
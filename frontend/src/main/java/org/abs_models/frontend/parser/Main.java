@@ -5,19 +5,25 @@
 package org.abs_models.frontend.parser;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.jar.JarEntry;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -58,6 +64,7 @@ import org.abs_models.frontend.typechecker.locationtypes.LocationType;
 import org.abs_models.frontend.typechecker.locationtypes.LocationTypeInferenceExtension;
 import org.abs_models.frontend.typechecker.nullable.NullCheckerExtension;
 import org.abs_models.frontend.typechecker.ext.SecrecyLatticeStructure;
+import org.abs_models.frontend.typechecker.ext.TypeSystemExtension;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
@@ -167,18 +174,16 @@ public class Main {
 
     // entry point for unit tests who just want to parse one or more files
     public Model parse(final java.util.List<File> args) throws IOException, DeltaModellingException, WrongProgramArgumentException, InternalBackendException {
-        Model m = parseFiles(this.arguments.verbose, args);
+        Model m = parseFiles(this.arguments.verbose, this.arguments.parseThreads, args);
         analyzeFlattenAndRewriteModel(m);
         return m;
     }
 
-    private static Model parseFiles(boolean verbose, final java.util.List<File> fileNames) throws IOException, InternalBackendException {
+    private static Model parseFiles(boolean verbose, int threads, final java.util.List<File> fileNames) throws IOException, InternalBackendException {
         if (fileNames.isEmpty()) {
             throw new IllegalArgumentException("Please provide at least one input file");
         }
 
-        java.util.List<CompilationUnit> units = new ArrayList<>();
-
         for (File f : fileNames) {
             if (!f.canRead()) {
                 throw new IllegalArgumentException("File "+f+" cannot be read");
@@ -189,12 +194,16 @@ public class Main {
             }
         }
 
-        for (File f : fileNames) {
-            parseFileOrDirectory(units, f, verbose);
+        java.util.List<SourceFile> sources = collectSourceFiles(fileNames);
+        java.util.List<CompilationUnit> units;
+        if (unitCache != null) {
+            units = unitCache.parse(sources, verbose, threads);
+            units.add(unitCache.getStdLib());
+        } else {
+            units = parseSourceFiles(sources, verbose, threads);
+            units.add(getStdLib());
         }
 
-	units.add(getStdLib());
-
         List<CompilationUnit> unitList = new List<>();
         for (CompilationUnit u : units) {
             unitList.add(u);
@@ -235,49 +244,77 @@ public class Main {
         
         SecrecyLatticeStructure secrecyInput = parseSecrecyInput(secrecyTypeValues);
         m.secrecyLatticeStructure = secrecyInput;
-
-        m.evaluateAllProductDeclarations(); // resolve ProductExpressions to simple sets of features
-        rewriteModel(m, arguments.product);
-        m.flattenTraitOnly();
-        m.collapseTraitModifiers();
-
-        m.expandPartialFunctions();
-        m.expandForeachLoops();
-        m.expandAwaitAsyncCalls();
-
-        if (arguments.product != null) {
-            // apply deltas that correspond to arguments.productproduct
-            if (arguments.notypecheck) {
-                m.flattenForProductUnsafe(arguments.product);
-            } else {
-                m.flattenForProduct(arguments.product);
+        m.secrecyReportFile = arguments.secrecyReport;
+
+        // the profiler restores the previous trace receiver when closed
+        try (PhaseProfiler profiler = arguments.profileFile != null ? new PhaseProfiler(m) : PhaseProfiler.NONE) {
+            profiler.begin("evaluateAllProductDeclarations");
+            m.evaluateAllProductDeclarations(); // resolve ProductExpressions to simple sets of features
+            profiler.end();
+            profiler.begin("rewriteModel");
+            rewriteModel(m, arguments.product);
+            profiler.end();
+            profiler.begin("flattenTraitOnly");
+            m.flattenTraitOnly();
+            profiler.end();
+            profiler.begin("collapseTraitModifiers");
+            m.collapseTraitModifiers();
+            profiler.end();
+
+            profiler.begin("expandPartialFunctions");
+            m.expandPartialFunctions();
+            profiler.end();
+            profiler.begin("expandForeachLoops");
+            m.expandForeachLoops();
+            profiler.end();
+            profiler.begin("expandAwaitAsyncCalls");
+            m.expandAwaitAsyncCalls();
+            profiler.end();
+
+            if (arguments.product != null) {
+                // apply deltas that correspond to arguments.productproduct
+                profiler.begin("flattenForProduct");
+                if (arguments.notypecheck) {
+                    m.flattenForProductUnsafe(arguments.product);
+                } else {
+                    m.flattenForProduct(arguments.product);
+                }
+                profiler.end();
             }
-        }
 
-        if (arguments.dump) {
-            m.dumpMVars();
-            m.dump(System.out);
-        }
+            if (arguments.dump) {
+                m.dumpMVars();
+                m.dump(System.out);
+            }
 
-        final SemanticConditionList semErrs = m.getErrors();
+            profiler.begin("getErrors");
+            final SemanticConditionList semErrs = m.getErrors();
+            profiler.end();
 
-        if (semErrs.containsErrors()) {
-            System.err.println("Semantic errors: " + semErrs.getErrorCount());
-        }
-        for (SemanticCondition error : semErrs) {
-            // Print both errors and warnings
-            System.err.println(error.getHelpMessage());
-            System.err.flush();
-        }
-        if (!semErrs.containsErrors()) {
-            typeCheckModel(m);
+            if (semErrs.containsErrors()) {
+                System.err.println("Semantic errors: " + semErrs.getErrorCount());
+            }
+            for (SemanticCondition error : semErrs) {
+                // Print both errors and warnings
+                System.err.println(error.getHelpMessage());
+                System.err.flush();
+            }
+            if (!semErrs.containsErrors()) {
+                profiler.begin("typeCheckModel");
+                typeCheckModel(m);
+                profiler.end();
+            }
+            profiler.write(arguments.profileFile);
         }
     }
 
     /**
     * @author Maximilian Paul
     * 
-    * This is the parser for the secrecy lattice given by the user. We expect the lattice to be linear.
+    * This is the parser for the secrecy lattice given by the user.
+    * The input is a comma-separated list of chains, e.g. "Low < A < High, Low < B < High".
+    * The levels do not need to be ordered linearly, but they must form a lattice
+    * (checked by SecrecyLatticeStructure, which also computes the transitive order).
     * 
     * @param inputString - the lattice that was put in, or default "Low < High"
     * @return - the newly parsed secrecy lattice defined by a set of levels and an order between them.
@@ -320,28 +357,6 @@ public class Main {
                     order.get(lower).add(higher);
                 }
             }
-
-            // Computes the transitive edges for all levels
-            for (String level : order.keySet()) {
-                Set<String> toProcess = new HashSet<>(order.get(level));
-                Set<String> seen = new HashSet<>();
-
-                while (!toProcess.isEmpty()) {
-                    Set<String> next = new HashSet<>();
-                    for (String higher : toProcess) {
-                        if (seen.add(higher)) {
-
-                            if (level.equals(higher)) {
-                                throw new IllegalArgumentException("Secrecy level cannot point to itself: " + level + " < " + higher);
-                            }
-
-                            order.get(level).add(higher);
-                            next.addAll(order.get(higher));
-                        }
-                    }
-                    toProcess = next;
-                }
-            }
         }
 
         if (levels.isEmpty()) {
@@ -440,10 +455,25 @@ public class Main {
 
             registerNullableTypeChecking(m);
             registerLocationTypeChecking(m);
+            m.setTypeCheckThreads(arguments.typecheckThreads);
+            if (m.getTypeCheckThreads() > 1) {
+                for (TypeSystemExtension tse : m.getTypeExt().getSequentialExtensions()) {
+                    System.err.println("Warning: type-checking on one thread, since "
+                                       + tse.getClass().getSimpleName() + " does not support --typecheck-threads");
+                }
+            }
+            if (arguments.verbose)
+                m.getTypeExt().enableTiming();
             SemanticConditionList typeerrors = m.typeCheck();
             for (SemanticCondition se : typeerrors) {
                 System.err.println(se.getHelpMessage());
             }
+            if (arguments.verbose) {
+                System.out.println("Type system extension times:");
+                for (Map.Entry<String, Long> e : m.getTypeExt().getExtensionTimes().entrySet()) {
+                    System.out.println("  " + e.getKey() + ": " + e.getValue() / 1_000_000 + " ms");
+                }
+            }
         }
     }
 
@@ -483,7 +513,35 @@ public class Main {
         }
     }
 
-    private static void parseFileOrDirectory(java.util.List<CompilationUnit> units, File file, boolean verbose)
+    /**
+     * An ABS source file to be parsed.  Files are opened only when they are
+     * parsed; entries of ABS package files are read into memory when the
+     * package is scanned.
+     */
+    record SourceFile(File file, SourceOpener opener) {}
+
+    @FunctionalInterface
+    interface SourceOpener {
+        Reader open() throws IOException;
+    }
+
+    /**
+     * Parsed compilation units that are reused across calls of {@link
+     * #parse(java.util.List)}, or null.  Set by the compiler server, see
+     * {@link CompilerServerCommand}.
+     */
+    static CompilationUnitCache unitCache = null;
+
+    /** Collect the source files in the given files, directories and packages. */
+    static java.util.List<SourceFile> collectSourceFiles(java.util.List<File> fileNames) throws IOException {
+        java.util.List<SourceFile> sources = new ArrayList<>();
+        for (File f : fileNames) {
+            collectFileOrDirectory(sources, f);
+        }
+        return sources;
+    }
+
+    private static void collectFileOrDirectory(java.util.List<SourceFile> sources, File file)
 	throws IOException
     {
 	if (!file.canRead()) {
@@ -491,16 +549,16 @@ public class Main {
 	}
 
         if (file.isDirectory()) {
-            parseDirectory(units, file, verbose);
+            collectDirectory(sources, file);
         } else {
             if (isABSSourceFile(file))
-                parseABSSourceFile(units,file, verbose);
+                sources.add(new SourceFile(file, () -> new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))));
             else if (isABSPackageFile(file))
-                parseABSPackageFile(units,file, verbose);
+                collectABSPackageFile(sources, file);
         }
     }
 
-    private static void parseABSPackageFile(java.util.List<CompilationUnit> units, File file, boolean verbose) throws IOException {
+    private static void collectABSPackageFile(java.util.List<SourceFile> sources, File file) throws IOException {
         try (ABSPackageFile jarFile = new ABSPackageFile(file)) {
             if (!jarFile.isABSPackage())
                 return;
@@ -509,21 +567,92 @@ public class Main {
                 JarEntry jarEntry = e.nextElement();
                 if (!jarEntry.isDirectory()) {
                     if (jarEntry.getName().endsWith(".abs")) {
-                        parseABSSourceFile(units, "jar:"+file.toURI()+"!/"+jarEntry.getName(), jarFile.getInputStream(jarEntry), verbose);
+                        byte[] content;
+                        try (InputStream stream = jarFile.getInputStream(jarEntry)) {
+                            content = stream.readAllBytes();
+                        }
+                        sources.add(new SourceFile(new File("jar:"+file.toURI()+"!/"+jarEntry.getName()),
+                                                   () -> new InputStreamReader(new ByteArrayInputStream(content), "UTF-8")));
                     }
                 }
             }
         }
     }
 
-    private static void parseDirectory(java.util.List<CompilationUnit> units, File file, boolean verbose) throws IOException {
+    private static void collectDirectory(java.util.List<SourceFile> sources, File file) throws IOException {
         if (file.canRead() && !file.isHidden()) {
             for (File f : file.listFiles()) {
                 if (f.isFile() && !isABSSourceFile(f) && !isABSPackageFile(f))
                     continue;
-                parseFileOrDirectory(units, f, verbose);
+                collectFileOrDirectory(sources, f);
+            }
+        }
+    }
+
+    /**
+     * Parse {@code sources} into compilation units, in the same order.
+     * <p>
+     * With more than one thread, files are lexed and parsed concurrently on
+     * a fork-join pool of at most {@code threads} workers.  The
+     * preprocessing step still runs on the calling thread, in the original
+     * order, since it evaluates JastAdd attributes, which is not thread-safe.
+     * Parse errors are stored in each unit, so they are reported exactly as
+     * after a sequential run; if a file cannot be read, the exception of the
+     * first such file is thrown.
+     *
+     * @param threads the maximum number of parser threads, or 0 for one
+     * thread per processor
+     */
+    static java.util.List<CompilationUnit> parseSourceFiles(java.util.List<SourceFile> sources, boolean verbose, int threads)
+        throws IOException
+    {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        threads = Math.min(threads, sources.size());
+        java.util.List<CompilationUnit> units = new ArrayList<>(sources.size());
+        if (threads <= 1) {
+            for (SourceFile source : sources) {
+                if (verbose) {
+                    System.out.println("Parsing file " + source.file().getPath());
+                }
+                units.add(parseUnit(source.file(), source.opener().open()));
+            }
+            return units;
+        }
+        if (verbose) {
+            for (SourceFile source : sources) {
+                System.out.println("Parsing file " + source.file().getPath());
             }
         }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            java.util.List<ForkJoinTask<CompilationUnit>> tasks = new ArrayList<>(sources.size());
+            for (SourceFile source : sources) {
+                tasks.add(pool.submit(() -> parseUnitSyntax(source.file(), source.opener().open())));
+            }
+            for (ForkJoinTask<CompilationUnit> task : tasks) {
+                units.add(preprocessUnit(joinParseTask(task)));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return units;
+    }
+
+    private static CompilationUnit joinParseTask(ForkJoinTask<CompilationUnit> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioe) throw ioe;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IllegalStateException(cause);
+        }
     }
 
     public static boolean isABSPackageFile(File f) {
@@ -543,22 +672,6 @@ public class Main {
         return f.getName().endsWith(".abs") || f.getName().endsWith(".mtvl");
     }
 
-    private static void parseABSSourceFile(java.util.List<CompilationUnit> units, String name, InputStream inputStream, boolean verbose) throws IOException {
-        parseABSSourceFile(units, new File(name), new InputStreamReader(inputStream, "UTF-8"), verbose);
-    }
-
-    private static void parseABSSourceFile(java.util.List<CompilationUnit> units, File file, boolean verbose) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
-        parseABSSourceFile(units, file, reader, verbose);
-    }
-
-    private static void parseABSSourceFile(java.util.List<CompilationUnit> units, File file, Reader reader, boolean verbose) throws IOException {
-        if (verbose) {
-            System.out.println("Parsing file " + file.getPath());//getAbsolutePath());
-        }
-        units.add(parseUnit(file, reader));
-    }
-
     protected static void printErrorMessage() {
         System.err.println("\nCompilation failed.");
     }
@@ -576,16 +689,39 @@ public class Main {
     }
 
 
-    private static CompilationUnit getStdLib() throws IOException, InternalBackendException {
-        InputStream stream = Main.class.getClassLoader().getResourceAsStream(ABS_STD_LIB);
-        if (stream == null) {
-            // we're running unit tests; try to find the file in the source tree
-            stream = Main.class.getClassLoader().getResourceAsStream("abs/lang/abslang.abs");
+    /** The contents of abslang.abs, read once per process. */
+    private static volatile byte[] stdLibSource = null;
+
+    static byte[] getStdLibSource() throws IOException, InternalBackendException {
+        byte[] result = stdLibSource;
+        if (result == null) {
+            try (InputStream stream = Main.class.getClassLoader().getResourceAsStream(ABS_STD_LIB)) {
+                if (stream == null) {
+                    throw new InternalBackendException("Could not find ABS Standard Library");
+                }
+                result = stream.readAllBytes();
+            }
+            stdLibSource = result;
         }
-        if (stream == null) {
-            throw new InternalBackendException("Could not find ABS Standard Library");
+        return result;
+    }
+
+    static CompilationUnit parseStdLib(byte[] source) throws IOException {
+        return parseUnit(new File(ABS_STD_LIB), new InputStreamReader(new ByteArrayInputStream(source)));
+    }
+
+    /**
+     * Return a fresh copy of the standard library.  This is rebuilt from the
+     * snapshot written at build time if possible, see {@link
+     * StdLibSnapshot}, and parsed from abslang.abs otherwise.
+     */
+    static CompilationUnit getStdLib() throws IOException, InternalBackendException {
+        byte[] source = getStdLibSource();
+        CompilationUnit result = StdLibSnapshot.load(source);
+        if (result == null) {
+            result = parseStdLib(source);
         }
-        return parseUnit(new File(ABS_STD_LIB), new InputStreamReader(stream));
+        return result;
     }
 
     @Deprecated
@@ -700,16 +836,31 @@ public class Main {
     }
 
     /**
-     * Parse the content of `reader` into a CompilationUnit.
+     * Parse the content of `reader` into a preprocessed CompilationUnit.
      *
      * @param file The filename of the input stream, or null
      * @param reader The stream to parse
-     * @param raiseExceptions Raise parse errors as exceptions if true
      * @return The parsed content of `reader`, or an empty CompilationUnit with parse error information
      * @throws IOException
      */
     private static CompilationUnit parseUnit(File file, Reader reader)
 	throws IOException
+    {
+        return preprocessUnit(parseUnitSyntax(file, reader));
+    }
+
+    /**
+     * Parse the content of `reader` into a CompilationUnit without
+     * preprocessing it.  This touches no shared state and can run on any
+     * thread.
+     *
+     * @param file The filename of the input stream, or null
+     * @param reader The stream to parse
+     * @return The parsed content of `reader`, or an empty CompilationUnit with parse error information
+     * @throws IOException
+     */
+    private static CompilationUnit parseUnitSyntax(File file, Reader reader)
+	throws IOException
     {
 	try {
 	    SyntaxErrorCollector errorlistener = new SyntaxErrorCollector(file);
@@ -726,9 +877,7 @@ public class Main {
 		ParseTreeWalker walker = new ParseTreeWalker();
 		CreateJastAddASTListener l = new CreateJastAddASTListener(file);
 		walker.walk(l, tree);
-		CompilationUnit u
-		    = new ASTPreProcessor().preprocess(l.getCompilationUnit());
-		return u;
+		return l.getCompilationUnit();
 	    } else {
 		String path = "<unknown path>";
 		if (file != null) path = file.getPath();
@@ -742,4 +891,15 @@ public class Main {
 	}
     }
 
+    /**
+     * Run the preprocessing step on a unit without parse errors, see
+     * {@link ASTPreProcessor#preprocess}.
+     */
+    private static CompilationUnit preprocessUnit(CompilationUnit u) {
+        if (u.hasParserErrors()) {
+            return u;
+        }
+        return new ASTPreProcessor().preprocess(u);
+    }
+
 }
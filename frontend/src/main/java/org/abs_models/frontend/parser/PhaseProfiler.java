@@ -0,0 +1,281 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.ASTState;
+import org.abs_models.frontend.ast.Model;
+
+/**
+ * Measures the phases of the frontend (see
+ * {@code Main.analyzeFlattenAndRewriteModel}) and writes the measurements
+ * as JSON.  For each phase, we record wall time, CPU time and allocated
+ * bytes of the compiler thread, the number of AST nodes before and after
+ * the phase, and the JastAdd attributes evaluated most often during the
+ * phase.
+ * <p>
+ * CPU time and allocations are taken from {@link java.lang.management.ThreadMXBean}
+ * and do not include worker threads, e.g., of {@code --typecheck-threads};
+ * attribute evaluations are counted on all threads, so the trace receiver
+ * only uses concurrent counters.  Node counts do not trigger rewrites.
+ * <p>
+ * Attribute evaluations are only counted when the AST classes were
+ * generated with JastAdd tracing, i.e., when the compiler was built with
+ * {@code ./gradlew -PjastaddTracing ...}; otherwise every phase has an
+ * empty attribute list and the output says {@code "tracing": false}.
+ * Since {@code ASTState.trace()} does not exist in a build without
+ * tracing, the profiler accesses it via reflection.
+ * <p>
+ * The trace receiver is installed only while profiling: the constructor
+ * installs it and {@link #close} restores the previous receiver, so use
+ * the profiler in a try-with-resources statement.  Call {@link #begin} and
+ * {@link #end} around each phase, then {@link #write}.  The disabled
+ * profiler {@link #NONE} does nothing.
+ */
+public class PhaseProfiler implements AutoCloseable {
+
+    /** The number of attributes listed per phase. */
+    private static final int TOP_ATTRIBUTES = 20;
+
+    /** A profiler that records nothing. */
+    public static final PhaseProfiler NONE = new PhaseProfiler();
+
+    private final Model model;
+    private final com.sun.management.ThreadMXBean threads;
+    /** {@code ASTState.trace()}, or null if built without tracing. */
+    private static final Method TRACE = traceMethod();
+
+    private final Object previousReceiver;
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, LongAdder> evaluations = new ConcurrentHashMap<>();
+    private Phase current = null;
+    private boolean closed = false;
+
+    private PhaseProfiler() {
+        this.model = null;
+        this.threads = null;
+        this.previousReceiver = null;
+    }
+
+    /**
+     * Start profiling the phases of a model.  If the compiler was built
+     * with tracing, this installs a JastAdd trace receiver that counts
+     * attribute evaluations, until {@link #close} is called.
+     */
+    public PhaseProfiler(Model model) {
+        this.model = model;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (isTracingAvailable()) {
+            this.previousReceiver = getReceiver(model);
+            setReceiver(model, countingReceiver());
+        } else {
+            this.previousReceiver = null;
+        }
+    }
+
+    /**
+     * Whether the AST classes were generated with JastAdd tracing, i.e.,
+     * whether attribute evaluations can be counted.
+     */
+    public static boolean isTracingAvailable() {
+        return TRACE != null;
+    }
+
+    private static Method traceMethod() {
+        try {
+            return ASTState.class.getMethod("trace");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /** The trace receiver of a model; only call if tracing is available. */
+    static Object getReceiver(Model model) {
+        try {
+            Object trace = TRACE.invoke(model.state());
+            return trace.getClass().getMethod("getReceiver").invoke(trace);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot access JastAdd trace", e);
+        }
+    }
+
+    private static void setReceiver(Model model, Object receiver) {
+        try {
+            Object trace = TRACE.invoke(model.state());
+            trace.getClass().getMethod("setReceiver", receiverType()).invoke(trace, receiver);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot access JastAdd trace", e);
+        }
+    }
+
+    private static Class<?> receiverType() throws NoSuchMethodException {
+        return TRACE.getReturnType().getMethod("getReceiver").getReturnType();
+    }
+
+    /**
+     * An {@code ASTState.Trace.Receiver} that counts COMPUTE_BEGIN events
+     * per attribute.
+     */
+    private Object countingReceiver() {
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "equals": return proxy == args[0];
+            case "hashCode": return System.identityHashCode(proxy);
+            case "toString": return "PhaseProfiler receiver";
+            default:
+                // accept(event, node, attribute, params, value)
+                if (((Enum<?>) args[0]).name().equals("COMPUTE_BEGIN")) {
+                    evaluations.computeIfAbsent((String) args[2], a -> new LongAdder()).increment();
+                }
+                return null;
+            }
+        };
+        try {
+            Class<?> type = receiverType();
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Cannot access JastAdd trace", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return model != null;
+    }
+
+    /**
+     * Start measuring a phase.
+     * @param name - the name of the phase, e.g., the method implementing it.
+     */
+    public void begin(String name) {
+        if (!isEnabled()) return;
+        assert current == null : "Phase " + current.name + " not ended";
+        current = new Phase(name);
+        current.nodesBefore = countNodes(model);
+        evaluations.clear();
+        current.allocated = threads.getCurrentThreadAllocatedBytes();
+        current.cpu = threads.getCurrentThreadCpuTime();
+        current.wall = System.nanoTime();
+    }
+
+    /**
+     * Stop measuring the current phase.
+     */
+    public void end() {
+        if (!isEnabled()) return;
+        Phase p = current;
+        p.wall = System.nanoTime() - p.wall;
+        p.cpu = threads.getCurrentThreadCpuTime() - p.cpu;
+        p.allocated = threads.getCurrentThreadAllocatedBytes() - p.allocated;
+        p.nodesAfter = countNodes(model);
+        evaluations.entrySet().stream()
+            .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+            .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                    .thenComparing(Map.Entry.<String, Long>comparingByKey()))
+            .limit(TOP_ATTRIBUTES)
+            .forEachOrdered(p.attributes::add);
+        phases.add(p);
+        current = null;
+    }
+
+    /**
+     * Stop counting attribute evaluations by restoring the trace receiver
+     * that was installed before this profiler.
+     */
+    @Override
+    public void close() {
+        if (!isEnabled() || closed) return;
+        closed = true;
+        if (isTracingAvailable()) {
+            setReceiver(model, previousReceiver);
+        }
+    }
+
+    /**
+     * Write the measurements of the phases ended so far.
+     * @param file - the file to write to.
+     */
+    public void write(File file) {
+        if (!isEnabled()) return;
+        try (JsonGenerator json = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeStringField("version", Main.getVersion());
+            json.writeBooleanField("tracing", isTracingAvailable());
+            json.writeArrayFieldStart("phases");
+            for (Phase p : phases) {
+                json.writeStartObject();
+                json.writeStringField("name", p.name);
+                json.writeNumberField("wallMs", millis(p.wall));
+                json.writeNumberField("cpuMs", millis(p.cpu));
+                json.writeNumberField("allocatedBytes", p.allocated);
+                json.writeNumberField("nodesBefore", p.nodesBefore);
+                json.writeNumberField("nodesAfter", p.nodesAfter);
+                json.writeArrayFieldStart("attributes");
+                for (Map.Entry<String, Long> e : p.attributes) {
+                    json.writeStartObject();
+                    json.writeStringField("attribute", e.getKey());
+                    json.writeNumberField("evaluations", e.getValue());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The number of nodes below n, without triggering rewrites.
+     */
+    private static int countNodes(ASTNode<?> n) {
+        int result = 1;
+        for (int i = 0; i < n.getNumChildNoTransform(); i++) {
+            ASTNode<?> child = n.getChildNoTransform(i);
+            if (child != null) {
+                result += countNodes(child);
+            }
+        }
+        return result;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static class Phase {
+        final String name;
+        long wall;
+        long cpu;
+        long allocated;
+        int nodesBefore;
+        int nodesAfter;
+        final List<Map.Entry<String, Long>> attributes = new ArrayList<>();
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.CompilationUnit;
+
+/**
+ * A compact binary snapshot of the parsed standard library.  The build
+ * writes the snapshot next to {@code abslang.abs} (see the {@code
+ * stdlib-snapshot} subcommand); {@link Main} rebuilds the standard library
+ * from the snapshot instead of lexing, parsing and preprocessing
+ * abslang.abs on every run.
+ * <p>
+ * The snapshot records, in preorder, the class, token values, source
+ * position and children of each node of the compilation unit.  It contains
+ * the SHA-256 hash of the standard library source it was made from, and a
+ * hash of the schema of the AST classes it uses (their tokens and
+ * children, see {@link #schemaHash}); {@link #load} returns {@code null} if
+ * the snapshot is missing, was made from a different source or by a
+ * compiler with different AST classes, or cannot be read, and the caller
+ * then parses the source as usual.
+ * <p>
+ * Token values are read and written via the fields that JastAdd generates
+ * for them ({@code token<Type>_<Name>}); only {@code String}, {@code int}
+ * and {@code boolean} tokens are supported, which suffices for freshly
+ * parsed code.
+ */
+public final class StdLibSnapshot {
+
+    private static final Logger log = Logger.getLogger(StdLibSnapshot.class.getName());
+
+    public static final String SNAPSHOT_RESOURCE = "abs/lang/abslang.snapshot";
+
+    private static final int MAGIC = 0xAB5_5DA9;
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int FLAG_POSITION = 1;
+    private static final int FLAG_FILENAME = 2;
+
+    private StdLibSnapshot() {}
+
+    /** Token fields of each AST class, in a deterministic order. */
+    private static final Map<Class<?>, Field[]> tokenFields = new ConcurrentHashMap<>();
+
+    private static Field[] getTokenFields(Class<?> c) {
+        return tokenFields.computeIfAbsent(c, clazz -> {
+            ArrayList<Field> result = new ArrayList<>();
+            for (Class<?> k = clazz; k != null && ASTNode.class.isAssignableFrom(k); k = k.getSuperclass()) {
+                for (Field f : k.getDeclaredFields()) {
+                    if (f.getName().startsWith("token") && !Modifier.isStatic(f.getModifiers())) {
+                        f.setAccessible(true);
+                        result.add(f);
+                    }
+                }
+            }
+            result.sort((f1, f2) -> f1.getName().compareTo(f2.getName()));
+            return result.toArray(new Field[0]);
+        });
+    }
+
+    private static final Field sourceFileNameField;
+    static {
+        try {
+            sourceFileNameField = ASTNode.class.getDeclaredField("sourceFileName");
+            sourceFileNameField.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * A hash of the tokens and children of the given AST classes, so that
+     * a snapshot is not read into AST classes that changed since it was
+     * written.
+     */
+    static String schemaHash(Collection<String> classNames) throws ReflectiveOperationException {
+        StringBuilder schema = new StringBuilder();
+        for (String className : classNames) {
+            Class<?> c = Class.forName(className, false, StdLibSnapshot.class.getClassLoader());
+            schema.append(className).append('{');
+            for (Field f : getTokenFields(c)) {
+                schema.append(f.getName()).append(':').append(f.getType().getName()).append(';');
+            }
+            // JastAdd generates a get<Child>NoTransform method per child
+            List<String> children = new ArrayList<>();
+            for (Method m : c.getMethods()) {
+                if (m.getParameterCount() == 0 && m.getName().endsWith("NoTransform")
+                    && ASTNode.class.isAssignableFrom(m.getReturnType())) {
+                    children.add(m.getName() + ":" + m.getReturnType().getName());
+                }
+            }
+            Collections.sort(children);
+            for (String child : children) {
+                schema.append(child).append(';');
+            }
+            schema.append('}');
+        }
+        return hash(schema.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String hash(byte[] source) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(source));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is guaranteed to be available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Writing
+
+    /**
+     * Write a snapshot of {@code unit}, which was parsed from {@code
+     * source}, to {@code out}.
+     */
+    public static void write(CompilationUnit unit, byte[] source, OutputStream out) throws IOException {
+        // Use a copy so that no non-terminal attribute values end up in the
+        // snapshot
+        ASTNode<?> root = unit.treeCopyNoTransform();
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> stringTable = new ArrayList<>();
+        Set<String> classNames = new TreeSet<>();
+        collectStrings(root, strings, stringTable, classNames);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeUTF(hash(source));
+        data.writeInt(classNames.size());
+        for (String s : classNames) data.writeUTF(s);
+        try {
+            data.writeUTF(schemaHash(classNames));
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+        data.writeInt(stringTable.size());
+        for (String s : stringTable) data.writeUTF(s);
+        writeNode(root, data, strings);
+        data.flush();
+    }
+
+    private static void intern(String s, Map<String, Integer> strings, List<String> stringTable) {
+        if (s != null && !strings.containsKey(s)) {
+            strings.put(s, stringTable.size());
+            stringTable.add(s);
+        }
+    }
+
+    private static void collectStrings(ASTNode<?> node, Map<String, Integer> strings, List<String> stringTable,
+                                       Set<String> classNames) throws IOException {
+        if (node == null) return;
+        classNames.add(node.getClass().getName());
+        intern(node.getClass().getName(), strings, stringTable);
+        intern(getSourceFileName(node), strings, stringTable);
+        for (Field f : getTokenFields(node.getClass())) {
+            if (f.getType() == String.class) intern((String)get(f, node), strings, stringTable);
+        }
+        for (int i = 0; i < node.getNumChildNoTransform(); i++) {
+            collectStrings(node.getChildNoTransform(i), strings, stringTable, classNames);
+        }
+    }
+
+    private static void writeString(String s, DataOutputStream data, Map<String, Integer> strings) throws IOException {
+        data.writeInt(s == null ? -1 : strings.get(s));
+    }
+
+    private static void writeNode(ASTNode<?> node, DataOutputStream data, Map<String, Integer> strings) throws IOException {
+        if (node == null) {
+            data.writeInt(-1);
+            return;
+        }
+        writeString(node.getClass().getName(), data, strings);
+        String fileName = getSourceFileName(node);
+        int flags = (node.isPositionSet() ? FLAG_POSITION : 0) | (fileName != null ? FLAG_FILENAME : 0);
+        data.writeByte(flags);
+        if (node.isPositionSet()) {
+            data.writeInt(node.getStartLine());
+            data.writeInt(node.getStartColumn());
+            data.writeInt(node.getEndLine());
+            data.writeInt(node.getEndColumn());
+        }
+        if (fileName != null) writeString(fileName, data, strings);
+        for (Field f : getTokenFields(node.getClass())) {
+            Object value = get(f, node);
+            if (f.getType() == String.class) {
+                writeString((String)value, data, strings);
+            } else if (f.getType() == int.class) {
+                data.writeInt((Integer)value);
+            } else if (f.getType() == boolean.class) {
+                data.writeBoolean((Boolean)value);
+            } else if (f.getType() == Boolean.class) {
+                data.writeByte(value == null ? 0 : ((Boolean)value ? 2 : 1));
+            } else {
+                throw new IOException("Cannot write token " + f.getName() + " of " + node.getClass().getName());
+            }
+        }
+        data.writeInt(node.getNumChildNoTransform());
+        for (int i = 0; i < node.getNumChildNoTransform(); i++) {
+            writeNode(node.getChildNoTransform(i), data, strings);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // Reading
+
+    /**
+     * Rebuild the standard library from the snapshot on the class path.
+     *
+     * @param source the contents of abslang.abs
+     * @return the compilation unit, or null if there is no usable snapshot
+     */
+    public static CompilationUnit load(byte[] source) {
+        if ("false".equals(System.getProperty("abs.stdlib.snapshot"))) return null;
+        InputStream stream = StdLibSnapshot.class.getClassLoader().getResourceAsStream(SNAPSHOT_RESOURCE);
+        if (stream == null) return null;
+        return read(stream, source);
+    }
+
+    /**
+     * Rebuild a compilation unit from a snapshot; closes {@code stream}.
+     *
+     * @return the compilation unit, or null if the snapshot was made from
+     * a different source or with different AST classes, or is corrupt
+     */
+    static CompilationUnit read(InputStream stream, byte[] source) {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(stream))) {
+            if (data.readInt() != MAGIC || data.readInt() != FORMAT_VERSION) return null;
+            if (!data.readUTF().equals(hash(source))) {
+                log.fine("Standard library snapshot is stale, parsing abslang.abs");
+                return null;
+            }
+            List<String> classNames = new ArrayList<>();
+            for (int n = data.readInt(); n > 0; n--) classNames.add(data.readUTF());
+            if (!data.readUTF().equals(schemaHash(classNames))) {
+                log.fine("Standard library snapshot was made with different AST classes, parsing abslang.abs");
+                return null;
+            }
+            // not allocated up front, so that a corrupt length ends in an EOFException
+            List<String> stringTable = new ArrayList<>();
+            for (int n = data.readInt(); n > 0; n--) stringTable.add(data.readUTF());
+            String[] strings = stringTable.toArray(new String[0]);
+            Map<String, Class<?>> classes = new HashMap<>();
+            CompilationUnit result = (CompilationUnit)readNode(data, strings, classes);
+            if (data.read() != -1) throw new IOException("Trailing data after the standard library snapshot");
+            return result;
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            // The snapshot is corrupt or does not fit the AST classes of this compiler
+            log.log(Level.FINE, "Could not load standard library snapshot, parsing abslang.abs", e);
+            return null;
+        }
+    }
+
+    private static String readString(DataInputStream data, String[] strings) throws IOException {
+        int i = data.readInt();
+        return i < 0 ? null : strings[i];
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static ASTNode<?> readNode(DataInputStream data, String[] strings, Map<String, Class<?>> classes)
+        throws IOException, ReflectiveOperationException
+    {
+        String className = readString(data, strings);
+        if (className == null) return null;
+        Class<?> c = classes.get(className);
+        if (c == null) {
+            c = Class.forName(className, true, StdLibSnapshot.class.getClassLoader());
+            classes.put(className, c);
+        }
+        ASTNode node = (ASTNode)c.getConstructor().newInstance();
+        int flags = data.readByte();
+        if ((flags & FLAG_POSITION) != 0) {
+            node.setPosition(data.readInt(), data.readInt(), data.readInt(), data.readInt());
+        }
+        if ((flags & FLAG_FILENAME) != 0) {
+            node.setFileName(readString(data, strings));
+        }
+        for (Field f : getTokenFields(c)) {
+            if (f.getType() == String.class) {
+                f.set(node, readString(data, strings));
+            } else if (f.getType() == int.class) {
+                f.setInt(node, data.readInt());
+            } else if (f.getType() == boolean.class) {
+                f.setBoolean(node, data.readBoolean());
+            } else if (f.getType() == Boolean.class) {
+                byte b = data.readByte();
+                f.set(node, b == 0 ? null : Boolean.valueOf(b == 2));
+            } else {
+                throw new IOException("Cannot read token " + f.getName() + " of " + className);
+            }
+        }
+        int nChildren = data.readInt();
+        for (int i = 0; i < nChildren; i++) {
+            ASTNode<?> child = readNode(data, strings, classes);
+            if (child != null) node.setChild(child, i);
+        }
+        return node;
+    }
+
+    private static Object get(Field f, ASTNode<?> node) throws IOException {
+        try {
+            return f.get(node);
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String getSourceFileName(ASTNode<?> node) throws IOException {
+        try {
+            return (String)sourceFileNameField.get(node);
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import org.abs_models.frontend.ast.CompilationUnit;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Writes the standard library snapshot; called by the build (see the
+ * {@code generateStdLibSnapshot} task in build.gradle).
+ */
+@Command(name = "stdlib-snapshot",
+         description = "Write a parsed snapshot of the standard library (used by the build)",
+         hidden = true,
+         mixinStandardHelpOptions = true)
+public class StdLibSnapshotCommand implements Callable<Integer> {
+
+    @Parameters(description = "the snapshot file to write", arity = "1")
+    public File output;
+
+    @Override
+    public Integer call() throws Exception {
+        byte[] source = Main.getStdLibSource();
+        CompilationUnit stdlib = Main.parseStdLib(source);
+        if (!stdlib.getParserErrors().isEmpty()) {
+            System.err.println("Could not parse the standard library: "
+                               + stdlib.getParserErrors().get(0).getHelpMessage());
+            return 1;
+        }
+        File dir = output.getAbsoluteFile().getParentFile();
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            System.err.println("Could not create directory " + dir);
+            return 1;
+        }
+        try (OutputStream out = new FileOutputStream(output)) {
+            StdLibSnapshot.write(stdlib, source, out);
+        }
+        return 0;
+    }
+}
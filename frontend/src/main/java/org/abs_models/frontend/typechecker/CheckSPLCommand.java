@@ -4,6 +4,7 @@ import java.io.File;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.abs_models.Absc;
@@ -11,7 +12,9 @@ import org.abs_models.common.WrongProgramArgumentException;
 import org.abs_models.frontend.analyser.SemanticCondition;
 import org.abs_models.frontend.analyser.SemanticConditionList;
 import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.Product;
 import org.abs_models.frontend.ast.ProductDecl;
+import org.abs_models.frontend.delta.ProductChecker;
 import org.abs_models.frontend.delta.ProductLineAnalysisHelper;
 import org.abs_models.frontend.mtvl.ChocoSolver;
 import org.abs_models.frontend.parser.Main;
@@ -29,7 +32,7 @@ import picocli.CommandLine.ParentCommand;
          helpCommand = true,
          mixinStandardHelpOptions = true // handles -h, -V
 )
-public class CheckSPLCommand implements Callable<Void> {
+public class CheckSPLCommand implements Callable<Integer> {
     @ParentCommand
     private Absc parent;
 
@@ -73,6 +76,9 @@ public class CheckSPLCommand implements Callable<Void> {
             description = "check satisfiability of @|italic product|@",
             paramLabel = "product")
     public String checkProduct;
+    @Option(names = { "--check-products" },
+            description = "flatten and type-check every product of the feature model, on @|italic --typecheck-threads|@ threads")
+    public boolean checkProducts = false;
 
     private void typeCheckProductLine(Model m) {
 
@@ -90,6 +96,27 @@ public class CheckSPLCommand implements Callable<Void> {
         }
     }
 
+    /**
+     * Type-check all products; returns true if some product has errors.
+     */
+    private boolean typeCheckAllProducts(Model m) {
+        if (parent.verbose) {
+            System.out.println("Typechecking all " + m.getProductList().getNumChild() + " products...");
+        }
+        Set<Product> failed = new HashSet<>();
+        Map<Product, List<String>> errors = ProductChecker.typeCheckAllProducts(m, m.getTypeCheckThreads(), failed);
+        for (Map.Entry<Product, List<String>> e : errors.entrySet()) {
+            System.err.println("Product " + e.getKey().getFeatureSetAsString() + ":");
+            for (String err : e.getValue()) {
+                System.err.println(err);
+            }
+        }
+        if (!failed.isEmpty()) {
+            System.err.println(failed.size() + " of " + m.getProductList().getNumChild() + " products have errors");
+        }
+        return !failed.isEmpty();
+    }
+
     private void analyzeMTVL(Model m) {
         if (m.hasMTVL()) {
             if (solve) {
@@ -208,10 +235,15 @@ public class CheckSPLCommand implements Callable<Void> {
     }
 
 
-    void analyzeModel(Model m) {
+    /**
+     * Analyze the product line; returns the exit status of the command.
+     */
+    int analyzeModel(Model m) {
         m.verbose = parent.verbose;
         m.debug = parent.debug;
 
+        m.setTypeCheckThreads(parent.typecheckThreads);
+
         // drop attributes before calculating any attribute
         if (ignoreattr)
             m.dropAttributes();
@@ -222,6 +254,7 @@ public class CheckSPLCommand implements Callable<Void> {
 
         // check PL before flattening
         typeCheckProductLine(m);
+        boolean productErrors = checkProducts && typeCheckAllProducts(m);
 
         // flatten before checking error, to avoid calculating *wrong* attributes
         if (solveall) {
@@ -232,15 +265,15 @@ public class CheckSPLCommand implements Callable<Void> {
         }
         // TODO: check if there were errors
         analyzeMTVL(m);
+        return productErrors ? 1 : 0;
     }
 
     @Override
-    public Void call() throws Exception {
+    public Integer call() throws Exception {
         if (parent.verbose) System.out.println("Starting software product line checking ...");
         Main main = new Main();
         main.arguments = this.parent; // FIXME: fill in parent's verbose, debug
         Model m = main.parse(files);
-        analyzeModel(m);
-        return null;
+        return analyzeModel(m);
     }
 }
@@ -21,6 +21,16 @@ public class DataTypeType extends Type {
     private final DataTypeDecl decl;
     private final List<Type> typeArgs = new ArrayList<>();
 
+    /** Type parameter name to type argument, computed on first use. */
+    private volatile Map<String, Type> substitution;
+
+    /**
+     * Whether the type arguments contain no type parameters, see {@link
+     * #isGround}.  Kept up to date by the constructors and {@link
+     * #withTypeArgs}, the only places where type arguments are added.
+     */
+    private boolean ground;
+
     @Override
     public Type copy() {
         return new DataTypeType(decl, typeArgs);
@@ -52,11 +62,13 @@ public class DataTypeType extends Type {
                 throw new IllegalArgumentException("Type argument was null");
             this.typeArgs.add(t);
         }
+        ground = computeGround();
     }
 
     public DataTypeType(DataTypeDecl decl, List<Type> typeArgs) {
         this.decl = decl;
         this.typeArgs.addAll(typeArgs);
+        ground = computeGround();
     }
 
     public List<Type> getTypeArgs() {
@@ -76,6 +88,7 @@ public class DataTypeType extends Type {
         copy.typeArgs.addAll(Arrays.asList(typeArgs));
         if (copy.typeArgs.contains(null))
             throw new IllegalArgumentException("One type argument was null");
+        copy.ground = copy.computeGround();
         return copy;
     }
 
@@ -83,6 +96,27 @@ public class DataTypeType extends Type {
         return !typeArgs.isEmpty();
     }
 
+    /**
+     * Returns true if the type arguments of this type are (recursively)
+     * data types or interface types, i.e., if there are no type
+     * parameters to bind.
+     */
+    public boolean isGround() {
+        return ground;
+    }
+
+    private boolean computeGround() {
+        for (Type t : typeArgs) {
+            if (t instanceof DataTypeType) {
+                if (!((DataTypeType) t).ground)
+                    return false;
+            } else if (!(t instanceof InterfaceType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean hasReferences() {
         Set<DataTypeDecl> checkedDecls = new HashSet<>();
@@ -137,6 +171,8 @@ public class DataTypeType extends Type {
 
     @Override
     public boolean equals(Object o) {
+        if (this == o)
+            return true;
         if (!(o instanceof DataTypeType))
             return false;
 
@@ -311,22 +347,32 @@ public class DataTypeType extends Type {
     }
 
     private Map<String, Type> getSubstitutionMap() {
-        Map<String, Type> substitution = new HashMap<>();
-        ParametricDataTypeDecl pd = (ParametricDataTypeDecl) decl;
-        for (int i = 0; i < numTypeArgs(); i++) {
-            substitution.put(pd.getTypeParameter(i).getName(), getTypeArg(i));
+        Map<String, Type> result = substitution;
+        if (result == null) {
+            result = new HashMap<>();
+            ParametricDataTypeDecl pd = (ParametricDataTypeDecl) decl;
+            for (int i = 0; i < numTypeArgs(); i++) {
+                result.put(pd.getTypeParameter(i).getName(), getTypeArg(i));
+            }
+            result = Collections.unmodifiableMap(result);
+            substitution = result;
         }
-
-        return substitution;
+        return result;
     }
 
     @Override
     public Type applyBinding(Map<TypeParameter, Type> binding) {
-        if (hasTypeArgs()) {
+        if (!hasTypeArgs()) {
+            return super.applyBinding(binding);
+        } else if (ground) {
+            // Nothing to bind, but callers attach metadata to the result,
+            // so do not hand out this object; the type arguments are
+            // shared, as with copy()
+            return copy();
+        } else {
             List<Type> argTypes = TypeCheckerHelper.applyBindings(binding, getTypeArgs());
             return new DataTypeType(getDecl(), argTypes);
-        } else
-            return super.applyBinding(binding);
+        }
     }
 
     @Override
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typechecker;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import org.abs_models.frontend.analyser.SemanticConditionList;
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.ClassDecl;
+import org.abs_models.frontend.ast.CompilationUnit;
+import org.abs_models.frontend.ast.Decl;
+import org.abs_models.frontend.ast.Exp;
+import org.abs_models.frontend.ast.InterfaceDecl;
+import org.abs_models.frontend.ast.InterfaceTypeUse;
+import org.abs_models.frontend.ast.MethodSig;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.ModuleDecl;
+import org.abs_models.frontend.ast.PartialFunctionDecl;
+import org.abs_models.frontend.ast.TraitDecl;
+import org.abs_models.frontend.ast.TypeUse;
+import org.abs_models.frontend.ast.TypedVarOrFieldDecl;
+import org.abs_models.frontend.typechecker.ext.TypeExtensionHelper;
+
+/**
+ * Type-checks the declarations of a model on several threads.
+ * <p>
+ * JastAdd attributes are not thread-safe: the AST is generated without
+ * {@code --concurrent}, so the caches of lazy and parameterized
+ * attributes are plain fields and hash maps, and circular attributes
+ * share one evaluation state for the whole tree.  The model is therefore
+ * prepared in a first, sequential phase: it is walked in source order,
+ * which performs all rewrites and evaluates the attributes that checking
+ * reads most (declarations and types of names, types of declarations,
+ * type uses and expressions).  Imports and exports are also checked in
+ * this phase.  Then the lookups that are shared by all declarations are
+ * evaluated (see {@link #prepareLookups}), so that checking only reads
+ * the caches of the nodes outside the declaration being checked.  The
+ * declarations and main blocks are then checked on a thread pool, each
+ * into its own condition list; the lists are merged in source order, so
+ * the result is the same for any number of threads.
+ * <p>
+ * Type system extensions are called one at a time (see {@link
+ * TypeExtensionHelper#startParallelChecking}).  Models are checked
+ * sequentially if an extension does not allow parallel checking, which
+ * includes all extensions that evaluate circular attributes.
+ */
+public final class ParallelTypeChecker {
+
+    private ParallelTypeChecker() {}
+
+    /** A part of the model that is checked into its own condition list. */
+    private static final class Task {
+        private final Consumer<SemanticConditionList> check;
+        private final SemanticConditionList conditions = new SemanticConditionList();
+        private RuntimeException failure = null;
+
+        Task(Consumer<SemanticConditionList> check) {
+            this.check = check;
+        }
+
+        void run(TypeExtensionHelper ext) {
+            ext.withConditionList(conditions, () -> {
+                    try {
+                        check.accept(conditions);
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                });
+        }
+    }
+
+    /**
+     * Check all modules of {@code model}, adding conditions to {@code
+     * errors} in the same order as {@link ModuleDecl#typeCheck}.
+     */
+    public static void typeCheck(Model model, SemanticConditionList errors, int threads) {
+        TypeExtensionHelper ext = model.getTypeExt();
+        List<Task> tasks = new ArrayList<>();
+        List<Task> parallelTasks = new ArrayList<>();
+        ext.startParallelChecking();
+        try {
+            modules:
+            for (CompilationUnit u : model.getCompilationUnits()) {
+                for (ModuleDecl m : u.getModuleDecls()) {
+                    Task header = new Task(m::typeCheckImportsAndExports);
+                    header.run(ext);
+                    tasks.add(header);
+                    // Checking stops at the first exception, as in ModuleDecl.typeCheck
+                    if (header.failure != null) break modules;
+                    for (Decl d : m.getDecls()) {
+                        Task task = new Task(e -> m.typeCheckDecl(d, e));
+                        ext.withConditionList(task.conditions, () -> prepare(d));
+                        tasks.add(task);
+                        parallelTasks.add(task);
+                    }
+                    if (m.hasBlock()) {
+                        Task task = new Task(e -> m.getBlock().typeCheck(e));
+                        ext.withConditionList(task.conditions, () -> prepare(m.getBlock()));
+                        tasks.add(task);
+                        parallelTasks.add(task);
+                    }
+                }
+            }
+            prepareLookups(model);
+            runAll(parallelTasks, ext, threads);
+        } finally {
+            ext.finishParallelChecking();
+        }
+        for (Task task : tasks) {
+            errors.addAll(task.conditions);
+            if (task.failure != null) throw task.failure;
+        }
+    }
+
+    /**
+     * Evaluate the attributes of {@code node} and its descendants that are
+     * read during type checking, in source order.  Evaluation errors are
+     * ignored; they are reported when the node is checked.
+     */
+    private static void prepare(ASTNode<?> node) {
+        // Not type-checked
+        if (node instanceof TraitDecl || node instanceof PartialFunctionDecl) return;
+        try {
+            if (node instanceof Decl d) {
+                d.getType();
+            } else if (node instanceof TypedVarOrFieldDecl d) {
+                d.getType();
+            } else if (node instanceof MethodSig s) {
+                s.getType();
+            } else if (node instanceof TypeUse t) {
+                t.getType();
+            } else if (node instanceof Exp e) {
+                e.getType();
+            }
+        } catch (RuntimeException e) {
+            // reported by the type checker
+        }
+        for (int i = 0; i < node.getNumChild(); i++) {
+            ASTNode<?> child = node.getChild(i);
+            if (child != null) prepare(child);
+        }
+    }
+
+    /**
+     * Evaluate the lookups whose caches are shared by all declarations:
+     * the name maps of all modules (circular attributes), the lookups of
+     * all names visible in a module, and the method lookups of classes
+     * and interfaces for the methods they declare and inherit.  Lookups
+     * with other keys, e.g. of names that are not defined, are evaluated
+     * by {@link #prepare} on the nodes that use them.  Also used before
+     * generating code in parallel.
+     */
+    public static void prepareLookups(Model model) {
+        Set<KindedName> names = new LinkedHashSet<>();
+        for (ModuleDecl m : model.getModuleDecls()) {
+            model.lookupModule(m.getName());
+            try {
+                m.getDefinedNames();
+                m.getImportedNames();
+                m.getExportedNames();
+                m.getVisibleNames();
+            } catch (RuntimeException e) {
+                // reported by the type checker
+                continue;
+            }
+            for (KindedName k : m.getVisibleNames().keySet()) {
+                names.add(k);
+                try {
+                    m.lookup(k);
+                    m.isVisible(k.getName());
+                } catch (RuntimeException e) {
+                    // reported by the type checker
+                }
+            }
+            for (KindedName k : m.getDefinedNames().keySet()) {
+                m.isDefined(k.getName());
+            }
+            for (KindedName k : m.getExportedNames().keySet()) {
+                m.exportsName(k.getName());
+            }
+        }
+        for (KindedName k : names) {
+            try {
+                model.lookup(k);
+            } catch (RuntimeException e) {
+                // reported by the type checker
+            }
+        }
+        for (Decl d : model.getDecls()) {
+            try {
+                if (d instanceof ClassDecl c) {
+                    Set<String> methods = new HashSet<>();
+                    for (MethodSig s : c.getAllMethodSigs()) methods.add(s.getName());
+                    for (InterfaceTypeUse u : c.getImplementedInterfaceUses()) {
+                        if (u.getDecl() instanceof InterfaceDecl i) {
+                            for (MethodSig s : i.getAllMethodSigs()) methods.add(s.getName());
+                        }
+                    }
+                    for (String name : methods) c.lookupMethod(name);
+                    prepareMethodLookups(c.getImplementedInterfaceUses(), methods);
+                } else if (d instanceof InterfaceDecl i) {
+                    Set<String> methods = new HashSet<>();
+                    for (MethodSig s : i.getAllMethodSigs()) methods.add(s.getName());
+                    for (String name : methods) i.lookupMethod(name);
+                    prepareMethodLookups(i.getExtendedInterfaceUses(), methods);
+                }
+            } catch (RuntimeException e) {
+                // reported by the type checker
+            }
+        }
+    }
+
+    private static void prepareMethodLookups(Iterable<InterfaceTypeUse> supertypes, Set<String> methods) {
+        for (InterfaceTypeUse u : supertypes) {
+            if (u.getDecl() instanceof InterfaceDecl i) {
+                for (String name : methods) i.lookupMethod(name);
+            }
+        }
+    }
+
+    private static void runAll(List<Task> tasks, TypeExtensionHelper ext, int threads) {
+        if (tasks.isEmpty()) return;
+        ForkJoinPool pool = new ForkJoinPool(Math.min(threads, tasks.size()));
+        try {
+            List<ForkJoinTask<?>> running = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                running.add(pool.submit(() -> task.run(ext)));
+            }
+            for (ForkJoinTask<?> task : running) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while type checking", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException re) throw re;
+                    if (cause instanceof Error err) throw err;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
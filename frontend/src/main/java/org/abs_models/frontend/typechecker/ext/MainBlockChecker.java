@@ -5,39 +5,52 @@
 
 package org.abs_models.frontend.typechecker.ext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
 import org.abs_models.frontend.analyser.ErrorMessage;
 import org.abs_models.frontend.analyser.SemanticWarning;
+import org.abs_models.frontend.ast.ASTNode;
 import org.abs_models.frontend.ast.Block;
 import org.abs_models.frontend.ast.CompilationUnit;
 import org.abs_models.frontend.ast.Model;
 import org.abs_models.frontend.ast.ModuleDecl;
 
-public class MainBlockChecker extends DefaultTypeSystemExtension {
+public class MainBlockChecker extends DefaultTypeSystemExtension implements NodeVisitingExtension {
+
+    /** Modules with a main block, in model order. */
+    private final List<ModuleDecl> mainModules = new ArrayList<>();
+
     protected MainBlockChecker(Model m) {
         super(m);
     }
 
     @Override
-    public void checkModel(Model model) {
-        int nMainBlocks = 0;
-        for (CompilationUnit u : model.getCompilationUnits()) {
-            for (ModuleDecl m : u.getModuleDecls()) {
-                if (m.hasBlock()) {
-                    nMainBlocks = nMainBlocks + 1;
-                }
-            }
+    public Set<Class<?>> getVisitedNodeTypes(int pass) {
+        return Set.of(ModuleDecl.class);
+    }
+
+    @Override
+    public void visitNode(ASTNode<?> node, int pass) {
+        ModuleDecl m = (ModuleDecl)node;
+        if (m.hasBlock()) {
+            mainModules.add(m);
         }
+    }
+
+    @Override
+    public void traversalFinished(Model model) {
+        int nMainBlocks = mainModules.size();
         if (nMainBlocks == 0) {
             CompilationUnit c = model.getCompilationUnit(0);
             errors.add(new SemanticWarning(c, ErrorMessage.MAIN_BLOCK_NOT_FOUND, "dummy string to keep constructor happy"));
         } else if (nMainBlocks > 1) {
             Block b = model.getMainBlock();
             String moduleName = ((ModuleDecl)(b.getParent().getParent())).getName();
-            for (CompilationUnit u : model.getCompilationUnits()) {
-                for (ModuleDecl m : u.getModuleDecls()) {
-                    if (m.hasBlock() && m.getBlock() != b) {
-                        errors.add(new SemanticWarning(m.getBlock(), ErrorMessage.MAIN_BLOCK_AMBIGUOUS, moduleName));
-                    }
+            for (ModuleDecl m : mainModules) {
+                if (m.getBlock() != b) {
+                    errors.add(new SemanticWarning(m.getBlock(), ErrorMessage.MAIN_BLOCK_AMBIGUOUS, moduleName));
                 }
             }
         }
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typechecker.ext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.CompilationUnit;
+import org.abs_models.frontend.ast.Decl;
+import org.abs_models.frontend.ast.FieldDecl;
+import org.abs_models.frontend.ast.List;
+import org.abs_models.frontend.ast.MethodImpl;
+import org.abs_models.frontend.ast.MethodSig;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.ModuleDecl;
+import org.abs_models.frontend.ast.Opt;
+import org.abs_models.frontend.ast.ParamDecl;
+
+/**
+ * A single walk over the model that serves all {@link
+ * NodeVisitingExtension}s at once.  For each node class, the extensions
+ * that visit it are computed once and kept in a table, so that a node that
+ * no extension is interested in costs a single lookup.
+ * <p>
+ * If all extensions of a pass only visit declarations (modules, classes,
+ * interfaces, functions, methods, fields and parameters), the walk does
+ * not descend into method bodies, expressions and types.
+ */
+final class ModelTraversal {
+
+    /** Runs each call into an extension; used to add timing. */
+    @FunctionalInterface
+    interface Dispatcher {
+        void call(NodeVisitingExtension extension, Runnable call);
+    }
+
+    /** Node types that make up the declaration structure of a model. */
+    private static final Class<?>[] DECLARATION_TYPES = {
+        Model.class, CompilationUnit.class, ModuleDecl.class, Decl.class,
+        MethodImpl.class, MethodSig.class, FieldDecl.class, ParamDecl.class,
+        List.class, Opt.class
+    };
+
+    private static final NodeVisitingExtension[] NONE = new NodeVisitingExtension[0];
+
+    private final int pass;
+    private final java.util.List<NodeVisitingExtension> extensions = new ArrayList<>();
+    private final java.util.List<Set<Class<?>>> visitedTypes = new ArrayList<>();
+    private final Map<Class<?>, NodeVisitingExtension[]> table = new HashMap<>();
+    private final Dispatcher dispatcher;
+    private boolean visitBodies = false;
+
+    private ModelTraversal(java.util.List<NodeVisitingExtension> candidates, int pass, Dispatcher dispatcher) {
+        this.pass = pass;
+        this.dispatcher = dispatcher;
+        for (NodeVisitingExtension e : candidates) {
+            if (pass >= e.getNumPasses()) continue;
+            Set<Class<?>> types = e.getVisitedNodeTypes(pass);
+            if (types.isEmpty()) continue;
+            extensions.add(e);
+            visitedTypes.add(types);
+            for (Class<?> type : types) {
+                if (!isDeclarationType(type)) visitBodies = true;
+            }
+        }
+    }
+
+    private static final ClassValue<Boolean> isDeclaration = new ClassValue<>() {
+            @Override
+            protected Boolean computeValue(Class<?> c) {
+                for (Class<?> d : DECLARATION_TYPES) {
+                    if (d.isAssignableFrom(c)) return true;
+                }
+                return false;
+            }
+        };
+
+    private static boolean isDeclarationType(Class<?> c) {
+        return isDeclaration.get(c);
+    }
+
+    /**
+     * Run all passes of {@code extensions} over {@code model}, then call
+     * {@link NodeVisitingExtension#traversalFinished} for each of them.
+     */
+    static void run(Model model, java.util.List<NodeVisitingExtension> extensions, Dispatcher dispatcher) {
+        int passes = 0;
+        for (NodeVisitingExtension e : extensions) {
+            passes = Math.max(passes, e.getNumPasses());
+        }
+        for (int pass = 0; pass < passes; pass++) {
+            ModelTraversal traversal = new ModelTraversal(extensions, pass, dispatcher);
+            if (!traversal.extensions.isEmpty()) {
+                traversal.walk(model);
+            }
+        }
+        for (NodeVisitingExtension e : extensions) {
+            dispatcher.call(e, () -> e.traversalFinished(model));
+        }
+    }
+
+    private NodeVisitingExtension[] getVisitors(Class<?> nodeClass) {
+        NodeVisitingExtension[] result = table.get(nodeClass);
+        if (result == null) {
+            java.util.List<NodeVisitingExtension> visitors = new ArrayList<>();
+            for (int i = 0; i < extensions.size(); i++) {
+                for (Class<?> type : visitedTypes.get(i)) {
+                    if (type.isAssignableFrom(nodeClass)) {
+                        visitors.add(extensions.get(i));
+                        break;
+                    }
+                }
+            }
+            result = visitors.isEmpty() ? NONE : visitors.toArray(NONE);
+            table.put(nodeClass, result);
+        }
+        return result;
+    }
+
+    private void walk(ASTNode<?> node) {
+        for (NodeVisitingExtension e : getVisitors(node.getClass())) {
+            dispatcher.call(e, () -> e.visitNode(node, pass));
+        }
+        for (int i = 0; i < node.getNumChild(); i++) {
+            ASTNode<?> child = node.getChild(i);
+            if (child != null && (visitBodies || isDeclarationType(child.getClass()))) {
+                walk(child);
+            }
+        }
+    }
+}
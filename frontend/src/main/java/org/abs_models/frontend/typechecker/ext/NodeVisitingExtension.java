@@ -0,0 +1,44 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typechecker.ext;
+
+import java.util.Set;
+
+import org.abs_models.frontend.ast.ASTNode;
+import org.abs_models.frontend.ast.Model;
+
+/**
+ * A type system extension that inspects nodes of the model after type
+ * checking.  Instead of walking the model in {@link
+ * TypeSystemExtension#checkModel}, such an extension declares the node
+ * types it is interested in.  {@link ModelTraversal} then walks the model
+ * once for all registered extensions and calls {@link #visitNode} for each
+ * node of these types, in model order.
+ * <p>
+ * Extensions that need the results of one walk before they can check
+ * something else use several passes; all extensions share each pass.
+ */
+public interface NodeVisitingExtension extends TypeSystemExtension {
+
+    /** The number of passes this extension takes part in. */
+    default int getNumPasses() {
+        return 1;
+    }
+
+    /**
+     * The node types (subclasses of {@link ASTNode}) that this extension
+     * visits in pass {@code pass}, counting from 0.
+     */
+    Set<Class<?>> getVisitedNodeTypes(int pass);
+
+    /** Visit {@code node}, whose type was returned by {@link #getVisitedNodeTypes}. */
+    void visitNode(ASTNode<?> node, int pass);
+
+    /**
+     * Called after the last pass of all extensions, in the order in which
+     * the extensions were registered.
+     */
+    default void traversalFinished(Model model) {}
+}
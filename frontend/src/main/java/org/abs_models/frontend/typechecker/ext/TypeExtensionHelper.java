@@ -4,21 +4,209 @@
  */
 package org.abs_models.frontend.typechecker.ext;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import org.abs_models.frontend.analyser.SemanticCondition;
 import org.abs_models.frontend.analyser.SemanticConditionList;
 import org.abs_models.frontend.ast.*;
 import org.abs_models.frontend.typechecker.BoundedType;
 import org.abs_models.frontend.typechecker.DataTypeType;
 import org.abs_models.frontend.typechecker.KindedName;
 import org.abs_models.frontend.typechecker.Type;
+import org.abs_models.frontend.typechecker.TypeCheckerException;
 import org.abs_models.frontend.typechecker.TypeParameter;
 import org.abs_models.frontend.typechecker.KindedName.Kind;
 
 public class TypeExtensionHelper implements TypeSystemExtension {
     private java.util.List<TypeSystemExtension> obs = new ArrayList<>();
 
+    /**
+     * The callbacks of {@link TypeSystemExtension}.  Each callback is only
+     * dispatched to the extensions that implement it, i.e., that do not
+     * inherit the empty default from {@link DefaultTypeSystemExtension}.
+     */
+    private enum Callback {
+        CHECK_MODEL("checkModel", Model.class),
+        CHECK_CLASS_DECL("checkClassDecl", ClassDecl.class),
+        CHECK_INTERFACE_DECL("checkInterfaceDecl", InterfaceDecl.class),
+        CHECK_DATA_TYPE_DECL("checkDataTypeDecl", DataTypeDecl.class),
+        CHECK_METHOD_IMPL("checkMethodImpl", MethodImpl.class),
+        CHECK_ASSIGNABLE("checkAssignable", Type.class, AdaptDirection.class, Type.class, Type.class, ASTNode.class),
+        CHECK_ASSIGNABLE_BEHAVIOR_TYPE("checkAssignableBehaviorType", Type.class, Exp.class, ASTNode.class),
+        ANNOTATE_TYPE("annotateType", Type.class, ASTNode.class, ASTNode.class),
+        CHECK_METHOD_CALL("checkMethodCall", Call.class),
+        CHECK_NEW_EXP("checkNewExp", NewExp.class),
+        CHECK_EQ("checkEq", Type.class, Type.class, ASTNode.class),
+        FINISHED("finished"),
+        CHECK_STMT("checkStmt", Stmt.class),
+        CHECK_ASSIGN_STMT("checkAssignStmt", AssignStmt.class),
+        CHECK_RETURN_STMT("checkReturnStmt", ReturnStmt.class),
+        CHECK_ASSERT_STMT("checkAssertStmt", AssertStmt.class),
+        CHECK_WHILE_STMT("checkWhileStmt", WhileStmt.class),
+        CHECK_VAR_DECL_STMT("checkVarDeclStmt", VarDeclStmt.class),
+        CHECK_SUSPEND_STMT("checkSuspendStmt", SuspendStmt.class),
+        CHECK_IF_STMT("checkIfStmt", IfStmt.class),
+        CHECK_DURATION_STMT("checkDurationStmt", DurationStmt.class),
+        CHECK_EXPRESSION_STMT("checkExpressionStmt", ExpressionStmt.class),
+        CHECK_BLOCK("checkBlock", Block.class),
+        CHECK_AWAIT_STMT("checkAwaitStmt", AwaitStmt.class),
+        CHECK_GET_EXP("checkGetExp", GetExp.class),
+        CHECK_OVERRIDE("checkOverride", MethodSig.class, MethodSig.class);
+
+        final String methodName;
+        final Class<?>[] parameterTypes;
+
+        Callback(String methodName, Class<?>... parameterTypes) {
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+        }
+    }
+
+    private static final TypeSystemExtension[] NO_EXTENSIONS = new TypeSystemExtension[0];
+
+    /** For each callback, the extensions that implement it, in registration order. */
+    private TypeSystemExtension[][] dispatchTable = buildDispatchTable(obs);
+
+    /**
+     * Self time in nanoseconds spent in each extension, or null if timing
+     * is disabled.  Time spent in an extension while it triggers callbacks
+     * of other extensions (e.g., via {@code getType()}) is counted for the
+     * latter.
+     */
+    private Map<TypeSystemExtension, long[]> times = null;
+    /** Time spent in nested callbacks during the current callback. */
+    private long nestedTime = 0;
+
+    /** The condition list given to the extensions by {@link #setSemanticConditionList}. */
+    private SemanticConditionList conditions = null;
+    /** Non-null while declarations are checked in parallel. */
+    private ThreadConditionList parallelConditions = null;
+
+    /**
+     * The condition list of the extensions while declarations are checked
+     * in parallel: conditions go to the list of the declaration that the
+     * current thread checks, see {@link #withConditionList}.
+     */
+    private static final class ThreadConditionList extends SemanticConditionList {
+        private final SemanticConditionList shared;
+        private final ThreadLocal<SemanticConditionList> local = new ThreadLocal<>();
+
+        ThreadConditionList(SemanticConditionList shared) {
+            this.shared = shared;
+        }
+
+        private SemanticConditionList target() {
+            SemanticConditionList result = local.get();
+            return result == null ? shared : result;
+        }
+
+        @Override public Iterator<SemanticCondition> iterator() { return target().iterator(); }
+        @Override public boolean containsErrors() { return target().containsErrors(); }
+        @Override public boolean containsWarnings() { return target().containsWarnings(); }
+        @Override public int getErrorCount() { return target().getErrorCount(); }
+        @Override public int getWarningCount() { return target().getWarningCount(); }
+        @Override public SemanticCondition getFirstError() { return target().getFirstError(); }
+        @Override public SemanticCondition getFirstWarning() { return target().getFirstWarning(); }
+        @Override public boolean add(TypeCheckerException e) { return target().add(e); }
+        @Override public boolean add(SemanticCondition e) { return target().add(e); }
+        @Override public boolean addAll(SemanticConditionList l) { return target().addAll(l); }
+        @Override public String toString() { return target().toString(); }
+    }
+
+    private static boolean implementsCallback(TypeSystemExtension tse, Callback callback) {
+        try {
+            Method m = tse.getClass().getMethod(callback.methodName, callback.parameterTypes);
+            if (m.getDeclaringClass() != DefaultTypeSystemExtension.class) return true;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+        // The default checkEq calls checkAssignable
+        return callback == Callback.CHECK_EQ && implementsCallback(tse, Callback.CHECK_ASSIGNABLE);
+    }
+
+    private static TypeSystemExtension[][] buildDispatchTable(java.util.List<TypeSystemExtension> extensions) {
+        TypeSystemExtension[][] table = new TypeSystemExtension[Callback.values().length][];
+        for (Callback callback : Callback.values()) {
+            java.util.List<TypeSystemExtension> targets = new ArrayList<>();
+            for (TypeSystemExtension tse : extensions) {
+                if (implementsCallback(tse, callback)) targets.add(tse);
+            }
+            table[callback.ordinal()] = targets.toArray(NO_EXTENSIONS);
+        }
+        return table;
+    }
+
+    private void rebuildDispatchTable() {
+        dispatchTable = buildDispatchTable(obs);
+    }
+
+    private void dispatch(Callback callback, Consumer<TypeSystemExtension> call) {
+        TypeSystemExtension[] targets = dispatchTable[callback.ordinal()];
+        if (targets.length == 0) return;
+        if (parallelConditions != null) {
+            // Extensions are not thread-safe
+            synchronized (this) {
+                dispatchTo(targets, call);
+            }
+        } else {
+            dispatchTo(targets, call);
+        }
+    }
+
+    private void dispatchTo(TypeSystemExtension[] targets, Consumer<TypeSystemExtension> call) {
+        if (times == null) {
+            for (TypeSystemExtension tse : targets) {
+                call.accept(tse);
+            }
+        } else {
+            for (TypeSystemExtension tse : targets) {
+                timed(tse, () -> call.accept(tse));
+            }
+        }
+    }
+
+    private void timed(TypeSystemExtension tse, Runnable call) {
+        long outerNestedTime = nestedTime;
+        nestedTime = 0;
+        long start = System.nanoTime();
+        try {
+            call.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            times.computeIfAbsent(tse, k -> new long[1])[0] += elapsed - nestedTime;
+            nestedTime = outerNestedTime + elapsed;
+        }
+    }
+
+    /**
+     * Start measuring the time spent in each extension, see {@link
+     * #getExtensionTimes}.
+     */
+    public void enableTiming() {
+        if (times == null) times = new IdentityHashMap<>();
+    }
+
+    /**
+     * Return the time in nanoseconds spent in each extension since timing
+     * was enabled, keyed by class name, in registration order.
+     */
+    public Map<String, Long> getExtensionTimes() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (times == null) return result;
+        for (TypeSystemExtension tse : obs) {
+            long[] time = times.get(tse);
+            if (time != null) result.merge(tse.getClass().getSimpleName(), time[0], Long::sum);
+        }
+        return result;
+    }
+
     private void registerDefaultExtensions(Model m) {
         register(new ClassKindTypeExtension(m));
         register(new FinalAnnotationTypeExtension(m));
@@ -42,7 +230,66 @@ public class TypeExtensionHelper implements TypeSystemExtension {
         return null;
     }
 
+    /**
+     * Return true if all registered extensions allow their callbacks to be
+     * made while declarations are checked in parallel.
+     */
+    public boolean allowsParallelChecking() {
+        for (TypeSystemExtension tse : obs) {
+            if (!tse.allowsParallelChecking()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the registered extensions that do not allow parallel checking,
+     * i.e., that make the model be type-checked on one thread.
+     */
+    public java.util.List<TypeSystemExtension> getSequentialExtensions() {
+        java.util.List<TypeSystemExtension> result = new ArrayList<>();
+        for (TypeSystemExtension tse : obs) {
+            if (!tse.allowsParallelChecking()) result.add(tse);
+        }
+        return result;
+    }
+
+    /**
+     * Prepare for checking declarations on several threads: from now on,
+     * callbacks are made one at a time, and conditions found by extensions
+     * go to the list given to {@link #withConditionList} on the current
+     * thread.
+     */
+    public void startParallelChecking() {
+        SemanticConditionList shared = conditions;
+        ThreadConditionList threadConditions = new ThreadConditionList(shared);
+        for (TypeSystemExtension tse : obs) {
+            tse.setSemanticConditionList(threadConditions);
+        }
+        parallelConditions = threadConditions;
+    }
+
+    /**
+     * Run {@code check}, adding conditions found by extensions to {@code
+     * local}.  May be called from several threads at once, between {@link
+     * #startParallelChecking} and {@link #finishParallelChecking}.
+     */
+    public void withConditionList(SemanticConditionList local, Runnable check) {
+        parallelConditions.local.set(local);
+        try {
+            check.run();
+        } finally {
+            parallelConditions.local.remove();
+        }
+    }
+
+    /** Go back to making callbacks on the current thread only. */
+    public void finishParallelChecking() {
+        parallelConditions = null;
+        setSemanticConditionList(conditions);
+    }
+
     public void setSemanticConditionList(SemanticConditionList s) {
+        conditions = s;
         for (TypeSystemExtension tse : obs) {
             tse.setSemanticConditionList(s);
         }
@@ -56,15 +303,18 @@ public class TypeExtensionHelper implements TypeSystemExtension {
     public void register(TypeSystemExtension tse) {
         obs = new ArrayList<>(obs);
         obs.add(tse);
+        rebuildDispatchTable();
     }
 
     public void unregister(TypeSystemExtension tse) {
         obs = new ArrayList<>(obs);
         obs.remove(tse);
+        rebuildDispatchTable();
     }
 
     public void clearTypeSystemExtensions() {
         obs = new ArrayList<>();
+        rebuildDispatchTable();
     }
 
     public java.util.List<TypeSystemExtension> getTypeSystemExtensionList() {
@@ -72,16 +322,12 @@ public class TypeExtensionHelper implements TypeSystemExtension {
     }
 
     public void checkMethodCall(Call call) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkMethodCall(call);
-        }
+        dispatch(Callback.CHECK_METHOD_CALL, tse -> tse.checkMethodCall(call));
     }
 
     @Override
     public void checkOverride(MethodSig impl, MethodSig overriden) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkOverride(impl,overriden);
-        }
+        dispatch(Callback.CHECK_OVERRIDE, tse -> tse.checkOverride(impl,overriden));
 
         assert overriden.getParent().getParent() instanceof InterfaceDecl;
         Type expectedReturnType = overriden.getType();
@@ -96,9 +342,7 @@ public class TypeExtensionHelper implements TypeSystemExtension {
     }
 
     public void checkNewExp(NewExp e) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkNewExp(e);
-        }
+        dispatch(Callback.CHECK_NEW_EXP, tse -> tse.checkNewExp(e));
 
         ClassDecl d = (ClassDecl) e.lookup(new KindedName(Kind.CLASS,e.getClassName()));
         checkAssignable(e.getType(),d,e);
@@ -106,24 +350,18 @@ public class TypeExtensionHelper implements TypeSystemExtension {
 
     @Override
     public void checkGetExp(GetExp e) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkGetExp(e);
-        }
+        dispatch(Callback.CHECK_GET_EXP, tse -> tse.checkGetExp(e));
     }
 
     public void checkAssignStmt(AssignStmt s) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkAssignStmt(s);
-        }
+        dispatch(Callback.CHECK_ASSIGN_STMT, tse -> tse.checkAssignStmt(s));
 
         checkAssignable(s.getValue().getType(),s.getVar().getType(), s);
         checkAssignableBehaviorType(s.getVar().getType(), s.getValue(), s);
     }
 
     public void checkReturnStmt(ReturnStmt s) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkReturnStmt(s);
-        }
+        dispatch(Callback.CHECK_RETURN_STMT, tse -> tse.checkReturnStmt(s));
 
         MethodImpl m = s.getContextMethod();
 
@@ -149,8 +387,8 @@ public class TypeExtensionHelper implements TypeSystemExtension {
         checkAssignable(null, null, rht, lht, n);
     }
 
-    public void checkAssignable(Type adaptTo, AdaptDirection dir, Type rht, Type lht, ASTNode<?> n) {
-        rht = resolveBoundedType(rht);
+    public void checkAssignable(Type adaptTo, AdaptDirection dir, Type rhtType, Type lht, ASTNode<?> n) {
+        Type rht = resolveBoundedType(rhtType);
 
         if (lht.isDataType() && rht.isDataType()) {
             DataTypeType dtl = (DataTypeType) lht;
@@ -162,18 +400,14 @@ public class TypeExtensionHelper implements TypeSystemExtension {
             }
         }
         if (lht.isReferenceType() && rht.isReferenceType()) {
-            for (TypeSystemExtension tse : obs) {
-                tse.checkAssignable(adaptTo, dir, rht, lht, n);
-            }
+            dispatch(Callback.CHECK_ASSIGNABLE, tse -> tse.checkAssignable(adaptTo, dir, rht, lht, n));
         }
     }
 
     @Override
     public void checkAssignableBehaviorType(Type l, Exp r, ASTNode<?> n) {
         if (l.isReferenceType() && r.getType().isReferenceType()) {
-            for (TypeSystemExtension tse : obs) {
-                tse.checkAssignableBehaviorType(l, r, n);
-            }
+            dispatch(Callback.CHECK_ASSIGNABLE_BEHAVIOR_TYPE, tse -> tse.checkAssignableBehaviorType(l, r, n));
         }
     }
 
@@ -201,9 +435,7 @@ public class TypeExtensionHelper implements TypeSystemExtension {
             }
         }
         if (t.isReferenceType() || t.isNullType()) {
-            for (TypeSystemExtension tse : obs) {
-                tse.annotateType(t, originatingNode, typeNode);
-            }
+            dispatch(Callback.ANNOTATE_TYPE, tse -> tse.annotateType(t, originatingNode, typeNode));
         }
     }
 
@@ -292,125 +524,107 @@ public class TypeExtensionHelper implements TypeSystemExtension {
             }
         }
         if (lht.isReferenceType() && rht.isReferenceType()) {
-            for (TypeSystemExtension tse : obs) {
-                tse.checkEq(rht, lht, origin);
-            }
+            dispatch(Callback.CHECK_EQ, tse -> tse.checkEq(rht, lht, origin));
         }
     }
 
     public void finished() {
-        for (TypeSystemExtension tse : obs) {
-            tse.finished();
-        }
+        dispatch(Callback.FINISHED, tse -> tse.finished());
     }
 
     @Override
     public void checkClassDecl(ClassDecl decl) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkClassDecl(decl);
-        }
+        dispatch(Callback.CHECK_CLASS_DECL, tse -> tse.checkClassDecl(decl));
     }
 
     @Override
     public void checkInterfaceDecl(InterfaceDecl decl) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkInterfaceDecl(decl);
-        }
+        dispatch(Callback.CHECK_INTERFACE_DECL, tse -> tse.checkInterfaceDecl(decl));
     }
 
     @Override
     public void checkDataTypeDecl(DataTypeDecl decl) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkDataTypeDecl(decl);
-        }
+        dispatch(Callback.CHECK_DATA_TYPE_DECL, tse -> tse.checkDataTypeDecl(decl));
     }
 
     @Override
     public void checkMethodImpl(MethodImpl method) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkMethodImpl(method);
-        }
+        dispatch(Callback.CHECK_METHOD_IMPL, tse -> tse.checkMethodImpl(method));
     }
 
     @Override
     public void checkStmt(Stmt s) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkStmt(s);
-        }
+        dispatch(Callback.CHECK_STMT, tse -> tse.checkStmt(s));
     }
 
     @Override
     public void checkAssertStmt(AssertStmt assertStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkAssertStmt(assertStmt);
-        }
+        dispatch(Callback.CHECK_ASSERT_STMT, tse -> tse.checkAssertStmt(assertStmt));
     }
 
     @Override
     public void checkAwaitStmt(AwaitStmt awaitStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkAwaitStmt(awaitStmt);
-        }
+        dispatch(Callback.CHECK_AWAIT_STMT, tse -> tse.checkAwaitStmt(awaitStmt));
     }
 
     @Override
     public void checkBlock(Block block) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkBlock(block);
-        }
+        dispatch(Callback.CHECK_BLOCK, tse -> tse.checkBlock(block));
     }
 
     @Override
     public void checkExpressionStmt(ExpressionStmt expressionStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkExpressionStmt(expressionStmt);
-        }
+        dispatch(Callback.CHECK_EXPRESSION_STMT, tse -> tse.checkExpressionStmt(expressionStmt));
     }
 
     @Override
     public void checkIfStmt(IfStmt ifStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkIfStmt(ifStmt);
-        }
+        dispatch(Callback.CHECK_IF_STMT, tse -> tse.checkIfStmt(ifStmt));
     }
 
     @Override
     public void checkSuspendStmt(SuspendStmt suspendStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkSuspendStmt(suspendStmt);
-        }
+        dispatch(Callback.CHECK_SUSPEND_STMT, tse -> tse.checkSuspendStmt(suspendStmt));
     }
 
     @Override
     public void checkVarDeclStmt(VarDeclStmt varDeclStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkVarDeclStmt(varDeclStmt);
-        }
+        dispatch(Callback.CHECK_VAR_DECL_STMT, tse -> tse.checkVarDeclStmt(varDeclStmt));
     }
 
     @Override
     public void checkDurationStmt(DurationStmt durationStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkDurationStmt(durationStmt);
-        }
+        dispatch(Callback.CHECK_DURATION_STMT, tse -> tse.checkDurationStmt(durationStmt));
     }
 
     @Override
     public void checkWhileStmt(WhileStmt whileStmt) {
-        for (TypeSystemExtension tse : obs) {
-            tse.checkWhileStmt(whileStmt);
-        }
+        dispatch(Callback.CHECK_WHILE_STMT, tse -> tse.checkWhileStmt(whileStmt));
     }
 
+    /**
+     * Call {@link TypeSystemExtension#checkModel} for extensions that
+     * implement it, then walk the model once for all {@link
+     * NodeVisitingExtension}s.
+     */
     @Override
     public void checkModel(Model model) {
+        dispatch(Callback.CHECK_MODEL, tse -> tse.checkModel(model));
+        java.util.List<NodeVisitingExtension> visitors = new ArrayList<>();
         for (TypeSystemExtension tse : obs) {
-            tse.checkModel(model);
+            if (tse instanceof NodeVisitingExtension v) visitors.add(v);
+        }
+        if (visitors.isEmpty()) return;
+        if (times == null) {
+            ModelTraversal.run(model, visitors, (v, call) -> call.run());
+        } else {
+            ModelTraversal.run(model, visitors, this::timed);
         }
     }
 
     public void registerAll(java.util.List<TypeSystemExtension> curr) {
         obs = new ArrayList<>(obs);
         obs.addAll(curr);
+        rebuildDispatchTable();
     }
 }
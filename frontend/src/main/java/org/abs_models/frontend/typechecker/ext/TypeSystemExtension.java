@@ -64,4 +64,15 @@ public interface TypeSystemExtension {
 
     void checkOverride(MethodSig impl, MethodSig overriden);
 
+    /**
+     * Whether the model may be type-checked in parallel while this
+     * extension is registered.  Callbacks are never made concurrently, but
+     * the callbacks for different declarations come in no particular order;
+     * extensions whose results depend on that order, or that evaluate
+     * circular attributes, should return false.
+     */
+    default boolean allowsParallelChecking() {
+        return true;
+    }
+
 }
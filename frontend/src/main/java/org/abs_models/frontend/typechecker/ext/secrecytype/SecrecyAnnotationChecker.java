@@ -11,38 +11,37 @@ import java.util.HashMap;
 import java.util.LinkedList;
 
 import org.abs_models.frontend.analyser.ErrorMessage;
+import org.abs_models.frontend.analyser.SemanticCondition;
+import org.abs_models.frontend.analyser.SemanticConditionList;
 import org.abs_models.frontend.analyser.TypeError;
 import org.abs_models.frontend.ast.*;
 
 /**
- * This class is using two phases which both run over the model. 
+ * This class is using two phases which both run over the model (as two passes of the {@link ModelTraversal}).
  * The first phase extracts the secrecy annotations and their level, as well as running a few basic checks.
  * The second phase performs a check for each statement/expression
  */
-public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
+public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension implements NodeVisitingExtension {
 
     /**
      * Stores mappings between ASTNode's (declarations) and the assigned secrecy values.
      */
     private HashMap<ASTNode<?>,String> _secrecy = new HashMap<>();
 
-    //todo is an idea for a current secrecylevel storage
-    //private HashMap<ASTNode<?>,String> _currentSecrecy = new HashMap<>();
-    
     /**
      * Contains the secrecy lattice either given by the user or a default. (default is: Low < High)
      */
     private SecrecyLatticeStructure secrecyLatticeStructure;
     
     /**
-     * Visitor for statements that performs typechecking for the secrecy rules.
+     * Analysis that computes the program points and performs the statement checks for the secrecy rules.
      */
-    private SecrecyStmtVisitor visitor;               
+    private SecrecyFlowAnalysis flowAnalysis;
 
     /**
-     * List holds entries for confidentiality levels if evaluated at a point in time it is the current secrecylevel. 
+     * Report of the errors and checking times, if requested via --secrecy-report.
      */
-    private LinkedList<ProgramCountNode> programConfidentiality;
+    private SecrecyReport report;
     
     /**
      * The constructor for the SecrecyAnnotationChecker a class that checks a given model.
@@ -51,37 +50,81 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
     protected SecrecyAnnotationChecker(Model m) {
         super(m);
 
-        programConfidentiality = new LinkedList<ProgramCountNode>();
-
         if (m.secrecyLatticeStructure != null) {
             secrecyLatticeStructure = m.secrecyLatticeStructure;
-            programConfidentiality.add(new ProgramCountNode("default", secrecyLatticeStructure.getMinSecrecyLevel()));
+            if (m.secrecyReportFile != null) {
+                report = new SecrecyReport(m.secrecyReportFile, secrecyLatticeStructure);
+            }
         }
     }
 
     /**
-     * This is the main method for the SecrecyAnnotationChecker it calls the two phases and contains some prints for sanity checking.
-     * @param model - the ABS model that we want to check
+     * The extraction phase visits classes and interfaces, the check phase visits methods.
+     * If there is no secrecy lattice, we dont want to perform any of these checks.
      */
     @Override
-    public void checkModel(Model model) {
+    public int getNumPasses() {
+        return 2;
+    }
 
-        if (secrecyLatticeStructure == null){
-            System.out.println("Secrecy lattice was null!"); //means we dont want to perform any of these checks
-            return;
+    @Override
+    public boolean allowsParallelChecking() {
+        // The control flow graphs of the flow analysis use circular
+        // attributes, whose evaluation state is shared by the whole tree
+        return secrecyLatticeStructure == null;
+    }
+
+    @Override
+    public Set<Class<?>> getVisitedNodeTypes(int pass) {
+        if (secrecyLatticeStructure == null) return Set.of();
+        return pass == 0 ? Set.of(ClassDecl.class, InterfaceDecl.class) : Set.of(MethodImpl.class);
+    }
+
+    @Override
+    public void visitNode(ASTNode<?> node, int pass) {
+        if (pass == 0) {
+            if (node instanceof ClassDecl classDecl && isModuleMember(classDecl)) {
+                extractClassDecl(classDecl);
+            } else if (node instanceof InterfaceDecl interfaceDecl && isModuleMember(interfaceDecl)) {
+                extractInterfaceDecl(interfaceDecl);
+            }
+        } else {
+            MethodImpl method = (MethodImpl) node;
+            if (method.getParent().getParent() instanceof ClassDecl classDecl && isModuleMember(classDecl)) {
+                if (flowAnalysis == null) {
+                    flowAnalysis = new SecrecyFlowAnalysis(model, _secrecy, secrecyLatticeStructure);
+                }
+                checkMethodStatements(method);
+            }
         }
+    }
 
-        firstExtractionPhasePass(model); 
+    /**
+     * Only declarations of modules are checked, not the ones inside deltas or traits.
+     */
+    private static boolean isModuleMember(Decl decl) {
+        return decl.getParent() != null && decl.getParent().getParent() instanceof ModuleDecl;
+    }
 
-        visitor = new SecrecyStmtVisitor(_secrecy, secrecyLatticeStructure, errors, programConfidentiality);
+    /**
+     * Called after both phases; writes the report, if any.
+     * @param model - the ABS model that we want to check
+     */
+    @Override
+    public void traversalFinished(Model model) {
+        if (report != null) {
+            report.finish();
+            report = null;
+        }
+    }
 
-        secondTypecheckPhasePass(model); 
-        
-        //todo to be removed later
-        System.out.println("Print new annotated Values: " + _secrecy.toString());
-        System.out.println("Print all Levels: " + secrecyLatticeStructure.getSecrecyLevels().toString());
-        System.out.println("Print the order" + secrecyLatticeStructure.getLatticeOrder().toString());
-        System.out.println("Confidentiality of current program point is: " + programConfidentiality.getLast().getSecrecyLevel());
+    /**
+     * Adds an error to the error list and to the report.
+     * @param error - the secrecy error.
+     */
+    private void addError(TypeError error) {
+        errors.add(error);
+        if (report != null) report.add(error);
     }
 
     /**
@@ -92,85 +135,76 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
      * 3. Extracts the annotation for methods of the CLASS for their return values and their parameters && running the check from 1.
      *  3.1 - the returnvalue | 3.2 - each parameter | 3.3 - the check between method declaration and it's implementation
      * 
-     * 4. Extracts the annotation for methods of INTERFACES for their return values and their parameters
-     *  4.1 - the returnvalue | 4.2 - each parameter
-     * 
-     * @param model - the model from which we retrieve the secrecy values and on which we perform the first check
+     * @param classDecl - the class from which we retrieve the secrecy values and on which we perform the first check
      * 
      */
-    private void firstExtractionPhasePass(Model model){
-        for (CompilationUnit cu : model.getCompilationUnits()) {
-            for (ModuleDecl moduleDecl : cu.getModuleDecls()) {
-                for (Decl decl : moduleDecl.getDecls()) {
-                    if (decl instanceof ClassDecl classDecl) {
+    private void extractClassDecl(ClassDecl classDecl) {
 
-                        //1.
-                        Set<MethodSig> declaredInterfaceMethods = new HashSet<MethodSig>();
-                        
-                        if(classDecl.hasImplementedInterfaceUse()) {
-                            
-                            ASTNode<?> interfaceSet = classDecl.getImplementedInterfaceUseList();
+        //1.
+        Set<MethodSig> declaredInterfaceMethods = new HashSet<MethodSig>();
 
-                            for(InterfaceTypeUse implementedInterface : classDecl.getImplementedInterfaceUseList()) {
+        if(classDecl.hasImplementedInterfaceUse()) {
 
-                                InterfaceDecl usedInterfaceDecl = (InterfaceDecl) implementedInterface.getDecl();
+            for(InterfaceTypeUse implementedInterface : classDecl.getImplementedInterfaceUseList()) {
 
-                                for(MethodSig declaredMethod : usedInterfaceDecl.getBodyList()) {
+                InterfaceDecl usedInterfaceDecl = (InterfaceDecl) implementedInterface.getDecl();
 
-                                    declaredInterfaceMethods.add(declaredMethod);  
-                                }
+                for(MethodSig declaredMethod : usedInterfaceDecl.getBodyList()) {
 
-                            }
-                        }
-        
-                        //2.
-                        for(FieldDecl fieldDecl : classDecl.getFields()) {
-                            String level = extractSecrecyValue(fieldDecl);
-                            if(level != null)_secrecy.put(fieldDecl, level);
-                        }
-                        
-                        //3.
-                        for (MethodImpl method : classDecl.getMethods()) {
-                            
-                            MethodSig methodSigNat = method.getMethodSig();
-
-                            //3.1
-                            String Returnlevel = extractSecrecyValue(method.getMethodSig());
-                            if(Returnlevel != null)_secrecy.put(method.getMethodSig(), Returnlevel);
-
-                            //3.2
-                            for(ParamDecl parameter : method.getMethodSig().getParamList()) {
-                                String Parameterlevel = extractSecrecyValue(parameter);
-                                if(Parameterlevel != null)_secrecy.put(parameter, Parameterlevel);
-                            }
+                    declaredInterfaceMethods.add(declaredMethod);  
+                }
 
-                            //3.3
-                            for(MethodSig declaredCandidate : declaredInterfaceMethods) {
-                                if (compareMethodSignatures(method.getMethodSig(), declaredCandidate)) {
-                                    //System.out.println(method.getMethodSig() + " is implementation of " + declaredCandidate);
-                                    checkRespectingSecrecyLevels(method.getMethodSig(), declaredCandidate);
-                                }
-                            }
+            }
+        }
 
-                        }
+        //2.
+        for(FieldDecl fieldDecl : classDecl.getFields()) {
+            String level = extractSecrecyValue(fieldDecl);
+            if(level != null)_secrecy.put(fieldDecl, level);
+        }
 
-                    //4.0
-                    } else if (decl instanceof InterfaceDecl interfaceDecl) {
-                        for (MethodSig methodSig : interfaceDecl.getBodyList()) {
-                            
-                            //4.1
-                            String Returnlevel = extractSecrecyValue(methodSig);
-                            if(Returnlevel != null)_secrecy.put(methodSig, Returnlevel);
-
-                            //4.2
-                            for(ParamDecl parameter : methodSig.getParamList()) {
-                                String Parameterlevel = extractSecrecyValue(parameter);
-                                if(Parameterlevel != null)_secrecy.put(parameter, Parameterlevel);
-                            }
-                        }
-                    }
+        //3.
+        for (MethodImpl method : classDecl.getMethods()) {
+
+            //3.1
+            String Returnlevel = extractSecrecyValue(method.getMethodSig());
+            if(Returnlevel != null)_secrecy.put(method.getMethodSig(), Returnlevel);
+
+            //3.2
+            for(ParamDecl parameter : method.getMethodSig().getParamList()) {
+                String Parameterlevel = extractSecrecyValue(parameter);
+                if(Parameterlevel != null)_secrecy.put(parameter, Parameterlevel);
+            }
+
+            //3.3
+            for(MethodSig declaredCandidate : declaredInterfaceMethods) {
+                if (compareMethodSignatures(method.getMethodSig(), declaredCandidate)) {
+                    checkRespectingSecrecyLevels(method.getMethodSig(), declaredCandidate);
                 }
             }
+
+        }
+    }
+
+    /**
+     * First phase (extraction) for interfaces:
+     * 4. Extracts the annotation for methods of INTERFACES for their return values and their parameters
+     *  4.1 - the returnvalue | 4.2 - each parameter
+     *
+     * @param interfaceDecl - the interface from which we retrieve the secrecy values
+     */
+    private void extractInterfaceDecl(InterfaceDecl interfaceDecl) {
+        for (MethodSig methodSig : interfaceDecl.getBodyList()) {
+
+            //4.1
+            String Returnlevel = extractSecrecyValue(methodSig);
+            if(Returnlevel != null)_secrecy.put(methodSig, Returnlevel);
+
+            //4.2
+            for(ParamDecl parameter : methodSig.getParamList()) {
+                String Parameterlevel = extractSecrecyValue(parameter);
+                if(Parameterlevel != null)_secrecy.put(parameter, Parameterlevel);
+            }
         }
     }
 
@@ -186,7 +220,6 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
 
         List<Annotation> annotations = null;
 
-        //TODO check which of these are used at any time
         if (declNode instanceof ParamDecl param) {
             annotations = param.getAnnotationList();
         } else if (declNode instanceof FieldDecl field) {
@@ -211,11 +244,10 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
                     String levelName = dataCon.getConstructor();
 
                     if (!secrecyLatticeStructure.isValidLabel(levelName)) {
-                        errors.add(new TypeError(typedAnn, ErrorMessage.WRONG_SECRECY_ANNOTATION_VALUE, levelName));
+                        addError(new TypeError(typedAnn, ErrorMessage.WRONG_SECRECY_ANNOTATION_VALUE, levelName));
                         return null;
                     }
 
-                    //System.out.println("Levelname: " + levelName);
                     return levelName;
                 }
             }
@@ -227,23 +259,19 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
      * Second phase which checks for the secrecy typerules.
      * A class satisfies the secrecy typerules if each method of a class satisfies them.
      * A method satisfies the secrecy typerules if each statement, expression, etc. satisfies them.
-     * We have a SecrecyStmtVisitor which performs the statement checks and it is called on each statement here.
+     * The SecrecyFlowAnalysis computes the program point of each statement and checks it with a SecrecyStmtVisitor.
      * 
-     * @param model - the ABS model on which we want to check the respecting of the secrecy typerules
+     * @param method - the method of a class on which we want to check the respecting of the secrecy typerules
      */
-    private void secondTypecheckPhasePass(Model model){
-        for (CompilationUnit cu : model.getCompilationUnits()) {
-            for (ModuleDecl moduleDecl : cu.getModuleDecls()) {
-                for (Decl decl : moduleDecl.getDecls()) {
-                    if (decl instanceof ClassDecl classDecl) {
-                        for (MethodImpl method : classDecl.getMethods()) {
-                            Block block = method.getBlock();
-                            for (Stmt stmt : block.getStmtList()) {
-                                stmt.accept(visitor);
-                            }
-                        }
-                    }
-                }
+    private void checkMethodStatements(MethodImpl method){
+        long start = report == null ? 0 : System.nanoTime();
+        SemanticConditionList methodErrors = flowAnalysis.check(method);
+        errors.addAll(methodErrors);
+        if (report != null) {
+            ClassDecl classDecl = (ClassDecl) method.getParent().getParent();
+            report.addTime(classDecl.getQualifiedName(), method.getMethodSig().getName(), System.nanoTime() - start);
+            for (SemanticCondition error : methodErrors) {
+                report.add(error);
             }
         }
     }
@@ -327,10 +355,8 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
             implementationLevel = secrecyLatticeStructure.getMinSecrecyLevel();
         }
 
-        Set<String> implementationSet = secrecyLatticeStructure.getSetForSecrecyLevel(implementationLevel);
-        
-        if(!implementationSet.contains(definitionLevel) && !implementationLevel.equals(definitionLevel)) {
-            errors.add(new TypeError(implementation.getReturnType(), ErrorMessage.SECRECY_LEAKAGE_ERROR_AT_MOST, definitionLevel, implementationLevel));
+        if(!secrecyLatticeStructure.isLessOrEqual(implementationLevel, definitionLevel)) {
+            addError(new TypeError(implementation.getReturnType(), ErrorMessage.SECRECY_LEAKAGE_ERROR_AT_MOST, definitionLevel, implementationLevel));
         }
         
         for(ParamDecl implementationParam : implementation.getParamList()) {
@@ -349,12 +375,8 @@ public class SecrecyAnnotationChecker extends DefaultTypeSystemExtension {
                         implementationLevel = secrecyLatticeStructure.getMinSecrecyLevel();
                     }
 
-                    if(!implementationLevel.equals(definitionLevel)){
-                        implementationSet = secrecyLatticeStructure.getSetForSecrecyLevel(implementationLevel);
-
-                        if(!implementationSet.contains(definitionLevel)) {
-                            errors.add(new TypeError(implementation.getReturnType(), ErrorMessage.SECRECY_LEAKAGE_ERROR_AT_MOST, definitionLevel, implementationLevel));
-                        }
+                    if(!secrecyLatticeStructure.isLessOrEqual(implementationLevel, definitionLevel)) {
+                        addError(new TypeError(implementation.getReturnType(), ErrorMessage.SECRECY_LEAKAGE_ERROR_AT_MOST, definitionLevel, implementationLevel));
                     }
                 }
             }
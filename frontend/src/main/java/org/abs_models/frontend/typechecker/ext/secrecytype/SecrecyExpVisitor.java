@@ -8,7 +8,6 @@ package org.abs_models.frontend.typechecker.ext;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Iterator;
-import java.util.Set;
 
 import org.abs_models.frontend.analyser.ErrorMessage;
 import org.abs_models.frontend.analyser.TypeError;
@@ -184,9 +183,7 @@ public class SecrecyExpVisitor {
                 //System.out.println("Child " + i + " is defined " + parameterList.getChild(i) + " and called " + calledParams.getChild(i));
                 //System.out.println("defined is: " + definedSecrecy + ", called is: " + calledSecrecy);
                 
-                Set<String> calledSecrecySet = secrecyLatticeStructure.getSetForSecrecyLevel(calledSecrecy);
-                
-                if(!(definedSecrecy.equals(calledSecrecy)||calledSecrecySet.contains(definedSecrecy))) {
+                if(!secrecyLatticeStructure.isLessOrEqual(calledSecrecy, definedSecrecy)) {
                     errors.add(new TypeError(asyncCall, ErrorMessage.SECRECY_PARAMETER_TO_HIGH, calledSecrecy, definedSecrecy));
                 }
             }
@@ -229,9 +226,7 @@ public class SecrecyExpVisitor {
                 //System.out.println("Child " + i + " is defined " + parameterList.getChild(i) + " and called " + calledParams.getChild(i));
                 //System.out.println("defined is: " + definedSecrecy + ", called is: " + calledSecrecy);
                 
-                Set<String> calledSecrecySet = secrecyLatticeStructure.getSetForSecrecyLevel(calledSecrecy);
-                
-                if(!(definedSecrecy.equals(calledSecrecy)||calledSecrecySet.contains(definedSecrecy))) {
+                if(!secrecyLatticeStructure.isLessOrEqual(calledSecrecy, definedSecrecy)) {
                     errors.add(new TypeError(syncCall, ErrorMessage.SECRECY_PARAMETER_TO_HIGH, calledSecrecy, definedSecrecy));
                 }
             }
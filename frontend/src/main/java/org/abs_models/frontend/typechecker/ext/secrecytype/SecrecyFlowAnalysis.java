@@ -0,0 +1,509 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typechecker.ext;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.abs_models.backend.prettyprint.DefaultABSFormatter;
+import org.abs_models.frontend.analyser.ErrorMessage;
+import org.abs_models.frontend.analyser.SemanticCondition;
+import org.abs_models.frontend.analyser.SemanticConditionList;
+import org.abs_models.frontend.analyser.TypeError;
+import org.abs_models.frontend.ast.*;
+
+/**
+ * Checks the statements of a method against the secrecy rules, at the
+ * program point computed by a dataflow analysis over the control flow
+ * graph of the method (see ControlFlow.jrag).
+ * <p>
+ * The secrecylevel of the program point of a statement is the join of the
+ * conditions of the enclosing if- and while-statements, each evaluated at
+ * the program point of its statement, and of the await guards that are
+ * active when the statement runs.  A guard becomes active at its await
+ * statement and stays active until its future is read with a get; after a
+ * join of the control flow it is active if it is active on some incoming
+ * edge.  The analysis is a worklist algorithm: the statements of a method
+ * get dense ids in source order, the facts are kept in int arrays indexed
+ * by these ids, and after a change only the successors of a statement and
+ * the statements inside its branches are visited again.  Loops are
+ * handled by iterating to the fixpoint rather than by walking their body
+ * repeatedly.
+ * <p>
+ * Results are cached across type checks, keyed by the text of the method
+ * and its class' fields and by all secrecy annotations of the model, so
+ * when a model is checked again (e.g., by the compiler server on every
+ * save in an editor) only methods whose body or relevant annotations
+ * changed are analyzed again.
+ */
+public class SecrecyFlowAnalysis {
+
+    /** Maximum number of methods whose results are kept across checks. */
+    private static final int CACHE_SIZE = 4096;
+
+    /** The errors of earlier checks, by {@link #fingerprint}. */
+    private static final Map<String, CachedErrors> cache = Collections.synchronizedMap(
+        new LinkedHashMap<String, CachedErrors>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedErrors> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+
+    /** The number of methods whose errors were taken from the cache. */
+    private static final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * Stores mappings between ASTNode's (declarations) and the assigned secrecy values.
+     */
+    private final HashMap<ASTNode<?>,String> _secrecy;
+
+    /**
+     * Contains the secrecy lattice either given by the user or a default. (default is: Low < High)
+     */
+    private final SecrecyLatticeStructure secrecyLatticeStructure;
+
+    private final Model model;
+
+    /**
+     * The secrecy lattice, the annotations outside of method bodies and the
+     * interface hierarchy; computed on first use, i.e., after all
+     * declarations have been extracted.
+     */
+    private String environment = null;
+
+    /**
+     * Constructor for the flow analysis.
+     * @param model - the model that is checked.
+     * @param _secrecy - the hashmap that links ASTNode's to their assigned secrecylevel.
+     * @param secrecyLatticeStructure - the datastructure that holds the information for the lattice.
+     */
+    public SecrecyFlowAnalysis(Model model, HashMap<ASTNode<?>,String> _secrecy, SecrecyLatticeStructure secrecyLatticeStructure) {
+        this.model = model;
+        this._secrecy = _secrecy;
+        this.secrecyLatticeStructure = secrecyLatticeStructure;
+    }
+
+    /**
+     * The number of methods whose errors were taken from the cache
+     * instead of being analyzed, since the compiler was started.
+     */
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Checks all statements of a method.
+     * @param method - the method to check.
+     * @return - the secrecy errors of the method, in source order.
+     */
+    public SemanticConditionList check(MethodImpl method) {
+        String key = fingerprint(method);
+        if (key != null) {
+            CachedErrors cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached.restore(method);
+            }
+        }
+        SemanticConditionList result = new SemanticConditionList();
+        SecrecyStmtVisitor visitor = new SecrecyStmtVisitor(_secrecy, secrecyLatticeStructure, result, new LinkedList<>());
+        new MethodFlow(method, visitor).check();
+        if (key != null) {
+            CachedErrors errors = CachedErrors.of(method, result);
+            if (errors != null) cache.put(key, errors);
+        }
+        return result;
+    }
+
+    /**
+     * The flow facts of one method.
+     */
+    private final class MethodFlow {
+
+        private final SecrecyStmtVisitor visitor;
+
+        /** The statements, by id. */
+        private final ArrayList<CFGNode> nodes = new ArrayList<>();
+        private final IdentityHashMap<CFGNode, Integer> ids = new IdentityHashMap<>();
+
+        /** Innermost enclosing if- or while-statement of each statement, or -1. */
+        private final ArrayList<Integer> ownerList = new ArrayList<>();
+        private int[] owner;
+        /** Whether a statement is checked, i.e., only nested in blocks, if- and while-statements. */
+        private final BitSet checked = new BitSet();
+
+        /** Predecessors and successors of statement i at index start[i] to start[i + 1]. */
+        private int[] predStart, preds, succStart, succs;
+        /** Statements whose innermost enclosing if- or while-statement is i. */
+        private int[] ownedStart, owned;
+
+        /** Level of the condition of each if- and while-statement, evaluated at the lowest program point. */
+        private int[] condition;
+
+        /** The await guards: label, level at the lowest program point, and statement. */
+        private final ArrayList<String> guardLabels = new ArrayList<>();
+        private final ArrayList<Integer> guardLevels = new ArrayList<>();
+        private final ArrayList<Integer> guardNodes = new ArrayList<>();
+
+        /** Guards whose future is read by a get in a statement, or null. */
+        private BitSet[] kills;
+
+        /** Level of the program point of each statement, -1 if not yet visited. */
+        private int[] programPoint;
+        /** Level of guard g after statement i at index i * guards + g, -1 if not active. */
+        private int[] activeAfter;
+
+        MethodFlow(MethodImpl method, SecrecyStmtVisitor visitor) {
+            this.visitor = visitor;
+            index(method.getBlock(), -1, true);
+            for (CFGNode node : nodes) {
+                if (node instanceof VarDeclStmt varDeclStmt) visitor.declare(varDeclStmt);
+            }
+            buildGraph();
+            collectGuards();
+        }
+
+        /**
+         * Give ids to {@code node} and the statements inside it, in source order.
+         * The statements visited by the recursive {@link SecrecyStmtVisitor} are marked as checked.
+         */
+        private void index(ASTNode<?> node, int enclosing, boolean visited) {
+            if (node instanceof Exp) return;
+            int id = enclosing;
+            if (node instanceof CFGNode cfgNode) {
+                id = nodes.size();
+                nodes.add(cfgNode);
+                ids.put(cfgNode, id);
+                if (visited) checked.set(id);
+                ownerList.add(enclosing);
+            }
+            if (node instanceof Block block) {
+                for (Stmt stmt : block.getStmts()) {
+                    index(stmt, enclosing, visited);
+                }
+            } else if (node instanceof IfStmt ifStmt) {
+                index(ifStmt.getThen(), id, visited);
+                if (ifStmt.hasElse()) index(ifStmt.getElse(), id, visited);
+            } else if (node instanceof WhileStmt whileStmt) {
+                index(whileStmt.getBody(), id, visited);
+            } else {
+                for (int i = 0; i < node.getNumChild(); i++) {
+                    ASTNode<?> child = node.getChild(i);
+                    if (child != null) index(child, enclosing, false);
+                }
+            }
+        }
+
+        private void buildGraph() {
+            int size = nodes.size();
+            owner = ownerList.stream().mapToInt(Integer::intValue).toArray();
+            int[][] succLists = new int[size][];
+            int[] predCount = new int[size];
+            int[] ownedCount = new int[size];
+            for (int i = 0; i < size; i++) {
+                // Exit and exception targets outside of the method are not needed
+                succLists[i] = nodes.get(i).succ().stream()
+                    .map(ids::get).filter(j -> j != null)
+                    .mapToInt(Integer::intValue).sorted().toArray();
+                for (int j : succLists[i]) predCount[j]++;
+                if (owner[i] >= 0) ownedCount[owner[i]]++;
+            }
+            succStart = new int[size + 1];
+            predStart = new int[size + 1];
+            ownedStart = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                succStart[i + 1] = succStart[i] + succLists[i].length;
+                predStart[i + 1] = predStart[i] + predCount[i];
+                ownedStart[i + 1] = ownedStart[i] + ownedCount[i];
+            }
+            succs = new int[succStart[size]];
+            preds = new int[predStart[size]];
+            owned = new int[ownedStart[size]];
+            int[] predFill = Arrays.copyOf(predStart, size);
+            int[] ownedFill = Arrays.copyOf(ownedStart, size);
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(succLists[i], 0, succs, succStart[i], succLists[i].length);
+                for (int j : succLists[i]) preds[predFill[j]++] = i;
+                if (owner[i] >= 0) owned[ownedFill[owner[i]]++] = i;
+            }
+
+            String min = secrecyLatticeStructure.getMinSecrecyLevel();
+            condition = new int[size];
+            for (int i = 0; i < size; i++) {
+                CFGNode node = nodes.get(i);
+                if (node instanceof IfStmt ifStmt) {
+                    condition[i] = secrecyLatticeStructure.getId(visitor.levelAt(ifStmt.getCondition(), min));
+                } else if (node instanceof WhileStmt whileStmt) {
+                    condition[i] = secrecyLatticeStructure.getId(visitor.levelAt(whileStmt.getCondition(), min));
+                }
+            }
+        }
+
+        private void collectGuards() {
+            for (int i = 0; i < nodes.size(); i++) {
+                if (nodes.get(i) instanceof AwaitStmt awaitStmt) addGuards(awaitStmt.getGuard(), i);
+            }
+            kills = new BitSet[nodes.size()];
+            if (guardLabels.isEmpty()) return;
+            for (int i = 0; i < nodes.size(); i++) {
+                collectKills((ASTNode<?>) nodes.get(i), i);
+            }
+        }
+
+        private void addGuards(Guard guard, int node) {
+            String min = secrecyLatticeStructure.getMinSecrecyLevel();
+            if (guard instanceof ExpGuard || guard instanceof ClaimGuard) {
+                guardLabels.add(guard.getChild(0).toString());
+                guardLevels.add(secrecyLatticeStructure.getId(visitor.levelAt((Exp) guard.getChild(0), min)));
+                guardNodes.add(node);
+            } else if (guard instanceof AndGuard andGuard) {
+                addGuards(andGuard.getLeft(), node);
+                addGuards(andGuard.getRight(), node);
+            }
+        }
+
+        /**
+         * Find the get-expressions of a statement, but not of nested statements.
+         */
+        private void collectKills(ASTNode<?> node, int id) {
+            for (int i = 0; i < node.getNumChild(); i++) {
+                ASTNode<?> child = node.getChild(i);
+                if (child == null || child instanceof CFGNode) continue;
+                if (child instanceof GetExp getExp) {
+                    ASTNode<?> target = getExp.getChild(0);
+                    String label = target instanceof VarOrFieldUse varUse ? varUse.getName() : target.toString();
+                    for (int g = 0; g < guardLabels.size(); g++) {
+                        if (guardLabels.get(g).equals(label)) {
+                            if (kills[id] == null) kills[id] = new BitSet();
+                            kills[id].set(g);
+                        }
+                    }
+                }
+                collectKills(child, id);
+            }
+        }
+
+        /**
+         * Compute the program points of all statements.
+         */
+        private void solve() {
+            int size = nodes.size();
+            int guards = guardLabels.size();
+            int min = secrecyLatticeStructure.getId(secrecyLatticeStructure.getMinSecrecyLevel());
+            programPoint = new int[size];
+            Arrays.fill(programPoint, -1);
+            activeAfter = new int[size * guards];
+            Arrays.fill(activeAfter, -1);
+            int[] active = new int[guards];
+
+            BitSet pending = new BitSet(size);
+            pending.set(0, size);
+            for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(0)) {
+                pending.clear(i);
+
+                // Guards that are active before the statement
+                Arrays.fill(active, -1);
+                for (int p = predStart[i]; p < predStart[i + 1]; p++) {
+                    int pred = preds[p];
+                    for (int g = 0; g < guards; g++) {
+                        active[g] = joinActive(active[g], activeAfter[pred * guards + g]);
+                    }
+                }
+                if (kills[i] != null) {
+                    for (int g = kills[i].nextSetBit(0); g >= 0; g = kills[i].nextSetBit(g + 1)) {
+                        active[g] = -1;
+                    }
+                }
+
+                int level = owner[i] < 0
+                    ? min
+                    : secrecyLatticeStructure.join(programPoint[owner[i]], condition[owner[i]]);
+                for (int g = 0; g < guards; g++) {
+                    if (active[g] >= 0) level = secrecyLatticeStructure.join(level, active[g]);
+                }
+
+                for (int g = 0; g < guards; g++) {
+                    if (guardNodes.get(g) == i) {
+                        active[g] = joinActive(active[g], secrecyLatticeStructure.join(guardLevels.get(g), level));
+                    }
+                }
+
+                if (level != programPoint[i]) {
+                    programPoint[i] = level;
+                    for (int o = ownedStart[i]; o < ownedStart[i + 1]; o++) pending.set(owned[o]);
+                    for (int s = succStart[i]; s < succStart[i + 1]; s++) pending.set(succs[s]);
+                }
+                if (!Arrays.equals(active, 0, guards, activeAfter, i * guards, (i + 1) * guards)) {
+                    System.arraycopy(active, 0, activeAfter, i * guards, guards);
+                    for (int s = succStart[i]; s < succStart[i + 1]; s++) pending.set(succs[s]);
+                }
+            }
+        }
+
+        private int joinActive(int a, int b) {
+            if (a < 0) return b;
+            if (b < 0) return a;
+            return secrecyLatticeStructure.join(a, b);
+        }
+
+        void check() {
+            solve();
+            for (int i = checked.nextSetBit(0); i >= 0; i = checked.nextSetBit(i + 1)) {
+                if (nodes.get(i) instanceof Stmt stmt) {
+                    visitor.visitAt(stmt, secrecyLatticeStructure.getLevel(programPoint[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * A key for the results of checking a method, or null if the method
+     * cannot be printed.
+     */
+    private String fingerprint(MethodImpl method) {
+        if (environment == null) environment = environment();
+        StringWriter text = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(text)) {
+            DefaultABSFormatter formatter = new DefaultABSFormatter(writer);
+            ClassDecl classDecl = (ClassDecl) method.getParent().getParent();
+            writer.println(classDecl.getQualifiedName());
+            // Names in the body can refer to class parameters and fields
+            for (ParamDecl param : classDecl.getParams()) {
+                param.doPrettyPrint(writer, formatter);
+                writer.println();
+            }
+            for (FieldDecl field : classDecl.getFields()) {
+                field.doPrettyPrint(writer, formatter);
+                writer.println();
+            }
+            method.doPrettyPrint(writer, formatter);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return hash(environment + "\n" + text);
+    }
+
+    private String environment() {
+        StringBuilder result = new StringBuilder();
+        for (String level : new TreeSet<>(secrecyLatticeStructure.getSecrecyLevels())) {
+            result.append(level).append(" < ")
+                .append(new TreeSet<>(secrecyLatticeStructure.getSetForSecrecyLevel(level))).append('\n');
+        }
+        TreeSet<String> lines = new TreeSet<>();
+        for (Map.Entry<ASTNode<?>, String> entry : _secrecy.entrySet()) {
+            lines.add(describe(entry.getKey()) + " : " + entry.getValue());
+        }
+        for (CompilationUnit unit : model.getCompilationUnits()) {
+            for (ModuleDecl module : unit.getModuleDecls()) {
+                for (Decl decl : module.getDecls()) {
+                    if (decl instanceof InterfaceDecl interfaceDecl) {
+                        StringBuilder line = new StringBuilder(interfaceDecl.getQualifiedName()).append(" extends");
+                        for (InterfaceTypeUse extended : interfaceDecl.getExtendedInterfaceUses()) {
+                            line.append(' ').append(extended.getName());
+                        }
+                        lines.add(line.toString());
+                    }
+                }
+            }
+        }
+        for (String line : lines) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * The names of a declaration and the declarations around it.
+     */
+    private static String describe(ASTNode<?> node) {
+        StringBuilder result = new StringBuilder(node.getClass().getSimpleName());
+        for (ASTNode<?> n = node; n != null && !(n instanceof CompilationUnit); n = n.getParent()) {
+            if (n instanceof ModuleDecl module) {
+                result.append(' ').append(module.getName());
+            } else if (n instanceof Decl decl) {
+                result.append(' ').append(decl.getName());
+            } else if (n instanceof MethodSig sig) {
+                result.append(' ').append(sig.getName());
+            } else if (n instanceof VarOrFieldDecl var) {
+                result.append(' ').append(var.getName());
+            }
+        }
+        return result.toString();
+    }
+
+    private static String hash(String content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                                            .digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The errors of a method, with their nodes given as positions in a
+     * pre-order traversal of the method, so they can be restored for an
+     * unchanged copy of the method.
+     */
+    private record CachedErrors(int[] nodes, ErrorMessage[] messages, String[][] args) {
+
+        static CachedErrors of(MethodImpl method, SemanticConditionList errors) {
+            IdentityHashMap<ASTNode<?>, Integer> positions = new IdentityHashMap<>();
+            ArrayList<ASTNode<?>> preorder = new ArrayList<>();
+            preorder(method, preorder);
+            for (int i = 0; i < preorder.size(); i++) {
+                positions.put(preorder.get(i), i);
+            }
+            ArrayList<SemanticCondition> conditions = new ArrayList<>();
+            errors.forEach(conditions::add);
+            int[] nodes = new int[conditions.size()];
+            ErrorMessage[] messages = new ErrorMessage[conditions.size()];
+            String[][] args = new String[conditions.size()][];
+            for (int i = 0; i < conditions.size(); i++) {
+                SemanticCondition condition = conditions.get(i);
+                Integer position = positions.get(condition.getNode());
+                if (!(condition instanceof TypeError) || position == null) return null;
+                nodes[i] = position;
+                messages[i] = condition.msg;
+                args[i] = condition.args;
+            }
+            return new CachedErrors(nodes, messages, args);
+        }
+
+        SemanticConditionList restore(MethodImpl method) {
+            ArrayList<ASTNode<?>> preorder = new ArrayList<>();
+            preorder(method, preorder);
+            SemanticConditionList result = new SemanticConditionList();
+            for (int i = 0; i < nodes.length; i++) {
+                result.add(new TypeError(preorder.get(nodes[i]), messages[i], args[i]));
+            }
+            return result;
+        }
+
+        private static void preorder(ASTNode<?> node, ArrayList<ASTNode<?>> result) {
+            result.add(node);
+            for (int i = 0; i < node.getNumChild(); i++) {
+                ASTNode<?> child = node.getChild(i);
+                if (child != null) preorder(child, result);
+            }
+        }
+    }
+}
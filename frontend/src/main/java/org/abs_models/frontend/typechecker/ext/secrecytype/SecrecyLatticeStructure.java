@@ -1,17 +1,29 @@
 /**
- * Copyright (c) 2009-2011, The HATS Consortium. All rights reserved. 
+ * Copyright (c) 2009-2011, The HATS Consortium. All rights reserved.
  * This file is licensed under the terms of the Modified BSD License.
  * Written by @Maximilian_Paul for questions please refer to uukln@student.kit.edu
  */
 package org.abs_models.frontend.typechecker.ext;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Set;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Class that is used to handover the user input for the --secrecy option to the SecrecyAnnotationChecker
+ *
+ * The lattice is compiled once when it is created: each level gets a dense
+ * integer id, the order is stored as one bitset per level, and join and
+ * meet of all pairs of levels are looked up in precomputed tables.  The
+ * order does not need to be linear, but every two levels must have a least
+ * upper bound and a greatest lower bound.
  */
 public class SecrecyLatticeStructure {
 
@@ -19,7 +31,7 @@ public class SecrecyLatticeStructure {
      * Set that contains all existing secrecylevels once. (default: Low, High)
      */
     private final Set<String> secrecyLevels;
-    
+
     /**
      * Hashmap used to define the order between levels.
      * Each element of secrecyLevels has an entry.
@@ -27,7 +39,33 @@ public class SecrecyLatticeStructure {
      * (default: (Low, [High]), (High, []))
      */
     private final HashMap<String, Set<String>> latticeOrder;
-    
+
+    /**
+     * The levels by id, in alphabetical order.
+     */
+    private final String[] levelNames;
+
+    /**
+     * The id of each level.
+     */
+    private final HashMap<String, Integer> levelIds = new HashMap<>();
+
+    /**
+     * For each level id, the ids of all levels that are greater or equal.
+     */
+    private final BitSet[] upwardClosure;
+
+    /**
+     * For each level id, the ids of the levels directly above it.
+     */
+    private final BitSet[] covers;
+
+    /**
+     * Join and meet of levels {@code a} and {@code b} at index {@code a * size + b}.
+     */
+    private final int[] joinTable;
+    private final int[] meetTable;
+
     /**
      * Is the highest secrecyvalue for a lattice.
      */
@@ -37,54 +75,152 @@ public class SecrecyLatticeStructure {
      * Is the lowest secrecyvalue for a lattice.
      */
     private String minSecrecyLevel = null;
-    
+
 
     /**
      * Constructor for the SecrecyLatticeStructure.
+     * The order does not need to be transitively closed.
+     *
      * @param levels - the set of all different existing levels in a lattice
-     * @param order - the order defining structure
+     * @param order - the order defining structure, mapping levels to (some of the) higher levels
+     * @throws IllegalArgumentException - if the order is cyclic or not a lattice
      */
     public SecrecyLatticeStructure(Set<String> levels, HashMap<String, Set<String>> order) {
         this.secrecyLevels = new HashSet<>(levels);
-        this.latticeOrder = new HashMap<>(order);
+        if (secrecyLevels.isEmpty()) {
+            throw new IllegalArgumentException("No secrecy levels input found!");
+        }
+
+        levelNames = new TreeSet<>(secrecyLevels).toArray(new String[0]);
+        for (int i = 0; i < levelNames.length; i++) {
+            levelIds.put(levelNames[i], i);
+        }
+
+        upwardClosure = computeUpwardClosure(order);
+        this.latticeOrder = new HashMap<>();
+        for (int i = 0; i < levelNames.length; i++) {
+            Set<String> higher = new HashSet<>();
+            for (int j = upwardClosure[i].nextSetBit(0); j >= 0; j = upwardClosure[i].nextSetBit(j + 1)) {
+                if (j != i) higher.add(levelNames[j]);
+            }
+            latticeOrder.put(levelNames[i], Collections.unmodifiableSet(higher));
+        }
+
+        int size = levelNames.length;
+        covers = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            covers[i] = (BitSet) upwardClosure[i].clone();
+            covers[i].clear(i);
+            for (int k = upwardClosure[i].nextSetBit(0); k >= 0; k = upwardClosure[i].nextSetBit(k + 1)) {
+                if (k == i) continue;
+                BitSet aboveK = (BitSet) upwardClosure[k].clone();
+                aboveK.clear(k);
+                covers[i].andNot(aboveK);
+            }
+        }
+
+        BitSet[] downwardClosure = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            downwardClosure[i] = new BitSet(size);
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j = upwardClosure[i].nextSetBit(0); j >= 0; j = upwardClosure[i].nextSetBit(j + 1)) {
+                downwardClosure[j].set(i);
+            }
+        }
+        joinTable = new int[size * size];
+        meetTable = new int[size * size];
+        for (int a = 0; a < size; a++) {
+            for (int b = a; b < size; b++) {
+                int join = bound(upwardClosure, a, b, "least upper bound");
+                int meet = bound(downwardClosure, a, b, "greatest lower bound");
+                joinTable[a * size + b] = joinTable[b * size + a] = join;
+                meetTable[a * size + b] = meetTable[b * size + a] = meet;
+            }
+        }
 
         calculateMaxAndMin();
-        //System.out.println("Lowest: " + minSecrecyLevel + "\nHighest: " + maxSecrecyLevel);
     }
 
     /**
-     * This method takes the assigned secrecyLevels and the latticeOrder.
-     * It calculates the values of the lattice for max and min and assigns them accordingly.
-     * 
-     * If there are multiple we take any of the highest/lowest. (There never should be multiple options!)
-     * 
+     * Compute the reflexive and transitive closure of {@code order} as
+     * bitsets of level ids.
      */
-    public void calculateMaxAndMin() {
-
-        for (String level : latticeOrder.keySet()) {
-            if (latticeOrder.get(level).isEmpty()) {
-                maxSecrecyLevel = level;
-                break;
+    private BitSet[] computeUpwardClosure(HashMap<String, Set<String>> order) {
+        int size = levelNames.length;
+        BitSet[] direct = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            direct[i] = new BitSet(size);
+            for (String higher : order.getOrDefault(levelNames[i], Set.of())) {
+                Integer j = levelIds.get(higher);
+                if (j == null) {
+                    throw new IllegalArgumentException("Non existing secrecy label found: " + higher);
+                }
+                if (j == i) {
+                    throw new IllegalArgumentException("Secrecy level cannot point to itself: " + higher + " < " + higher);
+                }
+                direct[i].set(j);
             }
         }
-
-        for(String secLevel : secrecyLevels) {
-            boolean containsAllOthers = true;
-            for(String otherLevels : secrecyLevels){
-                Set<String> secLevelContains = latticeOrder.get(secLevel);
-                if(!secLevel.equals(otherLevels) && latticeOrder.getOrDefault(otherLevels, Set.of()).contains(secLevel)) {
-                    containsAllOthers = false;
-                    break;
+        BitSet[] result = new BitSet[size];
+        for (int i = 0; i < size; i++) {
+            BitSet closure = new BitSet(size);
+            LinkedList<Integer> toProcess = new LinkedList<>();
+            toProcess.add(i);
+            while (!toProcess.isEmpty()) {
+                int level = toProcess.removeFirst();
+                for (int j = direct[level].nextSetBit(0); j >= 0; j = direct[level].nextSetBit(j + 1)) {
+                    if (j == i) {
+                        throw new IllegalArgumentException("Secrecy level cannot point to itself: " + levelNames[i] + " < " + levelNames[i]);
+                    }
+                    if (!closure.get(j)) {
+                        closure.set(j);
+                        toProcess.add(j);
+                    }
                 }
             }
+            closure.set(i);
+            result[i] = closure;
+        }
+        return result;
+    }
 
-            if(containsAllOthers) {
-                minSecrecyLevel = secLevel;
-                break;
-            }
+    /**
+     * The least upper bound of {@code a} and {@code b}, given the upward
+     * closure of all levels, or the greatest lower bound given the
+     * downward closure.  The bound is the common bound whose closure
+     * contains all common bounds, i.e., is as large as their set.
+     */
+    private int bound(BitSet[] closure, int a, int b, String what) {
+        BitSet common = (BitSet) closure[a].clone();
+        common.and(closure[b]);
+        int size = common.cardinality();
+        for (int c = common.nextSetBit(0); c >= 0; c = common.nextSetBit(c + 1)) {
+            if (closure[c].cardinality() == size) return c;
         }
+        throw new IllegalArgumentException("Secrecy levels are not a lattice: "
+                                           + levelNames[a] + " and " + levelNames[b]
+                                           + " have no " + what);
     }
-    
+
+    /**
+     * This method takes the assigned secrecyLevels and the latticeOrder.
+     * It calculates the values of the lattice for max and min and assigns them accordingly.
+     *
+     * Since the levels form a lattice, these are the join and the meet of all levels.
+     *
+     */
+    public void calculateMaxAndMin() {
+        int max = 0;
+        int min = 0;
+        for (int i = 1; i < levelNames.length; i++) {
+            max = join(max, i);
+            min = meet(min, i);
+        }
+        maxSecrecyLevel = levelNames[max];
+        minSecrecyLevel = levelNames[min];
+    }
+
     /**
      * Getter for the maximum secrecylevel of our lattice.
      * @return - the maximum secrecylevel.
@@ -108,7 +244,7 @@ public class SecrecyLatticeStructure {
     public Set<String> getSecrecyLevels() {
         return new HashSet<>(secrecyLevels);
     }
-    
+
     /**
      * Getter for the latticeOrder.
      * @return - the latticeOrder field.
@@ -120,7 +256,7 @@ public class SecrecyLatticeStructure {
     /**
      * Getter for the set that contains levels above a certain secrecylevel.
      * @param input - the secrecylevel for which we want the set of higher levels.
-     * @return - the set of higher levels.
+     * @return - the (unmodifiable) set of higher levels.
      */
     public Set<String> getSetForSecrecyLevel(String input) {
         return latticeOrder.get(input);
@@ -132,56 +268,110 @@ public class SecrecyLatticeStructure {
      * @return - true if the input is an existing value (in secrecyLevels), false otherwise
      */
     public boolean isValidLabel(String input) {
-        return secrecyLevels.contains(input);
+        return levelIds.containsKey(input);
     }
 
-    //todo: requires more testing to ensure it works
     /**
-     * This method is a join for two elements and returns the secrecyvalue which is equal or above both of them.
-     * 
-     * @param secrecyOne - the first element we want to join
-     * @param secrecyTwo - the second element we want to join
-     * 
-     * @return - the join of the two elements so their least upper bound, "secrecyOne" if they are the same
+     * The id of a secrecylevel, between 0 and the number of levels.
+     * @param level - an existing secrecylevel
+     * @return - the id of the level
      */
-    public String join(String secrecyOne, String secrecyTwo) {
-        
-        if(!secrecyLevels.contains(secrecyOne) || !secrecyLevels.contains(secrecyTwo)){
-            throw new IllegalArgumentException("Non existing secrecy label found");
+    public int getId(String level) {
+        Integer id = levelIds.get(level);
+        if (id == null) {
+            throw new IllegalArgumentException("Non existing secrecy label found: " + level);
         }
+        return id;
+    }
 
-        Set<String> setOfsecrecyOne = latticeOrder.get(secrecyOne);
-        Set<String> setOfsecrecyTwo = latticeOrder.get(secrecyTwo);
+    /**
+     * The secrecylevel with the given id.
+     * @param id - the id of the level
+     * @return - the name of the level
+     */
+    public String getLevel(int id) {
+        return levelNames[id];
+    }
 
-        if(setOfsecrecyOne.contains(secrecyTwo))return secrecyTwo;
-        if(setOfsecrecyTwo.contains(secrecyOne))return secrecyOne;
-        if(secrecyOne.equals(secrecyTwo))return secrecyOne;
+    /**
+     * Checks whether information may flow from one level to another.
+     * @param lower - the level of the information
+     * @param higher - the level of the destination
+     * @return - true if lower is below or equal to higher
+     */
+    public boolean isLessOrEqual(String lower, String higher) {
+        return upwardClosure[getId(lower)].get(getId(higher));
+    }
 
-        Set<String> candidateLUB = new HashSet<>();
+    /**
+     * The join of two level ids, see {@link #join(String, String)}.
+     */
+    public int join(int secrecyOne, int secrecyTwo) {
+        return joinTable[secrecyOne * levelNames.length + secrecyTwo];
+    }
 
-        for(String candidate : secrecyLevels) {
-            if (setOfsecrecyOne.contains(candidate) && setOfsecrecyTwo.contains(candidate)) {
-                candidateLUB.add(candidate);
-            }
-        }
+    /**
+     * The meet of two level ids, see {@link #meet(String, String)}.
+     */
+    public int meet(int secrecyOne, int secrecyTwo) {
+        return meetTable[secrecyOne * levelNames.length + secrecyTwo];
+    }
 
-        for (String candidate : candidateLUB) {
+    /**
+     * This method is a join for two elements and returns the secrecyvalue which is equal or above both of them.
+     *
+     * @param secrecyOne - the first element we want to join
+     * @param secrecyTwo - the second element we want to join
+     *
+     * @return - the join of the two elements so their least upper bound, "secrecyOne" if they are the same
+     */
+    public String join(String secrecyOne, String secrecyTwo) {
+        return levelNames[join(getId(secrecyOne), getId(secrecyTwo))];
+    }
 
-            Set<?> greaterOrEqual = latticeOrder.getOrDefault(candidate, Set.of());
-            boolean isLeastUpperBound = true;
+    /**
+     * This method is a meet for two elements and returns the secrecyvalue which is equal or below both of them.
+     *
+     * @param secrecyOne - the first element we want to meet
+     * @param secrecyTwo - the second element we want to meet
+     *
+     * @return - the meet of the two elements so their greatest lower bound
+     */
+    public String meet(String secrecyOne, String secrecyTwo) {
+        return levelNames[meet(getId(secrecyOne), getId(secrecyTwo))];
+    }
 
-            for (String other : candidateLUB) {
-                if (!candidate.equals(other) && greaterOrEqual.contains(other)) {
-                    isLeastUpperBound = false;
-                    break;
+    /**
+     * A shortest chain of levels from one level up to a higher one, where
+     * each level is directly above the previous one.
+     * @param lower - the first level of the chain
+     * @param higher - the last level of the chain
+     * @return - the chain, or an empty list if lower is not below or equal to higher
+     */
+    public List<String> path(String lower, String higher) {
+        int from = getId(lower);
+        int to = getId(higher);
+        if (!upwardClosure[from].get(to)) return List.of();
+        int[] previous = new int[levelNames.length];
+        Arrays.fill(previous, -1);
+        ArrayDeque<Integer> toProcess = new ArrayDeque<>();
+        toProcess.add(from);
+        previous[from] = from;
+        while (previous[to] < 0) {
+            int level = toProcess.removeFirst();
+            for (int j = covers[level].nextSetBit(0); j >= 0; j = covers[level].nextSetBit(j + 1)) {
+                if (previous[j] < 0 && upwardClosure[j].get(to)) {
+                    previous[j] = level;
+                    toProcess.add(j);
                 }
             }
-
-            if (isLeastUpperBound) {
-                return candidate;
-            }
         }
-        throw new IllegalStateException("No common upper bound found");
+        LinkedList<String> result = new LinkedList<>();
+        for (int level = to; level != from; level = previous[level]) {
+            result.addFirst(levelNames[level]);
+        }
+        result.addFirst(lower);
+        return result;
     }
 
     /**
@@ -195,16 +385,11 @@ public class SecrecyLatticeStructure {
             throw new IllegalArgumentException("Cannot evaluate an empty confidentiality list.");
         }
 
-        ProgramCountNode first = programConfidentiality.getFirst();
-        String current = first.getSecrecyLevel();
-
-        for (int i = 1; i < programConfidentiality.size(); i++) {
-        
-            ProgramCountNode nextNode = programConfidentiality.get(i);
-            String nextLevel = nextNode.getSecrecyLevel();
-            current = join(current, nextLevel);
+        int current = getId(programConfidentiality.getFirst().getSecrecyLevel());
+        for (ProgramCountNode node : programConfidentiality) {
+            current = join(current, getId(node.getSecrecyLevel()));
         }
 
-        return current;
+        return levelNames[current];
     }
 }
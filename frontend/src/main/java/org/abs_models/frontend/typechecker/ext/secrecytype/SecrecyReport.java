@@ -0,0 +1,188 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typechecker.ext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.abs_models.frontend.analyser.ErrorMessage;
+import org.abs_models.frontend.analyser.SemanticCondition;
+
+/**
+ * Writes the secrecy errors of a model and the time spent checking each
+ * method as a SARIF 2.1.0 log (see https://sarifweb.azurewebsites.net/).
+ * <p>
+ * Errors and checking times are collected while the model is checked and
+ * written by {@link #finish}, which opens and closes the file, so that no
+ * file is left open if checking fails.  Each error carries its source
+ * position, the secrecy levels involved and, for leaks, a chain of levels
+ * from the level of the destination up to the join of both levels, i.e.,
+ * the levels the destination would need to be raised through to receive
+ * the information.  The checking times are a property of the run.
+ */
+public class SecrecyReport {
+
+    private static final String[] RULES = {
+        ErrorMessage.WRONG_SECRECY_ANNOTATION_VALUE.name(),
+        ErrorMessage.SECRECY_LEAKAGE_ERROR_FROM_TO.name(),
+        ErrorMessage.SECRECY_LEAKAGE_ERROR_AT_MOST.name(),
+        ErrorMessage.SECRECY_PARAMETER_TO_HIGH.name()
+    };
+
+    private final File file;
+    private final SecrecyLatticeStructure secrecyLatticeStructure;
+
+    /** The errors, in the order they were found. */
+    private final List<SemanticCondition> errors = new ArrayList<>();
+
+    /** Checking time in nanoseconds of each method, by class. */
+    private final Map<String, Map<String, Long>> times = new LinkedHashMap<>();
+
+    /**
+     * Start a report.
+     * @param file - the file to write the report to.
+     * @param secrecyLatticeStructure - the lattice the model is checked against.
+     */
+    public SecrecyReport(File file, SecrecyLatticeStructure secrecyLatticeStructure) {
+        this.file = file;
+        this.secrecyLatticeStructure = secrecyLatticeStructure;
+    }
+
+    /**
+     * Add an error to the report.
+     * @param error - a secrecy error.
+     */
+    public void add(SemanticCondition error) {
+        errors.add(error);
+    }
+
+    /**
+     * Write an error as a SARIF result.
+     */
+    private void writeError(JsonGenerator json, SemanticCondition error) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("ruleId", error.msg.name());
+        json.writeStringField("level", "error");
+        json.writeObjectFieldStart("message");
+        json.writeStringField("text", error.getMsg());
+        json.writeEndObject();
+        json.writeArrayFieldStart("locations");
+        json.writeStartObject();
+        json.writeObjectFieldStart("physicalLocation");
+        json.writeObjectFieldStart("artifactLocation");
+        json.writeStringField("uri", new File(error.getFileName()).toURI().toString());
+        json.writeEndObject();
+        json.writeObjectFieldStart("region");
+        json.writeNumberField("startLine", error.getLine());
+        json.writeNumberField("startColumn", error.getColumn());
+        json.writeEndObject();
+        json.writeEndObject();
+        json.writeEndObject();
+        json.writeEndArray();
+        writeLevels(json, error);
+        json.writeEndObject();
+    }
+
+    /**
+     * The levels of an error: for leaks, the level of the information and
+     * of its destination, and the chain of levels that justifies the error.
+     */
+    private void writeLevels(JsonGenerator json, SemanticCondition error) throws IOException {
+        String from;
+        String to;
+        switch (error.msg) {
+        case SECRECY_LEAKAGE_ERROR_FROM_TO -> { from = error.args[0]; to = error.args[2]; }
+        case SECRECY_LEAKAGE_ERROR_AT_MOST -> { from = error.args[1]; to = error.args[0]; }
+        case SECRECY_PARAMETER_TO_HIGH -> { from = error.args[0]; to = error.args[1]; }
+        default -> { return; }
+        }
+        json.writeObjectFieldStart("properties");
+        json.writeStringField("from", from);
+        json.writeStringField("to", to);
+        json.writeArrayFieldStart("latticePath");
+        for (String level : secrecyLatticeStructure.path(to, secrecyLatticeStructure.join(from, to))) {
+            json.writeString(level);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    /**
+     * Record the time spent checking a method.
+     * @param className - the qualified name of the class of the method.
+     * @param methodName - the name of the method.
+     * @param nanos - the checking time in nanoseconds.
+     */
+    public void addTime(String className, String methodName, long nanos) {
+        times.computeIfAbsent(className, c -> new LinkedHashMap<>()).merge(methodName, nanos, Long::sum);
+    }
+
+    /**
+     * Write the report.
+     */
+    public void finish() {
+        try (JsonGenerator json = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeStringField("version", "2.1.0");
+            json.writeStringField("$schema", "https://json.schemastore.org/sarif-2.1.0.json");
+            json.writeArrayFieldStart("runs");
+            json.writeStartObject();
+            json.writeObjectFieldStart("tool");
+            json.writeObjectFieldStart("driver");
+            json.writeStringField("name", "absc secrecy checker");
+            json.writeArrayFieldStart("rules");
+            for (String rule : RULES) {
+                json.writeStartObject();
+                json.writeStringField("id", rule);
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeArrayFieldStart("results");
+            for (SemanticCondition error : errors) {
+                writeError(json, error);
+            }
+            json.writeEndArray();
+            json.writeObjectFieldStart("properties");
+            json.writeArrayFieldStart("secrecyTimes");
+            for (Map.Entry<String, Map<String, Long>> c : times.entrySet()) {
+                json.writeStartObject();
+                json.writeStringField("class", c.getKey());
+                json.writeNumberField("timeMs", millis(c.getValue().values().stream().mapToLong(Long::longValue).sum()));
+                json.writeArrayFieldStart("methods");
+                for (Map.Entry<String, Long> m : c.getValue().entrySet()) {
+                    json.writeStartObject();
+                    json.writeStringField("method", m.getKey());
+                    json.writeNumberField("timeMs", millis(m.getValue()));
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
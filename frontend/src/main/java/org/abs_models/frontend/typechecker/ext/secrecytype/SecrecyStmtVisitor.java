@@ -6,7 +6,6 @@
 package org.abs_models.frontend.typechecker.ext;
 
 import java.util.HashMap;
-import java.util.Set;
 import java.util.LinkedList;
 
 import org.abs_models.frontend.ast.*;
@@ -19,6 +18,12 @@ import org.abs_models.frontend.analyser.SemanticConditionList;
  */
 public class SecrecyStmtVisitor {
 
+    /**
+     * Name of the single entry of the programConfidentiality list when checking at a given program point.
+     * It is not an identifier, so a get-expression never removes it.
+     */
+    private static final String PROGRAM_POINT = "<program point>";
+
     /**
      * Stores mappings between ASTNode's (declarations) and the assigned secrecy values.
      */
@@ -114,9 +119,7 @@ public class SecrecyStmtVisitor {
 
         if(_secrecy.get(LHS) != null)LHSsecLevel = _secrecy.get(LHS);
         if(RhsExp.accept(ExpVisitor) != null)RHSsecLevel = RhsExp.accept(ExpVisitor);
-        Set<String> LHScontainedIn = secrecyLatticeStructure.getSetForSecrecyLevel(LHSsecLevel);
-        
-        if(LHScontainedIn.contains(RHSsecLevel)) {
+        if(!secrecyLatticeStructure.isLessOrEqual(RHSsecLevel, LHSsecLevel)) {
             errors.add(new TypeError(assignStmt, ErrorMessage.SECRECY_LEAKAGE_ERROR_FROM_TO, RHSsecLevel, assignStmt.getValue().toString(), LHSsecLevel, assignStmt.getVar().getName()));
         }
     }
@@ -150,9 +153,7 @@ public class SecrecyStmtVisitor {
             if(exp.accept(ExpVisitor) != null)returnActualLevel = exp.accept(ExpVisitor);
         }
 
-        Set<String> methodReturnSet = secrecyLatticeStructure.getSetForSecrecyLevel(returnActualLevel);
-
-        if(!(methodReturnSet.contains(returnDefinitionLevel)) && !(returnActualLevel.equals(returnDefinitionLevel))) {
+        if(!secrecyLatticeStructure.isLessOrEqual(returnActualLevel, returnDefinitionLevel)) {
             errors.add(new TypeError(returnStmt, ErrorMessage.SECRECY_LEAKAGE_ERROR_FROM_TO, returnActualLevel, "returnStmt", returnDefinitionLevel, "returnDefinition"));
         }
     }
@@ -239,37 +240,23 @@ public class SecrecyStmtVisitor {
         String lhsLevel = secrecyLatticeStructure.getMinSecrecyLevel();
         
         //If there is an annotation extract it if it's for our secrecy annotation
-        if (varDeclStmt.getAnnotationList() != null) {
-            for (Annotation ann : varDeclStmt.getAnnotationList()) {
-                if (ann instanceof TypedAnnotation typedAnn) {
-
-                    ASTNode<?> valueNode = typedAnn.getChild(0);
-                    ASTNode<?> nameNode  = typedAnn.getChild(1);
-
-                    if ("Secrecy".equals(nameNode.toString()) && valueNode instanceof DataConstructorExp dataCon) {
-                        String levelName = dataCon.getConstructor();
+        TypedAnnotation typedAnn = findSecrecyAnnotation(varDeclStmt);
+        if (typedAnn != null) {
+            String levelName = ((DataConstructorExp) typedAnn.getChild(0)).getConstructor();
 
-                        if (!secrecyLatticeStructure.isValidLabel(levelName)) {
-                            errors.add(new TypeError(typedAnn, ErrorMessage.WRONG_SECRECY_ANNOTATION_VALUE, levelName));
-                            return;
-                        }
-
-                        //System.out.println("HERE NOW WORKS?"+varDeclStmt);
-                        //System.out.println("Levelname: " + levelName);
-                        lhsLevel = levelName;
-                        if(levelName != null)_secrecy.put(varDecl, levelName);
-                        break;
-                    }
-                }
+            if (!secrecyLatticeStructure.isValidLabel(levelName)) {
+                errors.add(new TypeError(typedAnn, ErrorMessage.WRONG_SECRECY_ANNOTATION_VALUE, levelName));
+                return;
             }
+
+            lhsLevel = levelName;
+            if(levelName != null)_secrecy.put(varDecl, levelName);
         }
 
         if(varDecl.hasInitExp()){
             Exp initExp = varDecl.getInitExp();
             String rhsLevel = initExp.accept(ExpVisitor);
-            Set<String> rhsLevelSet = secrecyLatticeStructure.getSetForSecrecyLevel(rhsLevel);
-            
-            if(!(lhsLevel.equals(rhsLevel) || rhsLevelSet.contains(lhsLevel))) {
+            if(!secrecyLatticeStructure.isLessOrEqual(rhsLevel, lhsLevel)) {
                 errors.add(new TypeError(varDeclStmt, ErrorMessage.SECRECY_LEAKAGE_ERROR_FROM_TO, rhsLevel, initExp.toString(), lhsLevel, varDecl.getName()));
             }
         }
@@ -322,6 +309,82 @@ public class SecrecyStmtVisitor {
         ExpVisitor.updateProgramPoint(programConfidentiality);
     }
 
+    /**
+     * Checks a single statement at a program point computed by {@link SecrecyFlowAnalysis}.
+     * Nested statements are not visited, they are checked at their own program point.
+     * Conditions and await guards are pure expressions, so they are only evaluated by the analysis.
+     * @param stmt - the stmt we want to check.
+     * @param programPointLevel - the secrecylevel of the program point of the stmt.
+     */
+    public void visitAt(Stmt stmt, String programPointLevel) {
+        setProgramPoint(programPointLevel);
+
+        if (stmt instanceof AssignStmt assignStmt) {
+            this.visit(assignStmt);
+        } else if (stmt instanceof ReturnStmt returnStmt) {
+            this.visit(returnStmt);
+        } else if (stmt instanceof ExpressionStmt expressionStmt) {
+            this.visit(expressionStmt);
+        } else if (stmt instanceof VarDeclStmt varDeclStmt) {
+            this.visit(varDeclStmt);
+        }
+    }
+
+    /**
+     * Evaluates the secrecylevel of an expression at a given program point.
+     * @param exp - the expression for which we want to retrieve the secrecylevel.
+     * @param programPointLevel - the secrecylevel of the program point.
+     * @return - the join of the expressions secrecylevel and the program point.
+     */
+    public String levelAt(Exp exp, String programPointLevel) {
+        setProgramPoint(programPointLevel);
+        return exp.accept(ExpVisitor);
+    }
+
+    /**
+     * Stores the annotated secrecylevel of a local variable, if it is valid.
+     * Errors for invalid levels are reported when the declaration is visited.
+     * @param varDeclStmt - the variable declaration statement.
+     */
+    public void declare(VarDeclStmt varDeclStmt) {
+        TypedAnnotation annotation = findSecrecyAnnotation(varDeclStmt);
+        if (annotation != null) {
+            String levelName = ((DataConstructorExp) annotation.getChild(0)).getConstructor();
+            if (secrecyLatticeStructure.isValidLabel(levelName)) {
+                _secrecy.put(varDeclStmt.getVarDecl(), levelName);
+            }
+        }
+    }
+
+    /**
+     * Finds the secrecy annotation of a variable declaration statement.
+     * @param varDeclStmt - the variable declaration statement.
+     * @return - the annotation, or null if there is none.
+     */
+    private static TypedAnnotation findSecrecyAnnotation(VarDeclStmt varDeclStmt) {
+        if (varDeclStmt.getAnnotationList() != null) {
+            for (Annotation ann : varDeclStmt.getAnnotationList()) {
+                if (ann instanceof TypedAnnotation typedAnn
+                    && "Secrecy".equals(typedAnn.getChild(1).toString())
+                    && typedAnn.getChild(0) instanceof DataConstructorExp) {
+                    return typedAnn;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the program secrecy list by a single entry.
+     * @param programPointLevel - the secrecylevel of the program point.
+     */
+    private void setProgramPoint(String programPointLevel) {
+        LinkedList<ProgramCountNode> programPoint = new LinkedList<>();
+        programPoint.add(new ProgramCountNode(PROGRAM_POINT, programPointLevel));
+        updateProgramPoint(programPoint);
+        ExpVisitor.updateProgramPoint(programPoint);
+    }
+
     /**
      * Allows to update the current program secrecy list on a change.
      * @param newConfidentiality - the list but with the new changes.
@@ -41,6 +41,12 @@ public class LocationTypeInferenceExtension extends DefaultTypeSystemExtension {
         super(m);
     }
 
+    @Override
+    public boolean allowsParallelChecking() {
+        // Type variables and constraints are numbered in callback order
+        return false;
+    }
+
     private LocationTypeVar adaptTo(LocationTypeVar expLocType, AdaptDirection dir, LocationTypeVar adaptTo, ASTNode<?> typeNode, ASTNode<?> originatingNode) {
         LocationTypeVar tv = new LocationTypeVar(typeNode);
         constraints.add(Constraint.adapt(tv, expLocType, dir, adaptTo, originatingNode));
@@ -42,6 +42,13 @@ public class NullCheckerExtension extends DefaultTypeSystemExtension {
         this.checkNullCall = true;
     }
 
+    @Override
+    public boolean allowsParallelChecking() {
+        // The null analysis uses circular attributes, whose evaluation
+        // state is shared by the whole tree
+        return false;
+    }
+
     @Override
     public void checkClassDecl(ClassDecl decl) {
         for (ParamDecl p : decl.getParams()) {
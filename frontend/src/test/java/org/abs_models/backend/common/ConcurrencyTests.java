@@ -28,6 +28,21 @@ public class ConcurrencyTests extends SemanticTests {
         assertEvalTrue(INTERFACE_I + CLASS_C + CALL_M_ASYNC);
     }
 
+    @Test
+    public void manySuspendedTasks() throws Exception {
+        // More tasks suspended at the same time than the work-stealing
+        // scheduler of the test driver has spare workers
+        assertEvalTrue("interface G { Unit run(); Unit open(); } "
+                + "class CG implements G { Bool opened = False; Unit run() { await opened; } Unit open() { opened = True; } } "
+                + "interface W { Bool m(Fut<Unit> f); } "
+                + "class CW implements W { Bool m(Fut<Unit> f) { await f?; return True; } } "
+                + "{ Bool testresult = True; G g = new CG(); Fut<Unit> gate = g!run(); "
+                + "  List<Fut<Bool>> fs = Nil; Int i = 0; "
+                + "  while (i < 50) { W w = new CW(); fs = Cons(w!m(gate), fs); i = i + 1; } "
+                + "  g!open(); "
+                + "  while (fs != Nil) { Fut<Bool> f = head(fs); Bool r = f.get; testresult = testresult && r; fs = tail(fs); } }");
+    }
+
     static String CALL_M_ASYNC_GET = "{ Bool testresult = False; I i; i = new C(); Fut<Bool> fut; fut = i!m(); testresult = fut.get; }";
 
     @Test
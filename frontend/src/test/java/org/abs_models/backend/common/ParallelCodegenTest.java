@@ -0,0 +1,168 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.abs_models.ABSTest;
+import org.abs_models.backend.erlang.ErlApp;
+import org.abs_models.backend.erlang.ErlangBackend;
+import org.abs_models.backend.java.codegeneration.JavaCode;
+import org.abs_models.frontend.ast.Model;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Code generated on several threads (see {@link ParallelCodeGenerator})
+ * is byte-identical to code generated on one thread.
+ */
+@RunWith(Parameterized.class)
+public class ParallelCodegenTest extends ABSTest {
+
+    /** The number of classes in module M, i.e., of tasks generating classes. */
+    private static final int CLASSES = 16;
+
+    /**
+     * A model whose code generation reads the attributes evaluated by
+     * {@link ParallelCodeGenerator#prepare}: types of declarations, type
+     * uses and expressions (including type synonyms and parametric
+     * types), declarations of names, functions and data constructors,
+     * and HTTP annotations, and the lookups of imported names.
+     */
+    private static final String MODEL = model();
+
+    private static String model() {
+        StringBuilder result = new StringBuilder("module M; export *;"
+            + "type Id = Int;"
+            + "data Tree<A> = Leaf | Node(Tree<A> left, A value, Tree<A> right);"
+            + "data T = A(Int) | B;"
+            + "exception Fail(String);"
+            + "def Int size<A>(Tree<A> t) = case t { Leaf => 0; Node(l, _, r) => size(l) + 1 + size(r); };"
+            + "def Tree<A> single<A>(A a) = Node(Leaf, a, Leaf);"
+            + "def Int f(T t) = case t { A(x) => x; B => 0; };"
+            + "interface I { [HTTPCallable] Int m(Int x); List<Id> l(Map<String, Id> m); }");
+        for (int i = 0; i < CLASSES; i++) {
+            result.append("class C" + i + "(Id p) implements I {"
+                + " Tree<Id> t = single(p);"
+                + " Int count = 0;"
+                + " Int m(Int x) {"
+                + "  Int y = x + p;"
+                + "  await count >= 0 && y > 0;"
+                + "  count = count + size(t) + f(A(y));"
+                + "  if (y > " + i + ") { throw Fail(\"C" + i + "\"); }"
+                + "  return y;"
+                + " }"
+                + " List<Id> l(Map<String, Id> m) { return values(m); }"
+                + "}");
+        }
+        result.append("module N; import * from M;"
+            + "class E implements I {"
+            + " Int m(Int x) { return size(single(x)) + f(B); }"
+            + " List<Id> l(Map<String, Id> m) { return list[size(single(m))]; }"
+            + "}"
+            + "def Int g(Id x) = f(A(x));"
+            + "{ I i = new C0(1); I e = new E();"
+            + "  Int x = await i!m(f(A(1)));"
+            + "  Int y = await e!m(g(x));"
+            + "  List<Id> z = await i!l(map[Pair(\"a\", y)]); }");
+        return result.toString();
+    }
+
+    /** Generates the code of a model into a directory. */
+    @FunctionalInterface
+    interface Generator {
+        /** The generated files, in the order the backend defines them. */
+        List<Path> generate(Model m, File dir) throws Exception;
+    }
+
+    private static List<Path> generateJava(Model m, File dir) throws Exception {
+        JavaCode code = new JavaCode(dir, null, null, null);
+        m.generateJavaCode(code, true);
+        return code.getFiles().stream().map(File::toPath).collect(Collectors.toList());
+    }
+
+    private static List<Path> generateErlang(Model m, File dir) throws Exception {
+        ErlApp ea = new ErlApp(dir, null, null);
+        m.generateErlangCode(ea, EnumSet.noneOf(ErlangBackend.CompileOptions.class));
+        ea.close();
+        try (Stream<Path> s = Files.walk(new File(dir, "absmodel").toPath())) {
+            return s.filter(p -> p.toString().endsWith(".erl") || p.toString().endsWith(".hrl"))
+                .sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                { "java", (Generator) ParallelCodegenTest::generateJava, "C" + (CLASSES - 1) + "_c.java" },
+                { "erlang", (Generator) ParallelCodegenTest::generateErlang, "m_N_funs.erl" },
+            });
+    }
+
+    private final Generator generator;
+    private final String expectedFile;
+
+    public ParallelCodegenTest(String backend, Generator generator, String expectedFile) {
+        this.generator = generator;
+        this.expectedFile = expectedFile;
+    }
+
+    /** The relative names and contents of the generated files. */
+    private static final class Output {
+        final List<String> names = new ArrayList<>();
+        final List<byte[]> contents = new ArrayList<>();
+    }
+
+    /**
+     * Generate the code of a freshly parsed model, so that no attribute
+     * has been evaluated by earlier code generation.
+     */
+    private Output generate(int threads) throws Exception {
+        Model m = assertParse(MODEL, Config.WITHOUT_MODULE_NAME, Config.TYPE_CHECK);
+        m.setCodegenThreads(threads);
+        File dir = Files.createTempDirectory("absparallel").toFile();
+        try {
+            Output result = new Output();
+            for (Path f : generator.generate(m, dir)) {
+                result.names.add(dir.toPath().relativize(f).toString());
+                result.contents.add(Files.readAllBytes(f));
+            }
+            return result;
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void sameCodeAsSequential() throws Exception {
+        Output sequential = generate(1);
+        assertTrue(sequential.names.toString(),
+                   sequential.names.stream().anyMatch(n -> n.endsWith(expectedFile)));
+        // races on lazily evaluated attributes do not show up every time
+        for (int round = 0; round < 4; round++) {
+            Output parallel = generate(8);
+            assertEquals(sequential.names, parallel.names);
+            for (int i = 0; i < sequential.names.size(); i++) {
+                assertArrayEquals(sequential.names.get(i), sequential.contents.get(i), parallel.contents.get(i));
+            }
+        }
+    }
+}
@@ -74,6 +74,17 @@ public class PrimitiveTypes extends SemanticTests {
         assertEvalTrue("{ Bool testresult = 92233720368547758070 * 9223372036854775807 == 850705917302346158473969077842325012490;  }");
     }
 
+    @Test
+    public void intMultOverflowsLong() throws Exception {
+        // Both factors fit into a long, their product does not
+        assertEvalTrue("{ Bool testresult = 999999999999999999 * 999999999999999999 == 999999999999999998000000000000000001;  }");
+    }
+
+    @Test
+    public void intSubNearLongRange() throws Exception {
+        assertEvalTrue("{ Int x = -999999999999999999; Bool testresult = x - 999999999999999999 == -1999999999999999998;  }");
+    }
+
     @Test
     public void intMod() throws Exception {
         assertEvalTrue("{ Bool testresult = 10 % 3 == 1;  }");
@@ -58,6 +58,9 @@ public abstract class SemanticTests {
          */
         data.add(new Object[] { new JavaTestDriver() });
         data.add(new Object[] { new JavaTestDriver(1) });
+        data.add(new Object[] { new JavaTestDriver("virtual") });
+        data.add(new Object[] { JavaTestDriver.withWorkStealing(4) });
+        data.add(new Object[] { JavaTestDriver.withFastArithmetic() });
         /* TODO: Mark Maude tests as ignored instead of just missing them */
         // if (checkMaude()) {
         //     data.add(new Object[] { new MaudeTestDriver(MaudeCompiler.SIMULATOR.RL) });
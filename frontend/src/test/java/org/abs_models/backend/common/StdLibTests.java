@@ -142,6 +142,69 @@ public class StdLibTests extends SemanticTests {
             """);
     }
 
+    @Test
+    public void mapLookupLarge() throws Exception {
+        // Large enough and queried often enough to be indexed by the Java
+        // backend; the first entry for a key must win
+        assertEvalTrue("""
+            {
+                Map<Int, Int> m = map[];
+                Int i = 0;
+                while (i < 50) { m = insert(m, Pair(i, i * 10)); i = i + 1; }
+                m = insert(m, Pair(7, -7));
+                Bool testresult = True;
+                i = 0;
+                while (i < 5) {
+                    testresult = testresult && lookup(m, 7) == Just(-7)
+                        && lookupDefault(m, 0, -1) == 0
+                        && lookupDefault(m, 49, -1) == 490
+                        && lookup(m, 50) == Nothing;
+                    i = i + 1;
+                }
+                m = insert(m, Pair(50, 500));
+                testresult = testresult && lookup(m, 50) == Just(500) && lookup(m, 7) == Just(-7);
+            }
+            """);
+    }
+
+    @Test
+    public void setContainsLarge() throws Exception {
+        assertEvalTrue("""
+            {
+                Set<Int> s = set[];
+                Int i = 0;
+                while (i < 50) { s = insertElement(s, 2 * i); i = i + 1; }
+                Bool testresult = True;
+                i = 0;
+                while (i < 5) {
+                    testresult = testresult && contains(s, 0) && contains(s, 98)
+                        && !contains(s, 3) && !contains(s, 100) && size(s) == 50;
+                    i = i + 1;
+                }
+            }
+            """);
+    }
+
+    @Test
+    public void setContainsUnsorted() throws Exception {
+        // Sets built with the constructor directly are not sorted; contains
+        // stops at the first larger element
+        assertEvalTrue("""
+            {
+                Set<Int> s = EmptySet;
+                Int i = 0;
+                while (i < 20) { s = Insert(i, s); i = i + 1; }
+                s = Insert(5, s);
+                Bool testresult = True;
+                i = 0;
+                while (i < 5) {
+                    testresult = testresult && contains(s, 5) && !contains(s, 3) && size(s) == 21;
+                    i = i + 1;
+                }
+            }
+            """);
+    }
+
     @Test
     public void mapKeys() throws Exception {
         assertEvalTrue("{ Map<Int, Int> map = map[Pair(1, 100), Pair(2, 200), Pair(3, 300)]; Bool testresult = keys(map) == set[1, 2, 3]; }");
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.abs_models.backend.java.codegeneration.JavaCode;
+import org.abs_models.backend.java.lib.runtime.ABSObject;
+import org.abs_models.frontend.ast.Model;
+import org.junit.Test;
+
+public class InMemoryCompileTest extends JavaBackendTest {
+
+    @Test
+    public void compileAndLoad() throws Exception {
+        Model m = assertParse("module M; interface I { Int m(); } class C implements I { Int m() { return 1; } } { I i = new C(); Int x = await i!m(); }",
+                              Config.WITHOUT_MODULE_NAME, Config.TYPE_CHECK);
+        JavaCode code = JavaCode.inMemory(null, null, null);
+        m.generateJavaCode(code, false);
+        assertNull(code.getSrcDir());
+        assertTrue(code.getFiles().isEmpty());
+        assertTrue(code.toString().contains("class C_c"));
+        code.compile();
+
+        ClassLoader loader = code.getClassLoader(getClass().getClassLoader());
+        Class<?> main = loader.loadClass(code.getFirstMainClass());
+        assertEquals("M.Main", main.getName());
+        assertTrue(ABSObject.class.isAssignableFrom(main));
+        assertEquals(loader, loader.loadClass("M.C_c").getClassLoader());
+    }
+}
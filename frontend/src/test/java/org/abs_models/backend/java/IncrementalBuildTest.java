@@ -0,0 +1,103 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.abs_models.backend.java.codegeneration.IncrementalBuild;
+import org.abs_models.backend.java.codegeneration.JavaCode;
+import org.abs_models.frontend.ast.Model;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class IncrementalBuildTest extends JavaBackendTest {
+
+    private static final String PROGRAM = "module M; interface I { Int m(); } class C implements I { Int m() { return %s; } } { I i = new C(); Int x = await i!m(); }";
+
+    /**
+     * A class that implements an interface and uses a data type and a
+     * function, each declared on a line of its own so that changing one
+     * declaration does not move the others.
+     */
+    private static final String DEPENDENCIES = String.join("\n",
+        "module M;",
+        "interface I { %s Int m(); }",
+        "data D = %s;",
+        "def Int f(%s) = %s;",
+        "class C implements I { Int m() { D d = A; return case d { A => f(1); _ => 0; }; } }",
+        "{ I i = new C(); Int x = await i!m(); }");
+
+    private List<String> build(File dir, String result) throws Exception {
+        return buildProgram(dir, String.format(PROGRAM, result));
+    }
+
+    private List<String> buildDependencies(File dir, String annotation, String constructors,
+                                           String param, String body) throws Exception {
+        return buildProgram(dir, String.format(DEPENDENCIES, annotation, constructors, param, body));
+    }
+
+    private List<String> buildProgram(File dir, String program) throws Exception {
+        Model m = assertParse(program, Config.WITHOUT_MODULE_NAME, Config.TYPE_CHECK);
+        JavaCode code = new JavaCode(dir, null, null, null);
+        code.setIncremental(true);
+        m.generateJavaCode(code, true);
+        code.compile();
+        return code.getFiles().stream().map(File::getName).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void regenerateChangedDecls() throws Exception {
+        File dir = Files.createTempDirectory("absincremental").toFile();
+        try {
+            assertTrue(build(dir, "1").containsAll(List.of("C_c.java", "I.java", "Main.java")));
+            assertTrue(new File(dir, IncrementalBuild.STATE_FILE).isFile());
+            assertEquals(List.of(), build(dir, "1"));
+            assertEquals(List.of("C_c.java"), build(dir, "2"));
+            assertTrue(new File(dir, "M/C_c.class").isFile());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void regenerateUsersOfChangedInterfaces() throws Exception {
+        File dir = Files.createTempDirectory("absincremental").toFile();
+        try {
+            assertTrue(buildDependencies(dir, "", "A | B", "Int x", "x").contains("C_c.java"));
+            assertEquals(List.of(), buildDependencies(dir, "", "A | B", "Int x", "x"));
+            // implemented interface
+            assertTrue(buildDependencies(dir, "[HTTPCallable]", "A | B", "Int x", "x").contains("C_c.java"));
+            // used data type
+            assertTrue(buildDependencies(dir, "[HTTPCallable]", "A | B | E", "Int x", "x").contains("C_c.java"));
+            // signature of a called function
+            assertTrue(buildDependencies(dir, "[HTTPCallable]", "A | B | E", "Rat x", "truncate(x)").contains("C_c.java"));
+            assertTrue(new File(dir, "M/C_c.class").isFile());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void keepUsersOfChangedBodies() throws Exception {
+        File dir = Files.createTempDirectory("absincremental").toFile();
+        try {
+            assertTrue(buildDependencies(dir, "", "A | B", "Int x", "x").contains("C_c.java"));
+            // only the body of the called function changes
+            List<String> regenerated = buildDependencies(dir, "", "A | B", "Int x", "x + 1");
+            assertFalse(regenerated.isEmpty());
+            assertFalse(regenerated.contains("C_c.java"));
+            assertTrue(new File(dir, "M/C_c.class").isFile());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
@@ -29,7 +29,7 @@ import org.abs_models.frontend.ast.Model;
 public class JavaBackendTest extends ABSTest {
 
     private static final boolean DEBUG = false;
-    private static final String LIB_CLASSPATH = "build/classes/java/main";
+    static final String LIB_CLASSPATH = "build/classes/java/main";
 
     @SuppressWarnings("serial")
     final protected List<String> jvmArgs = new ArrayList<String>() {{ add("-Dabs.terminateOnException=true"); }};
@@ -41,6 +41,11 @@ public class JavaBackendTest extends ABSTest {
     public final long seed;
     public final static long seed_UNUSED = -1;
 
+    /**
+     * Whether to generate code with {@code --fast-arithmetic}.
+     */
+    boolean fastArithmetic = false;
+
     public JavaBackendTest() { seed = seed_UNUSED; }
 
     public JavaBackendTest(long randomSeed) {
@@ -165,6 +170,7 @@ public class JavaBackendTest extends ABSTest {
             fail(model.getErrors().getFirstError().getHelpMessage());
             return null;
         }
+        model.fastArithmetic = fastArithmetic;
         return getJavaCode(model);
     }
 
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.abs_models.backend.java.codegeneration.JavaCode;
+import org.junit.Test;
+
+public class JavaModelApiTest extends JavaBackendTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String MODEL = "module M;"
+        + "interface I { [HTTPCallable] Int check(Int p); }"
+        + "class C implements I { Int check(Int p) { assert p > 0; return p; } }"
+        + "{ [HTTPName: \"test\"] I i = new C(); }";
+
+    private static String readAll(InputStream is) throws IOException {
+        if (is == null) return "";
+        try (is) {
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Sends a GET request; returns the status followed by the body. */
+    private static String get(int port, String request) throws Exception {
+        HttpURLConnection con = (HttpURLConnection) new URI("http://localhost:" + port + request).toURL().openConnection();
+        // a request that is never answered fails the test instead of hanging
+        con.setConnectTimeout(10000);
+        con.setReadTimeout(10000);
+        int status = con.getResponseCode();
+        String body = readAll(status < 400 ? con.getInputStream() : con.getErrorStream());
+        return status + " " + body;
+    }
+
+    /** A running model with the Model API on {@code port}. */
+    private record RunningModel(Process process, int port, JavaCode code) implements AutoCloseable {
+        @Override
+        public void close() {
+            process.destroy();
+            code.deleteCode();
+        }
+    }
+
+    private RunningModel start(String model, String... runtimeArgs) throws Exception {
+        JavaCode javaCode = getJavaCode(model, Config.WITHOUT_MODULE_NAME);
+        javaCode.compile(javaCode.getSrcDir(), null, "-classpath", LIB_CLASSPATH);
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        Path frontend_jar = Paths.get("dist/absfrontend.jar").toAbsolutePath();
+        List<String> command = new ArrayList<>(List.of("java", "-cp",
+            frontend_jar.toString() + File.pathSeparator + javaCode.getSrcDir().getAbsolutePath(),
+            javaCode.getFirstMainClass(), "-p", Integer.toString(port)));
+        command.addAll(List.of(runtimeArgs));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(javaCode.getSrcDir());
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        return new RunningModel(pb.start(), port, javaCode);
+    }
+
+    /**
+     * Sends a GET request until the server is up and the response satisfies
+     * {@code done}, for at most ten seconds; returns the last response.
+     */
+    private static String poll(int port, String request, Predicate<String> done) throws Exception {
+        String response = null;
+        for (int i = 0; i <= 100; i++) {
+            if (i > 0) Thread.sleep(100);
+            try {
+                response = get(port, request);
+            } catch (ConnectException e) {
+                response = null;
+            }
+            if (response != null && done.test(response)) break;
+        }
+        return response;
+    }
+
+    @Test
+    public void failingMethodCall() throws Exception {
+        try (RunningModel m = start(MODEL)) {
+            // wait until the server is up and the object is registered
+            String response = poll(m.port(), "/call/test/check?p=0", r -> !r.startsWith("404 "));
+            assertNotNull("Model API did not start", response);
+            assertTrue(response, response.startsWith("500 "));
+            assertTrue(response, response.contains("Method call failed"));
+            // the server is still answering calls
+            assertEquals("200", get(m.port(), "/call/test/check?p=5").substring(0, 3));
+        }
+    }
+
+    /**
+     * Tasks that consume resources and then wait for durations with
+     * non-integer bounds, so that the clock advances both one resource
+     * boundary at a time and over several boundaries at once.
+     */
+    private static final String TIMED_MODEL = "module M; import * from ABS.DC;"
+        + "interface Log { [HTTPCallable] Map<String, Rat> wakeUps(); Unit add(String name, Rat time); }"
+        + "class CLog implements Log { Map<String, Rat> entries = map[];"
+        + "  Map<String, Rat> wakeUps() { return entries; }"
+        + "  Unit add(String name, Rat time) { entries = put(entries, name, time); } }"
+        + "interface W { Unit run(String name, Int cost, Rat min, Rat max); }"
+        + "class CW(Log log) implements W {"
+        + "  Unit run(String name, Int cost, Rat min, Rat max) {"
+        + "    if (cost > 0) { [Cost: cost] skip; }"
+        + "    await duration(min, max);"
+        + "    log!add(name, timeValue(now())); } }"
+        + "{ [HTTPName: \"log\"] Log log = new CLog();"
+        + "  DC dc = new DeploymentComponent(\"dc\", map[Pair(Speed, 4)]);"
+        + "  [DC: dc] W w1 = new CW(log); [DC: dc] W w2 = new CW(log);"
+        + "  W w3 = new CW(log); W w4 = new CW(log);"
+        + "  w1!run(\"a\", 10, 1/2, 7/3); w2!run(\"b\", 3, 5, 5);"
+        + "  w3!run(\"c\", 0, 37/4, 12); w4!run(\"d\", 0, 61/3, 61/3); }";
+
+    /**
+     * The wake-up times, deployment component histories, clock and clock
+     * statistics of {@link #TIMED_MODEL} after {@code wakeUps} tasks woke
+     * up and the clock reached {@code clock}.
+     */
+    private JsonNode runTimedModel(int wakeUps, double clock, String... runtimeArgs) throws Exception {
+        try (RunningModel m = start(TIMED_MODEL, runtimeArgs)) {
+            String log = poll(m.port(), "/call/log/wakeUps",
+                              r -> r.startsWith("200 ") && readJson(r).path("result").size() == wakeUps);
+            assertNotNull("Model API did not start", log);
+            String now = poll(m.port(), "/clock/now", r -> Math.abs(readJson(r).path("result").asDouble() - clock) < 1e-9);
+            assertEquals(now, clock, readJson(now).path("result").asDouble(), 1e-9);
+            ObjectNode result = mapper.createObjectNode();
+            result.set("wakeUps", readJson(log).path("result"));
+            result.set("dcs", readJson(get(m.port(), "/dcs")));
+            result.set("statistics", readJson(get(m.port(), "/clock/statistics")).path("result"));
+            return result;
+        }
+    }
+
+    private static JsonNode readJson(String response) {
+        try {
+            return mapper.readTree(response.substring(response.indexOf(' ') + 1));
+        } catch (IOException e) {
+            return mapper.missingNode();
+        }
+    }
+
+    private static void assertSameAsStepwise(JsonNode stepwise, JsonNode multiTick) {
+        assertEquals(stepwise.path("wakeUps"), multiTick.path("wakeUps"));
+        assertEquals(stepwise.path("dcs"), multiTick.path("dcs"));
+        JsonNode stepwiseStatistics = stepwise.path("statistics");
+        JsonNode statistics = multiTick.path("statistics");
+        assertEquals(stepwiseStatistics.path("ticks"), statistics.path("ticks"));
+        assertEquals(stepwiseStatistics.path("durationGuardsWoken"), statistics.path("durationGuardsWoken"));
+        assertEquals(stepwiseStatistics.path("resourceGuardsWoken"), statistics.path("resourceGuardsWoken"));
+        assertEquals(0, stepwiseStatistics.path("multiTickAdvances").asLong());
+        assertTrue(statistics.toString(), statistics.path("multiTickAdvances").asLong() > 0);
+        assertTrue(statistics.toString(),
+                   statistics.path("clockAdvances").asLong() < stepwiseStatistics.path("clockAdvances").asLong());
+    }
+
+    @Test
+    public void multiTickClockAdvance() throws Exception {
+        JsonNode stepwise = runTimedModel(4, 61.0 / 3, "--stepwise-clock");
+        JsonNode multiTick = runTimedModel(4, 61.0 / 3);
+        // a guard with minimum 37/4 wakes at the next resource boundary
+        assertEquals(10.0, multiTick.path("wakeUps").path("c").asDouble(), 0);
+        assertSameAsStepwise(stepwise, multiTick);
+    }
+
+    @Test
+    public void multiTickClockAdvanceWithLimit() throws Exception {
+        // "d" waits beyond the limit, so the clock stops at the limit
+        JsonNode stepwise = runTimedModel(3, 15, "--stepwise-clock", "-l", "15");
+        JsonNode multiTick = runTimedModel(3, 15, "-l", "15");
+        assertTrue(multiTick.path("wakeUps").path("d").isMissingNode());
+        assertSameAsStepwise(stepwise, multiTick);
+    }
+
+    @Test
+    public void clockStatistics() throws Exception {
+        try (RunningModel m = start(TIMED_MODEL)) {
+            String response = poll(m.port(), "/clock/statistics",
+                                   r -> r.startsWith("200 ") && readJson(r).path("result").path("durationGuardsWoken").asLong() == 4);
+            assertNotNull("Model API did not start", response);
+            assertTrue(response, response.startsWith("200 "));
+            JsonNode statistics = readJson(response).path("result");
+            for (String key : new String[] { "clockAdvances", "ticks", "multiTickAdvances",
+                                             "durationGuardsWoken", "resourceGuardsWoken" }) {
+                assertTrue(response, statistics.path(key).isIntegralNumber());
+            }
+            // resource boundaries 1 to 20 were crossed on the way to 61/3
+            assertEquals(20, statistics.path("ticks").asLong());
+            assertTrue(response, statistics.path("resourceGuardsWoken").asLong() > 0);
+            assertEquals("404", get(m.port(), "/clock/unknown").substring(0, 3));
+        }
+    }
+}
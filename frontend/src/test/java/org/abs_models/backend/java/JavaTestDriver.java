@@ -18,20 +18,63 @@ import org.apache.commons.io.FileUtils;
 public class JavaTestDriver extends ABSTest implements BackendTestDriver {
 
     final JavaBackendTest javaTest;
+    /**
+     * The task scheduler selected via {@code abs.taskscheduler}, or {@code
+     * null} to use the runtime's default.
+     */
+    final String taskScheduler;
+    /**
+     * The maximum number of spare workers of the work-stealing task
+     * scheduler, or 0 to use the runtime's default.
+     */
+    int maxSpares = 0;
 
     public JavaTestDriver(long randomSeed) {
         javaTest = new JavaBackendTest(randomSeed);
+        taskScheduler = null;
     }
     
     public JavaTestDriver() {
         javaTest = new JavaBackendTest();
+        taskScheduler = null;
+    }
+
+    /**
+     * A driver that generates code with {@code --fast-arithmetic}.
+     */
+    public static JavaTestDriver withFastArithmetic() {
+        JavaTestDriver result = new JavaTestDriver();
+        result.javaTest.fastArithmetic = true;
+        return result;
+    }
+
+    public JavaTestDriver(String taskScheduler) {
+        javaTest = new JavaBackendTest();
+        javaTest.jvmArgs.add("-Dabs.taskscheduler=" + taskScheduler);
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * A driver using the work-stealing task scheduler with at most {@code
+     * maxSpares} spare workers, so that tests suspending more tasks
+     * exercise its fallback to plain threads.
+     */
+    public static JavaTestDriver withWorkStealing(int maxSpares) {
+        JavaTestDriver result = new JavaTestDriver("workstealing");
+        result.javaTest.jvmArgs.add("-Dabs.maxspares=" + maxSpares);
+        result.maxSpares = maxSpares;
+        return result;
     }
 
     /**
      * Used by JUnit.
      */
     public String toString() {
-        return "JavaBackend"+ ( javaTest.seed == JavaBackendTest.seed_UNUSED ?  "" : (" seed="+Long.toString(javaTest.seed)));
+        return "JavaBackend"
+            + ( javaTest.seed == JavaBackendTest.seed_UNUSED ?  "" : (" seed="+Long.toString(javaTest.seed)))
+            + ( taskScheduler == null ? "" : (" taskscheduler=" + taskScheduler))
+            + ( maxSpares == 0 ? "" : (" maxspares=" + maxSpares))
+            + ( javaTest.fastArithmetic ? " fast-arithmetic" : "");
     }
 
     @Override
@@ -51,6 +94,7 @@ public class JavaTestDriver extends ABSTest implements BackendTestDriver {
 
     @Override
     public void assertEvalTrue(Model m) throws Exception {
+        m.fastArithmetic = javaTest.fastArithmetic;
         JavaCode javaCode = JavaBackendTest.getJavaCode(m);
         boolean res = javaTest.runJavaAndTestResult(javaCode, false);
         assertEquals(true, res);
@@ -58,6 +102,7 @@ public class JavaTestDriver extends ABSTest implements BackendTestDriver {
 
     @Override
     public void assertEvalTrueWithTestfiles(Model m, File ...f) throws Exception {
+        m.fastArithmetic = javaTest.fastArithmetic;
         JavaCode javaCode = JavaBackendTest.getJavaCode(m);
         for (File auxfile : f) {
             File rf = new File(resolveFileName(auxfile.toString()));
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.backend.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.abs_models.Absc;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Models compiled with {@code absc --java --virtual-threads} use the
+ * virtual-thread task scheduler unless another one is given at runtime.
+ */
+public class VirtualThreadsTest extends JavaBackendTest {
+
+    private static final String PROGRAM = "module M; interface I { Int m(); } class C implements I { Int m() { await duration(1, 1); return 1; } } { I i = new C(); Int x = await i!m(); println(\"result \" + toString(x)); }";
+
+    /**
+     * Run the generated main class with the config log level, which
+     * reports the chosen task scheduler, and return its output.
+     */
+    private String runMain(File gen, String... runtimeArgs) throws Exception {
+        List<String> args = new ArrayList<>();
+        args.add("java");
+        args.add("-Dabs.loglevel=config");
+        // The current directory when tests are run is abstools/frontend/
+        args.addAll(Arrays.asList("-cp",
+                                  Paths.get("dist/absfrontend.jar").toAbsolutePath()
+                                  + File.pathSeparator + gen.getAbsolutePath(),
+                                  "M.Main"));
+        args.addAll(Arrays.asList(runtimeArgs));
+        ProcessBuilder pb = new ProcessBuilder(args);
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(output, 0, p.waitFor());
+        return output;
+    }
+
+    @Test
+    public void virtualSchedulerIsDefault() throws Exception {
+        File dir = Files.createTempDirectory("absvirtual").toFile();
+        try {
+            File model = new File(dir, "model.abs");
+            File gen = new File(dir, "gen");
+            Files.writeString(model.toPath(), PROGRAM);
+            assertEquals(0, JavaBackend.doMain(Absc.parseArgs(new String[] {
+                "--java", "--virtual-threads", "-d", gen.getPath(), model.getPath() })));
+
+            String output = runMain(gen);
+            assertTrue(output, output.contains("Using virtual task scheduler"));
+            assertTrue(output, output.contains("result 1"));
+
+            // a scheduler given at runtime takes precedence
+            output = runMain(gen, "--taskscheduler", "default");
+            assertTrue(output, output.contains("Using default task scheduler"));
+            assertFalse(output, output.contains("Using virtual task scheduler"));
+            assertTrue(output, output.contains("result 1"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
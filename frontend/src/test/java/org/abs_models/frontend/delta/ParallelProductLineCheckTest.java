@@ -0,0 +1,88 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.abs_models.frontend.analyser.SemanticCondition;
+import org.abs_models.frontend.analyser.SemanticConditionList;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.ast.Product;
+import org.junit.Test;
+
+public class ParallelProductLineCheckTest extends DeltaTest {
+
+    private static final String MODEL = "module M;"
+        + "class C {}"
+        + "delta D1; uses M; modifies class C { adds Unit m() {} }"
+        + "delta D2; uses M; modifies class C { adds Unit m() {} }"
+        + "delta D3; uses M; modifies class X { adds Unit n() {} }"
+        + "productline PL;"
+        + "features A, B, C;"
+        + "delta D1 when A;"
+        + "delta D2 after D1 when B;"
+        + "delta D3 after D2 when C;"
+        + "root FM {"
+        + " group [0 .. *] { A, B, C }"
+        + "}";
+
+    private List<String> familyErrors(int threads) {
+        Model model = assertParse(MODEL);
+        SemanticConditionList errors = new SemanticConditionList();
+        ProductLineAnalysisHelper.buildPFGT(model.getProductLine(), errors, threads);
+        List<String> result = new ArrayList<>();
+        for (SemanticCondition c : errors) {
+            result.add(c.getHelpMessage());
+        }
+        return result;
+    }
+
+    private Map<String, List<String>> productErrors(int threads) {
+        Model model = assertParse(MODEL);
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (Map.Entry<Product, List<String>> e : ProductChecker.typeCheckAllProducts(model, threads).entrySet()) {
+            result.put(e.getKey().getFeatureSetAsString(), e.getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void familyBasedCheck() {
+        List<String> sequential = familyErrors(1);
+        // duplicate method m, and missing class X in several branches of the trie
+        assertTrue(sequential.size() > 2);
+        assertEquals(sequential, familyErrors(4));
+    }
+
+    @Test
+    public void productBasedCheck() {
+        Map<String, List<String>> sequential = productErrors(1);
+        assertTrue(sequential.containsKey("{A,B}"));
+        assertTrue(sequential.containsKey("{C}"));
+        assertFalse(sequential.containsKey("{}"));
+        assertFalse(sequential.containsKey("{A}"));
+        // same products, messages and order
+        assertEquals(new ArrayList<>(sequential.entrySet()), new ArrayList<>(productErrors(4).entrySet()));
+    }
+
+    @Test
+    public void failedProducts() {
+        Model model = assertParse(MODEL);
+        model.setTypeCheckThreads(4);
+        Set<Product> failed = new HashSet<>();
+        Map<Product, List<String>> errors = ProductChecker.typeCheckAllProducts(model, 4, failed);
+        assertEquals(errors.keySet(), failed);
+        assertEquals(4, model.getTypeCheckThreads());
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.abs_models.common.WrongProgramArgumentException;
+import org.abs_models.frontend.ast.ClassDecl;
+import org.abs_models.frontend.ast.FieldDecl;
+import org.abs_models.frontend.ast.MethodImpl;
+import org.abs_models.frontend.ast.Model;
+import org.junit.Test;
+
+public class ProductDerivationCacheTest extends DeltaTest {
+
+    private static final String MODEL = "module M;"
+        + "class C { Unit m() {} }"
+        + "delta D1; uses M;"
+        + "    modifies class C { modifies Unit m() { original(); } }"
+        + "delta D2; uses M;"
+        + "    modifies class C { modifies Unit m() { original(); } adds Unit n() {} }"
+        + "delta D3(Int attr); uses M;"
+        + "    modifies class C { adds Int f = attr; }"
+        + "productline PL;"
+        + "    features A, B, F;"
+        + "    delta D1 when A;"
+        + "    delta D2 after D1 when B;"
+        + "    delta D3(F.a) after D2 when F;"
+        + "product P1(A);"
+        + "product P2(A, B);"
+        + "product P3(A, B, F{a=1});"
+        + "product P4(A, B, F{a=2});";
+
+    /** The methods and fields of class C. */
+    private static List<String> members(Model model) {
+        ClassDecl cls = (ClassDecl) findDecl(model, "M", "C");
+        List<String> result = new ArrayList<>();
+        for (MethodImpl m : cls.getMethods()) {
+            result.add(m.getMethodSig().getName());
+        }
+        for (FieldDecl f : cls.getFields()) {
+            result.add(f.getName() + "=" + f.getInitExp());
+        }
+        return result;
+    }
+
+    @Test
+    public void sameProductsAsFlattening() throws WrongProgramArgumentException {
+        Model core = assertParse(MODEL);
+        core.evaluateAllProductDeclarations();
+        ProductDerivationCache cache = new ProductDerivationCache(core);
+        for (String product : new String[] { "P1", "P2", "P3", "P4", "P2" }) {
+            Model expected = assertParse(MODEL);
+            expected.evaluateAllProductDeclarations();
+            expected.flattenForProduct(product);
+            Model derived = cache.flattenForProduct(core.findProduct(product).getProduct());
+            assertEquals(product, members(expected), members(derived));
+        }
+        // D1; D1 again and D2, when P2 continues after P1; D2 again and
+        // D3(1); D3(2) -- instead of 1 + 2 + 3 + 3 + 2 deltas
+        assertEquals(6, cache.getAppliedDeltas());
+        // the core, and the models after D1 and after D2, where the trie branches
+        assertEquals(3, cache.getSnapshots());
+        assertEquals(List.of("m"), members(core));
+    }
+
+    @Test
+    public void sameErrorsForInvalidProduct() throws WrongProgramArgumentException {
+        String model = MODEL + "product P5(B);"
+            + "root FM { group allof { A, opt B, opt F { Int a in [0 .. 5]; } } }";
+        Model expected = assertParse(model);
+        expected.evaluateAllProductDeclarations();
+        String error = null;
+        try {
+            expected.flattenForProduct("P5");
+            fail("P5 lacks the mandatory feature A");
+        } catch (WrongProgramArgumentException e) {
+            error = e.getMessage();
+        }
+        assertTrue(error, error.startsWith("Product [P5] does not satisfy the feature model"));
+
+        Model core = assertParse(model);
+        core.evaluateAllProductDeclarations();
+        ProductDerivationCache cache = new ProductDerivationCache(core);
+        try {
+            cache.flattenForProduct(core.findProduct("P5"), true);
+            fail("P5 lacks the mandatory feature A");
+        } catch (WrongProgramArgumentException e) {
+            assertEquals(error, e.getMessage());
+        }
+        assertEquals(0, cache.getAppliedDeltas());
+        assertEquals("P2", cache.flattenForProduct(core.findProduct("P2"), true).getProductName());
+        assertEquals("core", core.getProductName());
+    }
+}
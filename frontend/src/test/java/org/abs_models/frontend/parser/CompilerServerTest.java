@@ -0,0 +1,153 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.abs_models.Absc;
+import org.abs_models.frontend.FrontendTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompilerServerTest extends FrontendTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CompilerServerCommand server = new CompilerServerCommand();
+    private Path dir;
+    private File a;
+    private File b;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("abs-server");
+        a = dir.resolve("A.abs").toFile();
+        b = dir.resolve("B.abs").toFile();
+        Files.writeString(a.toPath(), "module A; export *; def Int f() = 1;");
+        Files.writeString(b.toPath(), "module B; import * from A; { Int x = f(); }");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private String request(int id, String... args) throws Exception {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("id", id);
+        ArrayNode array = request.putArray("args");
+        for (String arg : args) array.add(arg);
+        return mapper.writeValueAsString(request) + "\n";
+    }
+
+    private JsonNode[] serve(String requests) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        server.serve(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        JsonNode[] result = new JsonNode[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            result[i] = mapper.readTree(lines[i]);
+        }
+        return result;
+    }
+
+    @Test
+    public void repeatedCheckIsCached() throws Exception {
+        JsonNode[] responses = serve(request(1, a.getPath(), b.getPath())
+                                     + request(2, a.getPath(), b.getPath()));
+        assertEquals(2, responses.length);
+        assertEquals(1, responses[0].get("id").asInt());
+        assertEquals(0, responses[0].get("exitCode").asInt());
+        assertFalse(responses[0].get("cached").asBoolean());
+        assertEquals(0, responses[1].get("exitCode").asInt());
+        assertTrue(responses[1].get("cached").asBoolean());
+    }
+
+    @Test
+    public void reportIsWrittenForEveryRequest() throws Exception {
+        File report = dir.resolve("report.sarif").toFile();
+        JsonNode[] responses = serve(request(1, "--secrecy-report", report.getPath(), a.getPath(), b.getPath()));
+        assertEquals(0, responses[0].get("exitCode").asInt());
+        assertTrue(report.delete());
+        responses = serve(request(2, "--secrecy-report", report.getPath(), a.getPath(), b.getPath()));
+        assertEquals(0, responses[0].get("exitCode").asInt());
+        assertFalse(responses[0].get("cached").asBoolean());
+        assertTrue(report.exists());
+    }
+
+    @Test
+    public void onlyChangedFilesAreParsed() throws Exception {
+        JsonNode[] responses = serve(request(1, "-v", a.getPath(), b.getPath()));
+        String output = responses[0].get("output").asText();
+        assertTrue(output.contains("Parsing file " + a.getPath()));
+        assertTrue(output.contains("Parsing file " + b.getPath()));
+
+        Files.writeString(b.toPath(), "module B; import * from A; { Bool x = f(); }");
+        responses = serve(request(2, "-v", a.getPath(), b.getPath()));
+        output = responses[0].get("output").asText();
+        assertFalse(responses[0].get("cached").asBoolean());
+        assertFalse(output.contains("Parsing file " + a.getPath()));
+        assertTrue(output.contains("Parsing file " + b.getPath()));
+        assertEquals(1, responses[0].get("exitCode").asInt());
+    }
+
+    @Test
+    public void unusedFilesAreDropped() throws Exception {
+        serve(request(1, "-v", a.getPath(), b.getPath()));
+        serve(request(2, "-v", a.getPath()));
+        JsonNode[] responses = serve(request(3, "-v", b.getPath(), a.getPath()));
+        String output = responses[0].get("output").asText();
+        assertFalse(responses[0].get("cached").asBoolean());
+        assertFalse(output.contains("Parsing file " + a.getPath()));
+        assertTrue(output.contains("Parsing file " + b.getPath()));
+    }
+
+    @Test
+    public void internalErrorIsAnswered() throws Exception {
+        CompilerServerCommand failing = new CompilerServerCommand() {
+                @Override
+                Result run(Absc arguments) {
+                    throw new IllegalStateException("compiler bug");
+                }
+            };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String requests = request(1, a.getPath()) + request(2, b.getPath());
+        assertTrue(failing.serve(new ByteArrayInputStream(requests.getBytes(StandardCharsets.UTF_8)), out));
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode response = mapper.readTree(lines[i]);
+            assertEquals(i + 1, response.get("id").asInt());
+            assertTrue(response.get("error").asText().contains("compiler bug"));
+        }
+    }
+
+    @Test
+    public void shutdown() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean running = server.serve(new ByteArrayInputStream("{\"id\": 3, \"shutdown\": true}\n".getBytes(StandardCharsets.UTF_8)), out);
+        assertFalse(running);
+        JsonNode response = mapper.readTree(out.toString(StandardCharsets.UTF_8));
+        assertEquals(3, response.get("id").asInt());
+        assertTrue(response.get("shutdown").asBoolean());
+    }
+}
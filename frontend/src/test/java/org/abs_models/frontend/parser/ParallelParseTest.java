@@ -0,0 +1,70 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.abs_models.frontend.FrontendTest;
+import org.abs_models.frontend.ast.CompilationUnit;
+import org.abs_models.frontend.ast.Model;
+import org.junit.Test;
+
+public class ParallelParseTest extends FrontendTest {
+
+    private static Model parse(int threads, File... files) throws Exception {
+        Main main = new Main();
+        main.arguments.parseThreads = threads;
+        return main.parse(Arrays.asList(files));
+    }
+
+    private static java.util.List<String> unitNames(Model m) {
+        java.util.List<String> result = new ArrayList<>();
+        for (CompilationUnit u : m.getCompilationUnits()) {
+            result.add(u.getName());
+        }
+        return result;
+    }
+
+    @Test
+    public void sameUnitOrder() throws Exception {
+        File dir = new File(resolveFileName("examples/chatPL/"));
+        Model sequential = parse(1, dir);
+        Model parallel = parse(4, dir);
+        assertFalse(parallel.hasParserErrors());
+        assertEquals(unitNames(sequential), unitNames(parallel));
+        assertEquals(sequential.getErrors().getErrorCount(), parallel.getErrors().getErrorCount());
+    }
+
+    @Test
+    public void sameParseErrors() throws Exception {
+        Path dir = Files.createTempDirectory("abs-parse");
+        try {
+            File good = dir.resolve("a.abs").toFile();
+            File bad1 = dir.resolve("b.abs").toFile();
+            File bad2 = dir.resolve("c.abs").toFile();
+            Files.writeString(good.toPath(), "module A; def Int f() = 1;");
+            Files.writeString(bad1.toPath(), "module B; def Int f( = 1;");
+            Files.writeString(bad2.toPath(), "module C; class { }");
+            Model sequential = parse(1, bad2, good, bad1);
+            Model parallel = parse(3, bad2, good, bad1);
+            assertTrue(parallel.hasParserErrors());
+            assertEquals(unitNames(sequential), unitNames(parallel));
+            assertEquals(sequential.getParserErrors().toString(), parallel.getParserErrors().toString());
+        } finally {
+            try (var files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.abs_models.frontend.FrontendTest;
+import org.abs_models.frontend.ast.Model;
+import org.junit.Test;
+
+public class PhaseProfilerTest extends FrontendTest {
+
+    @Test
+    public void profile() throws Exception {
+        File model = File.createTempFile("profile", ".abs");
+        File profile = File.createTempFile("profile", ".json");
+        model.deleteOnExit();
+        profile.deleteOnExit();
+        Files.writeString(model.toPath(), "module M; def Int f(Int x) = x + 1; { Int y = f(1); }");
+        Main main = new Main();
+        main.arguments.profileFile = profile;
+        main.parse(List.of(model));
+
+        JsonNode root = new ObjectMapper().readTree(profile);
+        assertEquals(PhaseProfiler.isTracingAvailable(), root.get("tracing").asBoolean());
+        JsonNode phases = root.get("phases");
+        List<String> names = new ArrayList<>();
+        for (JsonNode p : phases) {
+            names.add(p.get("name").asText());
+            assertTrue(p.get("wallMs").asDouble() >= 0);
+            assertTrue(p.get("nodesAfter").asInt() > 0);
+        }
+        assertEquals(List.of("evaluateAllProductDeclarations", "rewriteModel",
+                             "flattenTraitOnly", "collapseTraitModifiers",
+                             "expandPartialFunctions", "expandForeachLoops",
+                             "expandAwaitAsyncCalls", "getErrors", "typeCheckModel"),
+                     names);
+        JsonNode typeCheck = phases.get(names.indexOf("typeCheckModel"));
+        if (PhaseProfiler.isTracingAvailable()) {
+            assertTrue(typeCheck.get("attributes").size() > 0);
+            assertTrue(typeCheck.at("/attributes/0/evaluations").asLong() > 0);
+        } else {
+            assertEquals(0, typeCheck.get("attributes").size());
+        }
+    }
+
+    @Test
+    public void receiverIsRestored() {
+        // needs a build with ./gradlew -PjastaddTracing
+        assumeTrue(PhaseProfiler.isTracingAvailable());
+        Model m = assertParse("module M; def Int f(Int x) = x + 1;");
+        Object before = PhaseProfiler.getReceiver(m);
+        try (PhaseProfiler profiler = new PhaseProfiler(m)) {
+            assertNotSame(before, PhaseProfiler.getReceiver(m));
+            profiler.begin("typeCheck");
+            m.typeCheck();
+            throw new IllegalStateException("phase failed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertSame(before, PhaseProfiler.getReceiver(m));
+    }
+}
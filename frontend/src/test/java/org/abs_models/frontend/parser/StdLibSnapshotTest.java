@@ -0,0 +1,77 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.abs_models.frontend.ast.CompilationUnit;
+import org.junit.Test;
+
+public class StdLibSnapshotTest {
+
+    private static byte[] snapshot(CompilationUnit unit, byte[] source) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StdLibSnapshot.write(unit, source, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        byte[] source = Main.getStdLibSource();
+        CompilationUnit stdlib = Main.parseStdLib(source);
+        byte[] written = snapshot(stdlib, source);
+        CompilationUnit loaded = StdLibSnapshot.read(new ByteArrayInputStream(written), source);
+        assertNotNull(loaded);
+        assertEquals(stdlib.getNumModuleDecl(), loaded.getNumModuleDecl());
+        assertEquals(stdlib.getModuleDecl(0).getNumDecl(), loaded.getModuleDecl(0).getNumDecl());
+        // same classes, tokens, positions and children
+        assertArrayEquals(written, snapshot(loaded, source));
+    }
+
+    @Test
+    public void staleSnapshot() throws Exception {
+        byte[] source = Main.getStdLibSource();
+        byte[] written = snapshot(Main.parseStdLib(source), source);
+        byte[] changed = Arrays.copyOf(source, source.length + 1);
+        changed[source.length] = '\n';
+        assertNull(StdLibSnapshot.read(new ByteArrayInputStream(written), changed));
+    }
+
+    @Test
+    public void changedAstClasses() throws Exception {
+        byte[] source = Main.getStdLibSource();
+        byte[] written = snapshot(Main.parseStdLib(source), source);
+        // the snapshot of a compiler whose AST classes had another schema:
+        // change the schema hash, which follows the source hash and the
+        // names of the AST classes
+        String content = new String(written, StandardCharsets.ISO_8859_1);
+        int sourceHash = content.indexOf(StdLibSnapshot.hash(source));
+        Matcher schemaHash = Pattern.compile("[0-9a-f]{64}").matcher(content);
+        assertTrue(schemaHash.find(sourceHash + 64));
+        byte[] modified = written.clone();
+        modified[schemaHash.start()] = (byte) (modified[schemaHash.start()] == '0' ? '1' : '0');
+        assertNull(StdLibSnapshot.read(new ByteArrayInputStream(modified), source));
+    }
+
+    @Test
+    public void corruptSnapshot() throws Exception {
+        byte[] source = Main.getStdLibSource();
+        byte[] written = snapshot(Main.parseStdLib(source), source);
+        assertNull(StdLibSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(written, written.length / 2)), source));
+        assertNull(StdLibSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(written, written.length + 1)), source));
+        assertNull(StdLibSnapshot.read(new ByteArrayInputStream(new byte[0]), source));
+    }
+}
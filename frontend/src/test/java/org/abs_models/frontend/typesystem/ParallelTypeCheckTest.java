@@ -0,0 +1,101 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.abs_models.frontend.FrontendTest;
+import org.abs_models.frontend.analyser.SemanticCondition;
+import org.abs_models.frontend.analyser.SemanticConditionList;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.typechecker.locationtypes.LocationTypeInferenceExtension;
+import org.abs_models.frontend.typechecker.nullable.NullCheckerExtension;
+import org.junit.Test;
+
+public class ParallelTypeCheckTest extends FrontendTest {
+
+    private static final String MODEL =
+        "module A; export *;"
+        + "interface I { Int m(Int x); }"
+        + "class C implements I { Int m(Int x) { return True; } }"
+        + "def Int f(Int x) = x + 1;"
+        + "def Int g(Int x) = f(x) + y;"
+        + "module B; import * from A;"
+        + "class D { Unit n() { I i = new C(); Bool b = await i!m(1); } }"
+        + "def Bool h() = f(1);"
+        + "{ I i = new C(); Int x = f(True); }";
+
+    private static SemanticConditionList typeCheck(String model, int threads) {
+        Model m = assertParse(model, Config.WITHOUT_MODULE_NAME);
+        m.setTypeCheckThreads(threads);
+        return m.typeCheck();
+    }
+
+    @Test
+    public void sameErrorsAsSequential() {
+        SemanticConditionList sequential = typeCheck(MODEL, 1);
+        SemanticConditionList parallel = typeCheck(MODEL, 4);
+        assertTrue(sequential.getErrorCount() >= 5);
+        assertEquals(sequential.toString(), parallel.toString());
+    }
+
+    private static List<String> messages(String file, int threads) throws Exception {
+        Model m = assertParseFileOk(file);
+        m.setTypeCheckThreads(threads);
+        List<String> result = new ArrayList<>();
+        for (SemanticCondition c : m.typeCheck()) {
+            result.add(c.getHelpMessage());
+        }
+        return result;
+    }
+
+    @Test
+    public void stressExamples() throws Exception {
+        // Races on shared attribute caches show up as exceptions or as
+        // different messages, but not in every run
+        for (String file : new String[] { "abssamples/ReplicationSystem.abs",
+                                          "abssamples/10wikipediadocstokenized.abs",
+                                          "examples/SmartHome/abs/",
+                                          "examples/chatPL/",
+                                          "examples/MapReduce.abs" }) {
+            List<String> sequential = messages(file, 1);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(file, sequential, messages(file, 8));
+            }
+        }
+        SemanticConditionList sequential = typeCheck(MODEL, 1);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(sequential.toString(), typeCheck(MODEL, 8).toString());
+        }
+    }
+
+    @Test
+    public void correctModel() {
+        SemanticConditionList errors = typeCheck("module A; def Int f(Int x) = x + 1; { Int y = f(2); }", 4);
+        assertFalse(errors.containsErrors());
+    }
+
+    @Test
+    public void inferenceIsSequential() {
+        Model m = assertParse("module A; { }", Config.WITHOUT_MODULE_NAME);
+        m.registerTypeSystemExtension(new LocationTypeInferenceExtension(m));
+        assertFalse(m.getTypeExt().allowsParallelChecking());
+    }
+
+    @Test
+    public void nullCheckIsSequential() {
+        Model m = assertParse("module A; { }", Config.WITHOUT_MODULE_NAME);
+        NullCheckerExtension nce = new NullCheckerExtension(m);
+        m.registerTypeSystemExtension(nce);
+        assertFalse(m.getTypeExt().allowsParallelChecking());
+        // reported by absc when --typecheck-threads is given
+        assertEquals(List.of(nce), m.getTypeExt().getSequentialExtensions());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typesystem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.abs_models.frontend.FrontendTest;
+import org.abs_models.frontend.analyser.ErrorMessage;
+import org.abs_models.frontend.analyser.SemanticCondition;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.typechecker.ext.SecrecyFlowAnalysis;
+import org.abs_models.frontend.typechecker.ext.SecrecyLatticeStructure;
+import org.junit.Test;
+
+public class SecrecyFlowAnalysisTest extends FrontendTest {
+
+    private static List<Integer> leakLines(String code) {
+        Model m = assertParse(code, Config.WITHOUT_MODULE_NAME);
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("Low", Set.of("High"));
+        m.secrecyLatticeStructure = new SecrecyLatticeStructure(Set.of("Low", "High"), order);
+        List<Integer> result = new ArrayList<>();
+        for (SemanticCondition c : m.typeCheck()) {
+            if (c.msg == ErrorMessage.SECRECY_LEAKAGE_ERROR_FROM_TO) result.add(c.getLine());
+        }
+        return result;
+    }
+
+    @Test
+    public void awaitUntilGet() {
+        String code = "module M;\n"
+            + "class C {\n"
+            + "  [Secrecy: Low] Int low = 0;\n"
+            + "  Unit m() {\n"
+            + "    [Secrecy: High] Fut<Int> f = this!n();\n"
+            + "    await f?;\n"
+            + "    low = 1;\n"
+            + "    Int x = f.get;\n"
+            + "    low = 2;\n"
+            + "  }\n"
+            + "  Int n() { low = 3; return 0; }\n"
+            + "}\n";
+        long hits = SecrecyFlowAnalysis.getCacheHits();
+        assertEquals(List.of(7), leakLines(code));
+        assertEquals(hits, SecrecyFlowAnalysis.getCacheHits());
+        // Checked again from the cache: both methods m and n
+        assertEquals(List.of(7), leakLines(code));
+        assertEquals(hits + 2, SecrecyFlowAnalysis.getCacheHits());
+    }
+
+    @Test
+    public void awaitInLoop() {
+        String code = "module M;\n"
+            + "class C {\n"
+            + "  [Secrecy: Low] Int low = 0;\n"
+            + "  Unit m(Int i) {\n"
+            + "    [Secrecy: High] Fut<Int> f = this!n();\n"
+            + "    while (i > 0) {\n"
+            + "      low = 1;\n"
+            + "      await f?;\n"
+            + "    }\n"
+            + "  }\n"
+            + "  Int n() { return 0; }\n"
+            + "}\n";
+        // The guard is active in the next iteration
+        assertEquals(List.of(7), leakLines(code));
+    }
+
+    @Test
+    public void branchesJoin() {
+        String code = "module M;\n"
+            + "class C {\n"
+            + "  [Secrecy: Low] Int low = 0;\n"
+            + "  Unit m([Secrecy: High] Int h) {\n"
+            + "    if (h > 0) {\n"
+            + "      low = 1;\n"
+            + "    } else {\n"
+            + "      low = 2;\n"
+            + "    }\n"
+            + "    low = 3;\n"
+            + "  }\n"
+            + "}\n";
+        assertEquals(List.of(6, 8), leakLines(code));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.abs_models.frontend.typechecker.ext.ProgramCountNode;
+import org.abs_models.frontend.typechecker.ext.SecrecyLatticeStructure;
+import org.junit.Test;
+
+public class SecrecyLatticeTest {
+
+    /** Low < A < High, Low < B < High, with A and B incomparable. */
+    private static SecrecyLatticeStructure diamond() {
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("Low", Set.of("A", "B"));
+        order.put("A", Set.of("High"));
+        order.put("B", Set.of("High"));
+        return new SecrecyLatticeStructure(Set.of("Low", "A", "B", "High"), order);
+    }
+
+    @Test
+    public void linear() {
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("Low", Set.of("Medium"));
+        order.put("Medium", Set.of("High"));
+        SecrecyLatticeStructure lattice = new SecrecyLatticeStructure(Set.of("Low", "Medium", "High"), order);
+        assertEquals("Low", lattice.getMinSecrecyLevel());
+        assertEquals("High", lattice.getMaxSecrecyLevel());
+        assertEquals(Set.of("Medium", "High"), lattice.getSetForSecrecyLevel("Low"));
+        assertEquals("High", lattice.join("Low", "High"));
+        assertEquals("Medium", lattice.join("Medium", "Low"));
+        assertEquals("Low", lattice.meet("Medium", "Low"));
+        assertTrue(lattice.isLessOrEqual("Low", "High"));
+        assertTrue(lattice.isLessOrEqual("High", "High"));
+        assertFalse(lattice.isLessOrEqual("High", "Medium"));
+    }
+
+    @Test
+    public void nonLinear() {
+        SecrecyLatticeStructure lattice = diamond();
+        assertEquals("Low", lattice.getMinSecrecyLevel());
+        assertEquals("High", lattice.getMaxSecrecyLevel());
+        assertEquals("High", lattice.join("A", "B"));
+        assertEquals("Low", lattice.meet("A", "B"));
+        assertEquals("A", lattice.join("A", "Low"));
+        assertFalse(lattice.isLessOrEqual("A", "B"));
+        assertFalse(lattice.isLessOrEqual("B", "A"));
+        assertEquals(lattice.getId("A"), lattice.join(lattice.getId("Low"), lattice.getId("A")));
+    }
+
+    @Test
+    public void evaluateListLevel() {
+        SecrecyLatticeStructure lattice = diamond();
+        LinkedList<ProgramCountNode> pc = new LinkedList<>();
+        pc.add(new ProgramCountNode("default", "Low"));
+        assertEquals("Low", lattice.evaluateListLevel(pc));
+        pc.add(new ProgramCountNode("ifStmt", "A"));
+        pc.add(new ProgramCountNode("whileStmt", "B"));
+        assertEquals("High", lattice.evaluateListLevel(pc));
+    }
+
+    @Test
+    public void path() {
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("Low", Set.of("Medium", "A"));
+        order.put("Medium", Set.of("High"));
+        order.put("A", Set.of("High"));
+        SecrecyLatticeStructure lattice = new SecrecyLatticeStructure(Set.of("Low", "Medium", "A", "High"), order);
+        // Of two shortest paths, the one through the alphabetically smaller level
+        assertEquals(List.of("Low", "A", "High"), lattice.path("Low", "High"));
+        assertEquals(List.of("Medium", "High"), lattice.path("Medium", "High"));
+        assertEquals(List.of("A"), lattice.path("A", "A"));
+        assertEquals(List.of(), lattice.path("High", "Low"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notALattice() {
+        // A and B have two minimal upper bounds
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("A", Set.of("C", "D"));
+        order.put("B", Set.of("C", "D"));
+        new SecrecyLatticeStructure(Set.of("A", "B", "C", "D"), order);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cyclic() {
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("Low", Set.of("High"));
+        order.put("High", Set.of("Low"));
+        new SecrecyLatticeStructure(Set.of("Low", "High"), order);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownLevel() {
+        diamond().join("Low", "Secret");
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c), The ABS Project. All rights reserved.
+ * This file is licensed under the terms of the Modified BSD License.
+ */
+package org.abs_models.frontend.typesystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.abs_models.frontend.FrontendTest;
+import org.abs_models.frontend.ast.Model;
+import org.abs_models.frontend.typechecker.ext.SecrecyLatticeStructure;
+import org.abs_models.frontend.typechecker.ext.SecrecyReport;
+import org.junit.Test;
+
+public class SecrecyReportTest extends FrontendTest {
+
+    @Test
+    public void sarifReport() throws Exception {
+        File file = File.createTempFile("secrecy", ".sarif");
+        file.deleteOnExit();
+        Model m = assertParse("module M;\n"
+                              + "class C {\n"
+                              + "  [Secrecy: Low] Int low = 0;\n"
+                              + "  Unit m([Secrecy: High] Int h) {\n"
+                              + "    low = h;\n"
+                              + "  }\n"
+                              + "}\n", Config.WITHOUT_MODULE_NAME);
+        HashMap<String, Set<String>> order = new HashMap<>();
+        order.put("Low", Set.of("Medium"));
+        order.put("Medium", Set.of("High"));
+        m.secrecyLatticeStructure = new SecrecyLatticeStructure(Set.of("Low", "Medium", "High"), order);
+        m.secrecyReportFile = file;
+        m.typeCheck();
+
+        JsonNode run = new ObjectMapper().readTree(file).get("runs").get(0);
+        JsonNode results = run.get("results");
+        assertEquals(1, results.size());
+        JsonNode result = results.get(0);
+        assertEquals("SECRECY_LEAKAGE_ERROR_FROM_TO", result.get("ruleId").asText());
+        assertEquals(5, result.at("/locations/0/physicalLocation/region/startLine").asInt());
+        assertEquals("High", result.at("/properties/from").asText());
+        assertEquals("[\"Low\",\"Medium\",\"High\"]", result.at("/properties/latticePath").toString());
+        JsonNode times = run.at("/properties/secrecyTimes");
+        assertEquals("M.C", times.at("/0/class").asText());
+        assertEquals("m", times.at("/0/methods/0/method").asText());
+        assertTrue(times.at("/0/methods/0/timeMs").asDouble() >= 0);
+    }
+
+    @Test
+    public void writtenOnlyWhenFinished() throws Exception {
+        File file = File.createTempFile("secrecy", ".sarif");
+        file.deleteOnExit();
+        assertTrue(file.delete());
+        SecrecyLatticeStructure lattice = new SecrecyLatticeStructure(Set.of("Low", "High"),
+                                                                      new HashMap<>(Map.of("Low", Set.of("High"))));
+        SecrecyReport report = new SecrecyReport(file, lattice);
+        report.addTime("M.C", "m", 1000);
+        // checking failed before the report was finished: nothing was opened
+        assertFalse(file.exists());
+        report.finish();
+        JsonNode run = new ObjectMapper().readTree(file).get("runs").get(0);
+        assertEquals(0, run.get("results").size());
+        assertEquals("M.C", run.at("/properties/secrecyTimes/0/class").asText());
+    }
+}
@@ -5,6 +5,15 @@
 package org.abs_models.frontend.typesystem;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
 
 import org.abs_models.frontend.FrontendTest;
 import org.abs_models.frontend.analyser.ErrorMessage;
@@ -183,6 +192,33 @@ public class TypingTest extends FrontendTest {
         assertTypeOK("interface A {} interface B extends A {} interface I { A mA(); B mB(); } { I o = null; Fut<B> f = o!mB(); A a = f.get;}");
     }
 
+    @Test
+    public void groundDataTypes() {
+        Model m = assertParse("interface I { } def List<A> f<A>(A a) = list[a];");
+        DataTypeType l1 = (DataTypeType) m.getListType(m.getMaybeType(m.getIntType()));
+        DataTypeType l2 = (DataTypeType) m.getListType(m.getMaybeType(m.getIntType()));
+        assertEquals(l1, l2);
+        assertNotEquals(l1, m.getListType(m.getMaybeType(m.getBoolType())));
+        assertTrue(l1.isGround());
+        // there is nothing to bind in a ground type, but metadata attached
+        // to the result must not show up on the original
+        Type b1 = l1.applyBinding(Collections.emptyMap());
+        assertEquals(l1, b1);
+        assertNotSame(l1, b1);
+        assertSame(l1.getTypeArg(0), ((DataTypeType) b1).getTypeArg(0));
+        b1.addMetaData("KEY", "value");
+        assertNull(l1.getMetaData("KEY"));
+        Type i = m.lookupModule("UnitTest").getDecl(0).getType();
+        assertTrue(((DataTypeType) m.getFutType(i)).isGround());
+        ParametricFunctionDecl d = getLastParametricFunctionDecl(m);
+        DataTypeType t = (DataTypeType) d.getType();
+        assertFalse(t.isGround());
+        assertFalse(new DataTypeType(l1.getDecl()).withTypeArgs(t.getTypeArg(0)).isGround());
+        assertTrue(new DataTypeType(l1.getDecl()).withTypeArgs(m.getIntType()).isGround());
+        Type bound = t.applyBinding(Map.of((TypeParameter) t.getTypeArg(0), m.getIntType()));
+        assertEquals(m.getListType(m.getIntType()), bound);
+    }
+
     @Test
     public void test_DuplicateFeature() {
         assertTypeErrors("productline Bar; features A,A;", ErrorMessage.DUPLICATE_FEATURE);